@@ -0,0 +1,50 @@
+package com.chatapp.cryptography;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Benchmarks per-message encryption and decryption with an established `HybridMessenger`
+ * session (AES-GCM), across message sizes RSA alone could not handle.
+ *
+ * @version 2026-10-17
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HybridMessengerBenchmark {
+
+    @Param({"16", "240", "4096", "65536"})
+    public int messageSize;
+
+    private MessageEncryptor serverSession;
+    private MessageEncryptor clientSession;
+    private byte[] message;
+    private byte[] encrypted;
+
+    @Setup
+    public void setup() throws Exception {
+        HybridMessenger server = new HybridMessenger();
+        HybridMessenger client = new HybridMessenger();
+        serverSession = server.openSession(client.getPublicKey());
+        clientSession = client.joinSession(server.getPublicKey(), serverSession.getWrappedSessionKey());
+
+        message = "x".repeat(messageSize).getBytes(StandardCharsets.UTF_8);
+        encrypted = clientSession.encrypt(message, server.getPublicKey());
+    }
+
+    @Benchmark
+    public byte[] encrypt() throws Exception {
+        return clientSession.encrypt(message, null);
+    }
+
+    @Benchmark
+    public byte[] decrypt() throws Exception {
+        return serverSession.decrypt(encrypted);
+    }
+}
@@ -0,0 +1,30 @@
+package com.chatapp.cryptography;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Benchmarks creating a new encryptor, which is dominated by generating its key pair: 2048-bit
+ * RSA for `SecureMessenger` and `HybridMessenger`, X25519 for `X25519Messenger`.
+ *
+ * @version 2026-10-17
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class KeyGenerationBenchmark {
+
+    @Benchmark
+    public MessageEncryptor rsa() throws Exception {
+        return new HybridMessenger();
+    }
+
+    @Benchmark
+    public MessageEncryptor x25519() throws Exception {
+        return new X25519Messenger();
+    }
+}
@@ -0,0 +1,52 @@
+package com.chatapp.cryptography;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Benchmarks the RSA-only `SecureMessenger`: key pair generation, and encryption and decryption
+ * of a single message. RSA cannot encrypt more than 245 bytes at once, so the message sizes stop
+ * just below that.
+ *
+ * @version 2026-10-17
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SecureMessengerBenchmark {
+
+    @Param({"16", "128", "240"})
+    public int messageSize;
+
+    private SecureMessenger messenger;
+    private byte[] message;
+    private byte[] encrypted;
+
+    @Setup
+    public void setup() throws Exception {
+        messenger = new SecureMessenger();
+        message = "x".repeat(messageSize).getBytes(StandardCharsets.UTF_8);
+        encrypted = messenger.encrypt(message, messenger.getPublicKey());
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public SecureMessenger keyGeneration() throws Exception {
+        return new SecureMessenger();
+    }
+
+    @Benchmark
+    public byte[] encrypt() throws Exception {
+        return messenger.encrypt(message, messenger.getPublicKey());
+    }
+
+    @Benchmark
+    public byte[] decrypt() throws Exception {
+        return messenger.decrypt(encrypted);
+    }
+}
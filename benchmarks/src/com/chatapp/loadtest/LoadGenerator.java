@@ -0,0 +1,442 @@
+package com.chatapp.loadtest;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.nio.file.Path;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.chatapp.client.*;
+import com.chatapp.cryptography.*;
+import com.chatapp.history.*;
+import com.chatapp.metrics.*;
+import com.chatapp.server.*;
+
+/**
+ * Headless load generator for ChatServer.
+ *
+ * Opens many `Client` connections over loopback, each running the real key exchange, and then
+ * sends timestamped chat messages from random clients at a fixed total rate. Every client that
+ * receives a broadcast records the end-to-end delivery latency, so the report shows how latency
+ * percentiles, throughput and failures change as clients and message rate grow.
+ *
+ * All clients run in this one process, so send and receive timestamps come from the same
+ * `System.nanoTime()` clock. RSA key pairs are shared between clients from a small pool, since
+ * generating thousands of them would dominate the start-up; every connection still gets its own
+ * session. X25519 key pairs are cheap enough to generate one per client.
+ *
+ * Options (all optional):
+ * - `--host <host>` and `--port <port>` of the server, default localhost:12345
+ * - `--server blocking|nio` starts a server in-process on that port first
+ * - `--broadcast per_client|group_key` broadcast mode of the in-process server
+ * - `--encryptor hybrid|x25519` key exchange used by the clients, default hybrid
+ * - `--rooms <n>` spreads the clients over n rooms and sends every message to the sender's room
+ *   only, default 0 for messages to everyone
+ * - `--clients <n>` number of connections, default 100
+ * - `--rate <n>` messages per second sent in total, default 100
+ * - `--size <n>` approximate message size in bytes, default 64
+ * - `--duration <s>` how long to send for, default 30
+ * - `--connect-threads <n>` parallel connection attempts, default 32
+ * - `--batch-bytes <n>` and `--batch-delay <us>` write coalescing of the in-process server, default
+ *   64 KiB and 0, see `ChatServer.setWriteCoalescing`
+ * - `--history <dir>` makes the in-process server append every broadcast to a `MessageLog` in dir
+ * - `--compression on|off` message compression of the clients and the in-process server, default on
+ * - `--client-rate <n>` frames per second each client may send to the in-process server, 0 for no
+ *   limit, default 50, see `ChatServer.setClientRateLimit`
+ * - `--max-handshakes <n>` and `--accept-rate <n>` admission control of the in-process server,
+ *   default 64 concurrent key exchanges and 1000 accepts per second
+ * - `--credit-budget <n>` frames all clients may have in flight to the in-process server, 0 to turn
+ *   flow control off, default 16384, see `ChatServer.setFlowControl`
+ * - `--nodes <n>` spreads the clients over n servers on consecutive ports from `--port`, default 1.
+ *   With `--server` they are started in-process as a `Cluster`, linked over the n ports after those
+ *
+ * With `--server`, the server's own per-stage latencies, write batch sizes and compression ratio
+ * are printed after the summary, for each node. With `--server nio`, the summary also shows how
+ * many bytes the servers' event loops and fan-out workers allocated on the heap per delivered
+ * message.
+ *
+ * Run with `gradle :benchmarks:loadTest -PloadArgs="--server nio --clients 2000 --rate 500"`.
+ *
+ * @version 2026-10-17
+ */
+public class LoadGenerator {
+    private static final String MESSAGE_PREFIX = "LT ";
+    private static final int KEY_PAIRS = 8;
+
+    private final String host;
+    private final int port;
+    private final int clientCount;
+    private final int rate;
+    private final int messageSize;
+    private final int durationSeconds;
+    private final int connectThreads;
+    private final boolean x25519;
+    private int roomCount = 0;
+    private boolean compression = true;
+    private int nodeCount = 1;
+    private final AtomicLong nextNode = new AtomicLong();
+    private final Map<Client, String> roomOf = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> roomSizes = new ConcurrentHashMap<>();
+    private final AtomicLong expected = new AtomicLong();
+
+    private final List<Client> clients = Collections.synchronizedList(new ArrayList<>());
+    private final LatencyHistogram latency = new LatencyHistogram();         // Whole run
+    private final LatencyHistogram intervalLatency = new LatencyHistogram(); // Since last report
+    private final LatencyHistogram handshakes = new LatencyHistogram();
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong failedSends = new AtomicLong();
+    private final AtomicLong failedConnects = new AtomicLong();
+    private final AtomicLong delivered = new AtomicLong();
+    private long serverAllocated = -1; // Bytes, -1 if there are no event loops in this process
+
+    public LoadGenerator(String host, int port, int clientCount, int rate, int messageSize, int durationSeconds, int connectThreads, boolean x25519) {
+        this.host = host;
+        this.port = port;
+        this.clientCount = clientCount;
+        this.rate = rate;
+        this.messageSize = messageSize;
+        this.durationSeconds = durationSeconds;
+        this.connectThreads = connectThreads;
+        this.x25519 = x25519;
+    }
+
+    /**
+     * Spreads the clients over the given number of rooms, or sends to everyone if 0.
+     */
+    public void setRoomCount(int roomCount) {
+        this.roomCount = roomCount;
+    }
+
+    /**
+     * Spreads the clients round-robin over servers on `nodeCount` consecutive ports.
+     */
+    public void setNodeCount(int nodeCount) {
+        this.nodeCount = nodeCount;
+    }
+
+    /**
+     * Sets whether the clients offer to compress chat messages in the key exchange.
+     */
+    public void setCompression(boolean compression) {
+        this.compression = compression;
+    }
+
+    /**
+     * Connects all clients, sends for the configured duration, and prints the results.
+     */
+    public void run() throws Exception {
+        connectAll();
+        if (clients.isEmpty()) {
+            System.out.println("No client could connect, giving up.");
+            return;
+        }
+
+        // Wait for group key rotations and other join traffic to settle before measuring
+        Thread.sleep(1000);
+        latency.reset();
+        intervalLatency.reset();
+        delivered.set(0);
+
+        System.out.printf("Sending %d msg/s of ~%d bytes from %d clients for %ds%n", rate, messageSize, clients.size(), durationSeconds);
+        long allocatedBefore = serverAllocatedBytes();
+        sendAll();
+
+        // Give in-flight messages a moment to arrive
+        Thread.sleep(2000);
+        long allocatedAfter = serverAllocatedBytes();
+        if (allocatedBefore >= 0 && allocatedAfter >= 0) {
+            serverAllocated = allocatedAfter - allocatedBefore;
+        }
+        printSummary();
+        clients.forEach(Client::stop);
+    }
+
+    private void connectAll() throws Exception {
+        SecureMessenger[] identities = new SecureMessenger[KEY_PAIRS];
+        for (int i = 0; i < KEY_PAIRS; i++) {
+            identities[i] = x25519 ? null : new SecureMessenger(); // Not needed with X25519
+        }
+
+        System.out.printf("Connecting %d clients to %s:%d...%n", clientCount, host, port);
+        long start = System.nanoTime();
+        ExecutorService connector = Executors.newFixedThreadPool(connectThreads);
+        for (int i = 0; i < clientCount; i++) {
+            SecureMessenger identity = identities[i % KEY_PAIRS];
+            connector.execute(() -> connect(identity));
+        }
+        connector.shutdown();
+        connector.awaitTermination(10, TimeUnit.MINUTES);
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("Connected %d clients in %.1fs (%d failed), handshake %s%n",
+                clients.size(), seconds, failedConnects.get(), handshakes.summary(1_000_000, "ms"));
+    }
+
+    private void connect(SecureMessenger identity) {
+        long start = System.nanoTime();
+        try {
+            MessageEncryptor encryptor = x25519 ? new X25519Messenger() : new HybridMessenger(identity);
+            Client client = new Client(host, port + (int) (nextNode.getAndIncrement() % nodeCount), encryptor);
+            client.setLogToTerminal(false);
+            if (!compression) {
+                client.setCompression(null);
+            }
+            client.setMessageListener(this::received);
+            client.start();
+            if (client.isReady()) {
+                handshakes.recordSince(start);
+                if (roomCount > 0) {
+                    String room = "room-" + ThreadLocalRandom.current().nextInt(roomCount);
+                    client.joinRoom(room);
+                    roomOf.put(client, room);
+                    roomSizes.computeIfAbsent(room, r -> new AtomicLong()).incrementAndGet();
+                }
+                clients.add(client);
+            } else {
+                failedConnects.incrementAndGet();
+                client.stop();
+            }
+        } catch (Exception e) {
+            failedConnects.incrementAndGet();
+        }
+    }
+
+    /**
+     * Sends messages from random clients at the configured rate, reporting once per second.
+     */
+    private void sendAll() throws InterruptedException {
+        String padding = "x".repeat(Math.max(0, messageSize - 24));
+        long intervalNanos = 1_000_000_000L / Math.max(1, rate);
+        long end = System.nanoTime() + durationSeconds * 1_000_000_000L;
+        long nextSend = System.nanoTime();
+        long nextReport = nextSend + 1_000_000_000L;
+        long lastSent = 0;
+        long lastDelivered = 0;
+
+        while (System.nanoTime() < end) {
+            long now = System.nanoTime();
+            if (now < nextSend) {
+                TimeUnit.NANOSECONDS.sleep(Math.min(nextSend - now, 1_000_000));
+                continue;
+            }
+
+            Client client = clients.get(ThreadLocalRandom.current().nextInt(clients.size()));
+            String message = MESSAGE_PREFIX + System.nanoTime() + " " + padding;
+            String room = roomOf.get(client);
+            if (room != null ? client.sendToRoom(room, message) : client.sendMessage(message)) {
+                sent.incrementAndGet();
+                expected.addAndGet((room != null ? roomSizes.get(room).get() : clients.size()) - 1);
+            } else {
+                failedSends.incrementAndGet();
+            }
+            nextSend += intervalNanos;
+
+            if (now >= nextReport) {
+                long totalSent = sent.get();
+                long totalDelivered = delivered.get();
+                System.out.printf("sent/s=%d delivered/s=%d failed=%d latency %s%n",
+                        totalSent - lastSent, totalDelivered - lastDelivered, failedSends.get(),
+                        intervalLatency.summary(1000, "us"));
+                intervalLatency.reset();
+                lastSent = totalSent;
+                lastDelivered = totalDelivered;
+                nextReport += 1_000_000_000L;
+            }
+        }
+    }
+
+    /**
+     * Called by every client for every chat message it receives.
+     */
+    private void received(String message) {
+        if (!message.startsWith(MESSAGE_PREFIX)) {
+            return;
+        }
+        int end = message.indexOf(' ', MESSAGE_PREFIX.length());
+        try {
+            long sentAt = Long.parseLong(message.substring(MESSAGE_PREFIX.length(), end < 0 ? message.length() : end));
+            long elapsed = System.nanoTime() - sentAt;
+            latency.record(elapsed);
+            intervalLatency.record(elapsed);
+            delivered.incrementAndGet();
+        } catch (NumberFormatException e) {
+            // Not one of ours
+        }
+    }
+
+    private void printSummary() {
+        long expected = this.expected.get();
+        System.out.println("=== Summary ===");
+        System.out.printf("clients=%d rooms=%d failedConnects=%d%n", clients.size(), roomSizes.size(), failedConnects.get());
+        System.out.printf("sent=%d (%.1f msg/s) failedSends=%d%n", sent.get(), (double) sent.get() / durationSeconds, failedSends.get());
+        System.out.printf("delivered=%d of %d expected (%.1f deliveries/s)%n", delivered.get(), expected, (double) delivered.get() / durationSeconds);
+        System.out.println("delivery latency " + latency.summary(1000, "us"));
+        if (serverAllocated >= 0 && delivered.get() > 0) {
+            System.out.printf("server allocation=%d B per delivery (%d B in total)%n",
+                    serverAllocated / delivered.get(), serverAllocated);
+        }
+    }
+
+    /**
+     * Returns the heap bytes allocated so far by the event loop and fan-out threads of NIO servers
+     * in this process, or -1 if there are no event loops or the JVM cannot tell.
+     */
+    private static long serverAllocatedBytes() {
+        if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)) {
+            return -1;
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (!threads.isThreadAllocatedMemorySupported() || !threads.isThreadAllocatedMemoryEnabled()) {
+            return -1;
+        }
+        long total = 0;
+        boolean found = false; // Only NIO servers have event loops, but every server fans out
+        long[] ids = threads.getAllThreadIds();
+        ThreadInfo[] infos = threads.getThreadInfo(ids);
+        for (int i = 0; i < ids.length; i++) {
+            String name = infos[i] == null ? "" : infos[i].getThreadName();
+            boolean eventLoop = name.startsWith("chat-event-loop-");
+            if (eventLoop || name.startsWith("fan-out-")) {
+                long bytes = threads.getThreadAllocatedBytes(ids[i]);
+                if (bytes >= 0) {
+                    total += bytes;
+                    found |= eventLoop;
+                }
+            }
+        }
+        return found ? total : -1;
+    }
+
+    /**
+     * Prints the server-side stage latencies of an in-process server.
+     */
+    private static void printServerMetrics(String name, ServerMetrics metrics) {
+        System.out.println("=== " + name + " ===");
+        System.out.printf("connections=%d messagesReceived=%d framesSent=%d bytesIn=%d bytesOut=%d dropped=%d relayedOut=%d relayedIn=%d%n",
+                metrics.getTotalConnections(), metrics.getMessagesReceived(), metrics.getFramesSent(),
+                metrics.getBytesIn(), metrics.getBytesOut(), metrics.getDroppedMessages(),
+                metrics.getRelayedOut(), metrics.getRelayedIn());
+        metrics.histograms().forEach((stage, histogram) ->
+                System.out.println(stage + " " + histogram.summary(1000, "us")));
+        System.out.println("batch frames " + metrics.batchFrames().summary(1, ""));
+        System.out.println("batch bytes " + metrics.batchBytes().summary(1, ""));
+        System.out.printf("compression ratio=%.2f in=%d out=%d%n",
+                metrics.getCompressionRatio(), metrics.getCompressionBytesIn(), metrics.getCompressionBytesOut());
+        System.out.printf("admission deferredAccepts=%d handshakeTimeouts=%d rateLimited=%d%n",
+                metrics.getDeferredAccepts(), metrics.getHandshakeTimeouts(), metrics.getRateLimitedMessages());
+        System.out.printf("idle disconnects=%d heartbeatsSent=%d%n", metrics.getIdleDisconnects(), metrics.getHeartbeatsSent());
+        System.out.printf("flow control creditsGranted=%d%n", metrics.getCreditsGranted());
+    }
+
+    public static void main(String[] args) throws Exception {
+        String host = "localhost";
+        int port = 12345;
+        String server = null;
+        String broadcast = "per_client";
+        String encryptor = "hybrid";
+        int rooms = 0;
+        int clients = 100;
+        int rate = 100;
+        int size = 64;
+        int duration = 30;
+        int connectThreads = 32;
+        int batchBytes = ChatServer.DEFAULT_MAX_BATCH_BYTES;
+        long batchDelay = 0;
+        String history = null;
+        boolean compression = true;
+        int nodes = 1;
+        int clientRate = 50;
+        int maxHandshakes = 64;
+        int acceptRate = 1000;
+        int creditBudget = ChatServer.DEFAULT_CREDIT_BUDGET;
+
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--host": host = value; break;
+                case "--port": port = Integer.parseInt(value); break;
+                case "--server": server = value; break;
+                case "--broadcast": broadcast = value; break;
+                case "--encryptor": encryptor = value; break;
+                case "--rooms": rooms = Integer.parseInt(value); break;
+                case "--clients": clients = Integer.parseInt(value); break;
+                case "--rate": rate = Integer.parseInt(value); break;
+                case "--size": size = Integer.parseInt(value); break;
+                case "--duration": duration = Integer.parseInt(value); break;
+                case "--connect-threads": connectThreads = Integer.parseInt(value); break;
+                case "--batch-bytes": batchBytes = Integer.parseInt(value); break;
+                case "--batch-delay": batchDelay = Long.parseLong(value); break;
+                case "--history": history = value; break;
+                case "--compression": compression = "on".equalsIgnoreCase(value); break;
+                case "--nodes": nodes = Integer.parseInt(value); break;
+                case "--client-rate": clientRate = Integer.parseInt(value); break;
+                case "--max-handshakes": maxHandshakes = Integer.parseInt(value); break;
+                case "--accept-rate": acceptRate = Integer.parseInt(value); break;
+                case "--credit-budget": creditBudget = Integer.parseInt(value); break;
+                default: throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+
+        if (!"x25519".equalsIgnoreCase(encryptor)) {
+            KeyPairPool.rsa().start(); // The clients' RSA identities are generated while the servers start
+        }
+        List<ChatServer> servers = new ArrayList<>();
+        if (server != null) {
+            byte[] clusterSecret = new byte[32];
+            new SecureRandom().nextBytes(clusterSecret);
+            for (int node = 1; node <= nodes; node++) {
+                ChatServer chatServer = new ChatServer(port + node - 1, new HybridMessenger(), ChatServer.Mode.valueOf(server.toUpperCase()));
+                chatServer.addEncryptor(new X25519Messenger());
+                chatServer.setBroadcastMode(ChatServer.BroadcastMode.valueOf(broadcast.toUpperCase()));
+                chatServer.setWriteCoalescing(batchBytes, batchDelay);
+                chatServer.setClientRateLimit(clientRate, 1024 * 1024);
+                chatServer.setHandshakeLimit(maxHandshakes, 10_000);
+                chatServer.setAcceptRate(acceptRate);
+                chatServer.setFlowControl(creditBudget);
+                if (!compression) {
+                    chatServer.setCompression(null);
+                }
+                Path historyDirectory = history == null ? null : nodes > 1 ? Path.of(history, "node-" + node) : Path.of(history);
+                if (historyDirectory != null) {
+                    chatServer.setHistory(new MessageLog(historyDirectory), ChatServer.DEFAULT_SCROLLBACK);
+                }
+                if (nodes > 1) {
+                    Cluster cluster = new Cluster(node, port + nodes + node - 1, clusterSecret);
+                    for (int peer = 1; peer <= nodes; peer++) {
+                        if (peer != node) {
+                            cluster.addPeer(peer, "localhost", port + nodes + peer - 1);
+                        }
+                    }
+                    chatServer.setCluster(cluster);
+                }
+                Thread serverThread = new Thread(chatServer::start, "chat-server-" + node);
+                serverThread.setDaemon(true);
+                serverThread.start();
+                servers.add(chatServer);
+            }
+            for (ChatServer chatServer : servers) {
+                chatServer.whenReady().get(30, TimeUnit.SECONDS); // Throws if the server could not bind its port
+            }
+            for (ChatServer chatServer : servers) {
+                if (chatServer.getCluster() != null && !chatServer.getCluster().awaitPeers(10, TimeUnit.SECONDS)) {
+                    System.out.println("Node " + chatServer.getCluster().getNodeId() + " could not reach all its peers");
+                }
+            }
+        }
+
+        LoadGenerator generator = new LoadGenerator(host, port, clients, rate, size, duration, connectThreads, "x25519".equalsIgnoreCase(encryptor));
+        generator.setRoomCount(rooms);
+        generator.setCompression(compression);
+        generator.setNodeCount(nodes);
+        generator.run();
+        for (int i = 0; i < servers.size(); i++) {
+            printServerMetrics(servers.size() > 1 ? "Server node " + (i + 1) : "Server", servers.get(i).getMetrics());
+        }
+        System.exit(0);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,76 @@
+package com.chatapp.protocol;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.chatapp.cryptography.*;
+
+/**
+ * Benchmarks the `PayloadCompressor` stage on chat text and a pasted stack trace, and what it
+ * saves the cipher: `encrypt` is the plain AES-GCM cost, `compressAndEncrypt` the cost with
+ * compression in front. The threshold is 0, so even the smallest size is compressed, and the
+ * compression ratio of each input is printed once per trial.
+ *
+ * @version 2026-10-17
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CompressionBenchmark {
+    private static final String CHAT = "hey, does anyone know why the build is failing today? I think it's the tests again, "
+            + "I'm not sure what changed but it was working yesterday. ";
+    private static final String LOG = "ERROR [main] Failed to handle request\n"
+            + "java.lang.IllegalStateException: Connection refused\n"
+            + "\tat com.chatapp.server.ClientHandler.handleFrame(ClientHandler.java:204)\n"
+            + "\tat com.chatapp.server.NioConnection.onReadable(NioConnection.java:85)\n"
+            + "\tat java.base/java.lang.Thread.run(Thread.java:833)\n"
+            + "Caused by: java.io.IOException: Broken pipe\n";
+
+    @Param({"chat", "log"})
+    public String kind;
+
+    @Param({"64", "512", "4096"})
+    public int messageSize;
+
+    private final PayloadCompressor compressor = new PayloadCompressor(0);
+    private MessageEncryptor session;
+    private byte[] message;
+    private byte[] compressed;
+
+    @Setup
+    public void setup() throws Exception {
+        HybridMessenger server = new HybridMessenger();
+        session = server.openSession(new HybridMessenger().getPublicKey());
+
+        String text = "chat".equals(kind) ? CHAT : LOG;
+        message = text.repeat(messageSize / text.length() + 1).substring(0, messageSize).getBytes(StandardCharsets.UTF_8);
+        compressed = compressor.compress(message);
+        System.out.printf("%n%s x %d bytes: compressed to %d bytes, ratio %.2f%n",
+                kind, message.length, compressed.length, (double) message.length / compressed.length);
+    }
+
+    @Benchmark
+    public byte[] compress() {
+        return compressor.compress(message);
+    }
+
+    @Benchmark
+    public byte[] decompress() throws Exception {
+        return PayloadCompressor.decompress(compressed);
+    }
+
+    @Benchmark
+    public byte[] encrypt() throws Exception {
+        return session.encrypt(message, null);
+    }
+
+    @Benchmark
+    public byte[] compressAndEncrypt() throws Exception {
+        return session.encrypt(compressor.compress(message), null);
+    }
+}
@@ -0,0 +1,78 @@
+package com.chatapp.server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.chatapp.cryptography.*;
+import com.chatapp.protocol.*;
+
+/**
+ * Benchmarks `ChatServer.broadcast()` fanning one message out to N in-process recipients, in
+ * both broadcast modes. Each recipient is a `ClientHandler` that has completed a real key
+ * exchange, behind an `InMemoryConnection` that consumes every frame right away.
+ *
+ * All recipients share one client key pair, since generating thousands of RSA key pairs would
+ * only slow down the setup.
+ *
+ * With `pooled` set, the recipients take frames built in the server's pool of direct buffers,
+ * like `NioConnection`s. Run with `-prof gc` to see the bytes allocated per broadcast, in
+ * `gc.alloc.rate.norm`; divided by `recipients` it is the allocation per message and recipient.
+ *
+ * Broadcasts to many recipients are split over the fan-out workers, and each one is timed until
+ * its last recipient has been served, see `FanOutBenchmark`.
+ *
+ * @version 2026-10-17
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BroadcastBenchmark {
+
+    @Param({"10", "100", "1000", "10000"})
+    public int recipients;
+
+    @Param({"PER_CLIENT", "GROUP_KEY"})
+    public String broadcastMode;
+
+    @Param({"HYBRID"})
+    public String encryptor;
+
+    @Param({"false", "true"})
+    public boolean pooled;
+
+    private ChatServer server;
+    private ClientHandler sender;
+    private final List<InMemoryConnection> connections = new ArrayList<>();
+    private final String message = "The quick brown fox jumps over the lazy dog";
+
+    @Setup
+    public void setup() throws Exception {
+        MessageEncryptor serverEncryptor = HandshakeBenchmark.create(encryptor);
+        MessageEncryptor clientEncryptor = HandshakeBenchmark.create(encryptor);
+        server = new ChatServer(0, serverEncryptor);
+        server.setBroadcastMode(ChatServer.BroadcastMode.valueOf(broadcastMode));
+
+        Frame hello = Frame.hello(FrameCodec.PROTOCOL_VERSION, clientEncryptor.getPublicKey().getEncoded());
+        for (int i = 0; i <= recipients; i++) {
+            InMemoryConnection connection = InMemoryConnection.create(server, true, pooled);
+            server.addClient(connection.getHandler());
+            connection.getHandler().handleFrame(hello);
+            connections.add(connection);
+        }
+        sender = connections.get(0).getHandler(); // Not counted as a recipient
+    }
+
+    @Benchmark
+    public void broadcast() throws Exception {
+        server.broadcast(message, sender);
+        while (!server.getFanOutEngine().isIdle()) {
+            Thread.onSpinWait(); // Larger broadcasts finish on the fan-out workers
+        }
+    }
+}
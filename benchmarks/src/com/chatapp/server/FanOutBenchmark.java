@@ -0,0 +1,70 @@
+package com.chatapp.server;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.chatapp.cryptography.*;
+import com.chatapp.protocol.*;
+
+/**
+ * Benchmarks the time from the start of a room broadcast until the message is queued for the
+ * room's last member, as rooms grow from 100 to 50,000 members, with the recipients served on the
+ * sender's thread and split over the `FanOutEngine`'s workers.
+ *
+ * The recipients are `ClientHandler`s behind `InMemoryConnection`s that consume every frame right
+ * away, with X25519 sessions, so setting up 50,000 of them takes seconds rather than minutes.
+ * Presence is turned off, as the setup would otherwise send every recipient a snapshot of all the
+ * others. With `parallel` the time should stay close to flat until the room outgrows the cores.
+ *
+ * @version 2026-10-17
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FanOutBenchmark {
+
+    @Param({"100", "1000", "10000", "50000"})
+    public int members;
+
+    @Param({"false", "true"})
+    public boolean parallel;
+
+    private ChatServer server;
+    private FanOutEngine engine;
+    private ClientHandler sender;
+    private final String room = "benchmark";
+    private final String message = "The quick brown fox jumps over the lazy dog";
+
+    @Setup
+    public void setup() throws Exception {
+        server = new ChatServer(0, new X25519Messenger());
+        server.setPresenceInterval(0);
+        server.setParallelFanOut(parallel ? 0 : Integer.MAX_VALUE);
+        engine = server.getFanOutEngine();
+
+        MessageEncryptor clientEncryptor = new X25519Messenger();
+        Frame hello = Frame.hello(FrameCodec.PROTOCOL_VERSION, clientEncryptor.getPublicKey().getEncoded());
+        for (int i = 0; i <= members; i++) {
+            InMemoryConnection connection = InMemoryConnection.create(server, true, true);
+            ClientHandler handler = connection.getHandler();
+            server.addClient(handler);
+            handler.handleFrame(hello);
+            server.joinRoom(room, handler);
+            if (i == 0) {
+                sender = handler; // Not counted as a member
+            }
+        }
+    }
+
+    @Benchmark
+    public void broadcastToRoom() throws Exception {
+        server.broadcastToRoom(room, message, sender);
+        while (!engine.isIdle()) {
+            Thread.onSpinWait(); // Until the last shard is done
+        }
+    }
+}
\ No newline at end of file
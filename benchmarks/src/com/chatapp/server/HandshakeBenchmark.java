@@ -0,0 +1,67 @@
+package com.chatapp.server;
+
+import java.security.PublicKey;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.chatapp.cryptography.*;
+import com.chatapp.protocol.*;
+
+/**
+ * Benchmarks one complete key exchange between a client and a `ClientHandler`, in-process:
+ * the client's HELLO, the server parsing the client key and answering with its HELLO (and session
+ * key), and the client parsing the server key and joining the session.
+ *
+ * Key pair generation is not included, both sides reuse their key pairs across invocations.
+ *
+ * @version 2026-10-17
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HandshakeBenchmark {
+
+    @Param({"RSA", "HYBRID", "X25519"})
+    public String encryptor;
+
+    private ChatServer server;
+    private MessageEncryptor serverEncryptor;
+    private MessageEncryptor clientEncryptor;
+
+    @Setup
+    public void setup() throws Exception {
+        serverEncryptor = create(encryptor);
+        clientEncryptor = create(encryptor);
+        server = new ChatServer(0, serverEncryptor);
+    }
+
+    @Benchmark
+    public MessageEncryptor handshake() throws Exception {
+        InMemoryConnection connection = InMemoryConnection.create(server, false);
+        ClientHandler handler = connection.getHandler();
+
+        // Client -> server
+        handler.handleFrame(Frame.hello(FrameCodec.PROTOCOL_VERSION, clientEncryptor.getPublicKey().getEncoded()));
+
+        // Server -> client
+        Frame hello = connection.poll();
+        PublicKey serverKey = PublicKeys.decode(hello.getPublicKey());
+        byte[] wrappedSessionKey = clientEncryptor.usesSessionKeys() ? connection.poll().getPayload() : null;
+        MessageEncryptor session = clientEncryptor.joinSession(serverKey, wrappedSessionKey);
+
+        handler.disconnected();
+        return session;
+    }
+
+    static MessageEncryptor create(String encryptor) throws Exception {
+        switch (encryptor) {
+            case "RSA": return new SecureMessenger();
+            case "X25519": return new X25519Messenger();
+            default: return new HybridMessenger();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.chatapp.server;
+
+import com.chatapp.cryptography.*;
+import com.chatapp.protocol.*;
+
+/**
+ * A `Connection` without a socket, for driving `ClientHandler`s in-process from benchmarks.
+ *
+ * With `drain` set, every frame queued for the client is consumed and counted right away, as if
+ * the client read instantly, so benchmarks measure the server's own work and not a network.
+ * Otherwise frames stay queued and can be read with `poll()`.
+ *
+ * With `pooled` set, the connection takes frames built in the server's `BufferPool`, like an
+ * `NioConnection`, and releases them as it drains them.
+ *
+ * @version 2026-10-17
+ */
+class InMemoryConnection implements Connection {
+    private final boolean drain;
+    private BufferPool pool;
+    private ClientHandler handler;
+    private boolean open = true;
+    private long framesWritten = 0;
+    private long bytesWritten = 0;
+
+    private InMemoryConnection(boolean drain) {
+        this.drain = drain;
+    }
+
+    /**
+     * Creates a connection with its handler attached.
+     */
+    static InMemoryConnection create(ChatServer server, boolean drain) {
+        return create(server, drain, false);
+    }
+
+    /**
+     * Creates a connection with its handler attached, optionally taking pooled frames.
+     */
+    static InMemoryConnection create(ChatServer server, boolean drain, boolean pooled) {
+        InMemoryConnection connection = new InMemoryConnection(drain);
+        connection.pool = pooled ? server.getBufferPool() : null;
+        connection.handler = new ClientHandler(server, connection);
+        return connection;
+    }
+
+    ClientHandler getHandler() {
+        return handler;
+    }
+
+    long getFramesWritten() {
+        return framesWritten;
+    }
+
+    long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * Returns the next frame queued for the client, or null if there is none.
+     */
+    Frame poll() {
+        return handler.outbound().poll();
+    }
+
+    @Override
+    public void outboundReady() {
+        if (!drain) {
+            return;
+        }
+        Frame frame;
+        while ((frame = handler.outbound().poll()) != null) {
+            framesWritten++;
+            bytesWritten += frame.getEncodedLength();
+            frame.release();
+        }
+    }
+
+    @Override
+    public void close() {
+        open = false;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public String getRemoteAddress() {
+        return "in-memory";
+    }
+
+    @Override
+    public BufferPool bufferPool() {
+        return pool;
+    }
+}
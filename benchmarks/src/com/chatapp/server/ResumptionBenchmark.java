@@ -0,0 +1,59 @@
+package com.chatapp.server;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.chatapp.cryptography.*;
+import com.chatapp.protocol.*;
+
+/**
+ * Benchmarks resuming a session from a ticket, in-process: the client's RESUME, the server opening
+ * the ticket and answering with its nonce and a new ticket, and the client deriving the session.
+ * Compare with `HandshakeBenchmark`, which runs the full key exchange.
+ *
+ * @version 2026-10-17
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResumptionBenchmark {
+
+    private ChatServer server;
+    private SessionTicket ticket;
+
+    @Setup
+    public void setup() throws Exception {
+        MessageEncryptor serverEncryptor = new HybridMessenger();
+        MessageEncryptor clientEncryptor = new HybridMessenger();
+        server = new ChatServer(0, serverEncryptor);
+
+        // One full key exchange to get the first ticket
+        InMemoryConnection connection = InMemoryConnection.create(server, false);
+        connection.getHandler().handleFrame(Frame.hello(FrameCodec.PROTOCOL_VERSION, clientEncryptor.getPublicKey().getEncoded()));
+        Frame hello = connection.poll();
+        MessageEncryptor session = clientEncryptor.joinSession(PublicKeys.decode(hello.getPublicKey()), connection.poll().getPayload());
+        ticket = new SessionTicket(connection.poll().getPayload(), session.getResumptionSecret());
+        connection.getHandler().disconnected();
+    }
+
+    @Benchmark
+    public MessageEncryptor resume() throws Exception {
+        InMemoryConnection connection = InMemoryConnection.create(server, false);
+        ClientHandler handler = connection.getHandler();
+
+        // Client -> server
+        byte[] nonce = SessionTicket.newNonce();
+        handler.handleFrame(Frame.resume(FrameCodec.PROTOCOL_VERSION, nonce, ticket.getTicket()));
+
+        // Server -> client
+        Frame reply = connection.poll();
+        MessageEncryptor session = ticket.resume(nonce, reply.getResumeNonce());
+
+        handler.disconnected();
+        return session;
+    }
+}
@@ -1,14 +1,30 @@
 package com.chatapp.client;
 
 import java.io.*;
+import java.net.ProtocolException;
 import java.net.Socket;
-import java.security.KeyFactory;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.security.PublicKey;
-import java.security.spec.X509EncodedKeySpec;
-import java.util.Base64;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
+import java.util.zip.DataFormatException;
 
 import com.chatapp.cryptography.*;
+import com.chatapp.protocol.*;
 
 /**
  * A secure chat client that connects to a server over sockets, performs RSA key exchange,
@@ -18,32 +34,117 @@ import com.chatapp.cryptography.*;
  * Messages are read from the console and sent to the server; incoming messages are
  * decrypted and displayed.
  *
- * Updated to work alongside the ChatGUI.java, instead of the 
+ * Updated to work alongside the ChatGUI.java, instead of the
  * previous terminal chat configuration.
- * 
- * This class requires an encrypter using the `MessageEncryptor` interface
- * 
+ *
+ * This class requires an encrypter using the `MessageEncryptor` interface. If the encryptor
+ * uses session keys, the key exchange ends with the server's wrapped session key, and all
+ * messages are encrypted with that key instead of the server's public key. With an
+ * `X25519Messenger` the server answers with an X25519 key, and both sides derive the session key.
+ *
+ * Client and server talk in binary `Frame`s; the client's HELLO carries the highest protocol
+ * version it speaks, and the server's HELLO the version both will use.
+ *
+ * Besides messages to everyone, the client can join rooms and send messages to a room's members
+ * only, see `joinRoom` and `sendToRoom`. Room messages are logged with their room name. Every
+ * client also gets an id from the server, see `getClientId()`, for direct messages with `sendDirect`.
+ *
+ * A server that keeps a message history replays its last few messages once the session is ready,
+ * and older ones on request, see `requestHistory`. Replayed messages are logged with the time the
+ * server received them, and not passed to the message listener.
+ *
+ * After the key exchange the server may send a session ticket, see `getSessionTicket()`. A client
+ * created for a reconnect, e.g. with `reconnect()`, presents it instead of its public key and, if
+ * the server accepts it, resumes the session after a single round trip. If not, it falls back to
+ * the full key exchange on the same connection.
+ *
+ * By default the client asks the server to compress chat messages before they are encrypted, see
+ * `setCompression`. If the server agrees, both sides compress the messages they send.
+ *
+ * When the server encrypts broadcasts with a shared `GroupKey`, the client keeps the last few
+ * group keys it was sent, so broadcasts encrypted just before a key rotation can still be read.
+ *
+ * The server tells the client which clients are online: a snapshot of the list once the session
+ * is ready, and after that only the changes, see `PresenceUpdate`. The client keeps the list, see
+ * `getPresence()`, and passes every update it applied on to the presence listener. A client can
+ * show a short status text to the others, see `setStatus`.
+ *
+ * Besides the blocking `sendMessage`, `sendToRoom` and so on, every request has an `...Async`
+ * variant that only queues the message and returns a future, so a GUI thread never waits for
+ * encryption or a slow connection. A single sender thread encrypts the queued messages and
+ * writes them in batches, with one flush per batch. The queue holds `SEND_QUEUE_CAPACITY`
+ * messages; once it is full the client reports backpressure, see `setBackpressureListener`, and
+ * rejects further messages until the sender has caught up with half of the queue.
+ *
+ * By default the client also asks for flow control, see `setFlowControl`. The server then grants
+ * credit: it acknowledges the frames it has handled so far and says how many more the client may
+ * send, see `FrameType.CREDIT`. Every frame but a heartbeat takes one credit. Once the client is
+ * out of credit, the blocking methods wait for the server to grant more, and the sender thread
+ * leaves messages in the send queue, which then fills up and reports backpressure. A burst thereby
+ * waits in the client, where the sender can see it, instead of in socket buffers.
+ *
+ * The sender thread also writes a HEARTBEAT whenever the client has sent nothing for the heartbeat
+ * interval, see `setHeartbeat`, so the server knows the client is still there. The server does the
+ * same, and a client that has not heard from the server for the idle timeout takes the connection
+ * to be dead and stops.
+ *
  * @author Philip Jonsson
- * @version 2025-04-30
+ * @version 2026-10-17
  */
 public class Client {
+    public static final int SEND_QUEUE_CAPACITY = 256; // Messages queued by the ...Async methods
+    private static final int GROUP_KEYS_KEPT = 4; // Group key epochs kept around for in-flight broadcasts
+    private static final int MAX_BATCH_BYTES = 64 * 1024; // Queued messages written before a flush
+    public static final long DEFAULT_HEARTBEAT_INTERVAL_MILLIS = 15_000;
+    public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 45_000;
+
     private final Socket socket;
-    private final BufferedReader in;
-    private final PrintWriter out;
+    private final DataInputStream in;
+    private final OutputStream out;
     private final String host;
     private final int port;
     private final MessageEncryptor encryptor;
+    private volatile MessageEncryptor session; // Encryptor for this connection, set by the key exchange
     private PublicKey serverPublicKey;
-    private boolean running;
+    private int protocolVersion;
+    private volatile boolean running;
     private Consumer<String> consumer;
+    private Consumer<String> messageListener; // Receives only the decrypted chat messages
+    private boolean logToTerminal = true;
+    private volatile SessionTicket sessionTicket;        // Latest ticket from the server, or one to resume with
+    private boolean resumed;                             // Set if the last start() resumed a session
+    private volatile long clientId = -1;                 // Id given by the server, -1 until known
+    private PayloadCompressor compressor = new PayloadCompressor(); // Null to not ask for compression
+    private volatile boolean compression;                // Set if the server agreed to compression
+    private boolean askFlowControl = true;               // Whether to ask the server for flow control
+    private volatile boolean flowControl;                // Set if the server agreed to flow control
+    private final Object credit = new Object();          // Guards the two counts below
+    private long framesSent = 0;                         // Credited frames sent, or about to be
+    private long creditLimit = 0;                        // Most credited frames the server lets us send so far
+    private final BlockingQueue<OutgoingMessage> sendQueue = new ArrayBlockingQueue<>(SEND_QUEUE_CAPACITY);
+    private final AtomicBoolean backpressured = new AtomicBoolean(); // Set from full until half empty
+    private Consumer<Boolean> backpressureListener;
+    private Thread senderThread;
+    private long heartbeatIntervalMillis = DEFAULT_HEARTBEAT_INTERVAL_MILLIS;
+    private long idleTimeoutMillis = DEFAULT_IDLE_TIMEOUT_MILLIS;
+    private volatile long lastWrite = System.nanoTime();         // When a frame was last written to the server
+    private final Map<Long, String> presence = new TreeMap<>(); // Clients online -> status, guarded by itself
+    private long presenceVersion = -1;                           // Version of the list, guarded by presence
+    private Consumer<PresenceUpdate> presenceListener;
+    private final Map<Integer, GroupKey> groupKeys = new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, GroupKey> eldest) {
+            return size() > GROUP_KEYS_KEPT;
+        }
+    };
 
     /**
      * Client constructor
      */
     public Client(String host, int port, MessageEncryptor encryptor) throws Exception {
         this.socket = new Socket(host, port);
-        this.in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-        this.out = new PrintWriter(socket.getOutputStream(), true);
+        this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        this.out = new BufferedOutputStream(socket.getOutputStream());
         this.host = host;
         this.port = port;
         this.encryptor = encryptor;
@@ -58,31 +159,256 @@ public class Client {
     }
 
     /**
-     * Entry point for the client. 
+     * Setter for a listener that receives every decrypted chat message as plain text, without
+     * the status messages sent to the Consumer. Used by headless clients such as load generators.
+     */
+    public void setMessageListener(Consumer<String> messageListener) {
+        this.messageListener = messageListener;
+    }
+
+    /**
+     * Setter for a listener told when the send queue fills up, with true, and when it has room
+     * again, with false. Called on the thread that queued the message or on the sender thread,
+     * so a GUI has to hand the call over to its own thread.
+     */
+    public void setBackpressureListener(Consumer<Boolean> backpressureListener) {
+        this.backpressureListener = backpressureListener;
+    }
+
+    /**
+     * Returns true while the send queue is full, or has not drained to half of it since.
+     */
+    public boolean isBackpressured() {
+        return backpressured.get();
+    }
+
+    /**
+     * Setter for a listener that receives every presence update the client applied to its list
+     * of clients online, see `getPresence()`. Called on the thread that reads from the server.
+     */
+    public void setPresenceListener(Consumer<PresenceUpdate> presenceListener) {
+        this.presenceListener = presenceListener;
+    }
+
+    /**
+     * Returns a copy of the list of clients online on the server, by id, with their statuses.
+     */
+    public Map<Long, String> getPresence() {
+        synchronized (presence) {
+            return new TreeMap<>(presence);
+        }
+    }
+
+    /**
+     * Turns logging to the terminal on or off. Messages still reach the Consumer.
+     */
+    public void setLogToTerminal(boolean logToTerminal) {
+        this.logToTerminal = logToTerminal;
+    }
+
+    /**
+     * Sets how chat messages are compressed if the server agrees, or null to not ask for
+     * compression. Must be called before `start()`.
+     */
+    public void setCompression(PayloadCompressor compressor) {
+        this.compressor = compressor;
+    }
+
+    /**
+     * Sets how long the client waits with nothing to send before it sends a heartbeat, and how
+     * long it waits without hearing from the server before it gives up on the connection. The
+     * interval must be well below the server's idle timeout, see `ChatServer.setHeartbeat`. Must
+     * be called before `start()`.
+     */
+    public void setHeartbeat(long intervalMillis, long idleTimeoutMillis) {
+        if (intervalMillis <= 0 || idleTimeoutMillis <= 0) {
+            throw new IllegalArgumentException("Heartbeat interval and idle timeout must be positive");
+        }
+        this.heartbeatIntervalMillis = intervalMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+    }
+
+    /**
+     * Sets whether the client asks the server for flow control. Must be called before `start()`.
+     */
+    public void setFlowControl(boolean flowControl) {
+        this.askFlowControl = flowControl;
+    }
+
+    /**
+     * Returns true if the server agreed to flow control in the key exchange.
+     */
+    public boolean usesFlowControl() {
+        return flowControl;
+    }
+
+    /**
+     * Returns how many more frames the server currently lets the client send, or -1 without
+     * flow control.
+     */
+    public long getCredit() {
+        if (!flowControl) {
+            return -1;
+        }
+        synchronized (credit) {
+            return creditLimit - framesSent;
+        }
+    }
+
+    /**
+     * Returns true if the server agreed to compress chat messages in the key exchange.
+     */
+    public boolean usesCompression() {
+        return compression;
+    }
+
+    /**
+     * Returns the latest session ticket sent by the server, or null if there is none.
+     */
+    public SessionTicket getSessionTicket() {
+        return sessionTicket;
+    }
+
+    /**
+     * Sets a session ticket from an earlier connection, to resume that session in `start()`
+     * instead of running the full key exchange.
+     */
+    public void setSessionTicket(SessionTicket sessionTicket) {
+        this.sessionTicket = sessionTicket;
+    }
+
+    /**
+     * Returns the id the server gave this client, which other clients send direct messages to,
+     * or -1 if it is not known yet.
+     */
+    public long getClientId() {
+        return clientId;
+    }
+
+    /**
+     * Returns true if `start()` resumed a session from a ticket instead of running the key exchange.
+     */
+    public boolean isResumed() {
+        return resumed;
+    }
+
+    /**
+     * Opens a new connection to the same server with the same encryptor, consumer and listener,
+     * resuming this client's session if it holds a session ticket, and starts it. This client
+     * is stopped.
+     */
+    public Client reconnect() throws Exception {
+        stop();
+        Client client = new Client(host, port, encryptor);
+        client.setConsumer(consumer);
+        client.setMessageListener(messageListener);
+        client.setLogToTerminal(logToTerminal);
+        client.setSessionTicket(sessionTicket);
+        client.setCompression(compressor);
+        client.setFlowControl(askFlowControl);
+        client.setBackpressureListener(backpressureListener);
+        client.setPresenceListener(presenceListener);
+        client.setHeartbeat(heartbeatIntervalMillis, idleTimeoutMillis);
+        client.start();
+        return client;
+    }
+
+    /**
+     * Returns true once the key exchange has completed and messages can be sent.
+     */
+    public boolean isReady() {
+        return session != null && !socket.isClosed();
+    }
+
+    /**
+     * Entry point for the client.
      * Connects to the server, sends/receives keys, and sets up I/O communication streams.
      */
     public void start() {
         try {
             log("Connected");
+            socket.setSoTimeout((int) Math.min(Integer.MAX_VALUE, idleTimeoutMillis)); // Reads fail once the server has been quiet this long
 
-            // Send client's public key to server
-            String clientKeyBase64 = Base64.getEncoder().encodeToString(encryptor.getPublicKey().getEncoded());
-            out.println(clientKeyBase64);
+            // Resume the previous session if we have a ticket, otherwise run the full key exchange
+            resumed = sessionTicket != null && resumeSession(sessionTicket);
+            if (!resumed) {
+                exchangeKeys();
+            }
+
+            log((resumed ? "Session resumed." : "Key exchange complete.") + "\n" + "Type your message and hit Enter. Type 'exit' to disconnect.");
 
-            // Receive server's public key
-            String serverKeyBase64 = in.readLine();
-            serverPublicKey = convertBase64ToKey(serverKeyBase64);
-            
-            log("Key exchange complete.\n" + "Type your message and hit Enter. Type 'exit' to disconnect.");
+            // Launch the thread that writes queued messages
+            senderThread = new Thread(this::writeQueuedMessages, "client-sender");
+            senderThread.setDaemon(true);
+            senderThread.start();
 
             // Launch a thread to listen for incoming messages
             Thread listenerThread = new Thread(() -> listenForMessages(in));
             listenerThread.start();
 
-            System.out.println("Disconnected.");
+            if (logToTerminal) {
+                System.out.println("Disconnected.");
+            }
 
         } catch (IOException e) {
             System.err.println("Connection error: " + e.getMessage());
+        } catch (Exception e) {
+            System.err.println("Key exchange failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Full key exchange: sends the client's HELLO and reads the server's HELLO and, if the
+     * encryptor uses one, the session key.
+     */
+    private void exchangeKeys() throws Exception {
+        // Send client's protocol version and public key to server
+        writeFrame(Frame.hello(FrameCodec.PROTOCOL_VERSION, requestedFeatures(), encryptor.getPublicKey().getEncoded()));
+
+        // Receive server's protocol version, the features it agreed to, and public key
+        Frame hello = expectFrame(FrameType.HELLO);
+        checkVersion(hello.getVersion());
+        acceptFeatures(hello.getFeatures());
+        serverPublicKey = convertToKey(hello.getPublicKey());
+
+        // Receive the session key, if the encryptor uses one
+        byte[] wrappedSessionKey = encryptor.usesSessionKeys() ? expectFrame(FrameType.SESSION_KEY).getPayload() : null;
+        session = encryptor.joinSession(serverPublicKey, wrappedSessionKey);
+    }
+
+    /**
+     * Presents a session ticket to the server.
+     *
+     * @return true if the session was resumed, false if the server wants a full key exchange
+     */
+    private boolean resumeSession(SessionTicket ticket) throws Exception {
+        byte[] nonce = SessionTicket.newNonce();
+        writeFrame(Frame.resume(FrameCodec.PROTOCOL_VERSION, requestedFeatures(), nonce, ticket.getTicket()));
+
+        Frame reply = expectFrame(FrameType.RESUME);
+        if (!reply.isResumeAccepted()) {
+            sessionTicket = null; // Expired or unknown to this server
+            return false;
+        }
+        checkVersion(reply.getVersion());
+        acceptFeatures(reply.getFeatures());
+        session = ticket.resume(nonce, reply.getResumeNonce());
+        return true;
+    }
+
+    private int requestedFeatures() {
+        return (compressor != null ? FrameCodec.FEATURE_COMPRESSION : 0) | (askFlowControl ? FrameCodec.FEATURE_FLOW_CONTROL : 0);
+    }
+
+    private void acceptFeatures(int features) {
+        compression = compressor != null && (features & FrameCodec.FEATURE_COMPRESSION) != 0;
+        flowControl = askFlowControl && (features & FrameCodec.FEATURE_FLOW_CONTROL) != 0;
+    }
+
+    private void checkVersion(int version) throws ProtocolException {
+        protocolVersion = version;
+        if (FrameCodec.negotiateVersion(protocolVersion) != protocolVersion) {
+            throw new ProtocolException("Server chose unsupported protocol version " + protocolVersion);
         }
     }
 
@@ -90,6 +416,14 @@ public class Client {
      * Stops the client by closing the socket and streams.
      */
     public void stop() {
+        running = false;
+        if (senderThread != null) {
+            senderThread.interrupt();
+        }
+        synchronized (credit) {
+            credit.notifyAll(); // Wakes senders waiting for credit
+        }
+        failQueuedMessages(new IOException("Client stopped"));
         try {
             if (in != null) in.close();
             if (out != null) out.close();
@@ -97,76 +431,598 @@ public class Client {
         } catch (IOException e) {
             e.printStackTrace();
         }
-        running = false;
     }
 
-    
+
     /**
      * Continuously listens for incoming messages from the server,
      * decrypts, and displays them.
      */
-    private void listenForMessages(BufferedReader in) {
+    private void listenForMessages(DataInputStream in) {
         try {
-            String received;
-            while ((received = in.readLine()) != null) {
+            Frame frame;
+            while ((frame = FrameCodec.read(in)) != null) {
                 try {
-                    String decrypted = encryptor.decrypt(received);
-                    log("[Received] " + decrypted);
+                    handleFrame(frame);
                 } catch (Exception e) {
                     log("Decryption failed: " + e.getMessage());
                 }
             }
+            log("Disconnected from server.");
+        } catch (SocketTimeoutException e) {
+            if (running) {
+                log("Server not responding, disconnected.");
+                stop();
+            }
         } catch (IOException e) {
             log("Disconnected from server.");
         }
     }
 
+    /**
+     * Handles a frame received after the key exchange.
+     */
+    private void handleFrame(Frame frame) throws Exception {
+        switch (frame.getType()) {
+            case MESSAGE:
+                received(new String(decryptChat(frame.getPayload()), StandardCharsets.UTF_8));
+                break;
+            case GROUP_KEY:
+                receiveGroupKey(frame);
+                break;
+            case GROUP_MESSAGE:
+                received(new String(decompress(decryptGroupMessage(frame)), StandardCharsets.UTF_8));
+                break;
+            case ROOM_MESSAGE:
+                receivedInRoom(RoomMessage.decode(decryptChat(frame.getPayload())));
+                break;
+            case GROUP_ROOM_MESSAGE:
+                receivedInRoom(RoomMessage.decode(decompress(decryptGroupMessage(frame))));
+                break;
+            case DIRECT_MESSAGE:
+                DirectMessage direct = DirectMessage.decode(decryptChat(frame.getPayload()));
+                log("[From #" + direct.getPeerId() + "] " + direct.getText());
+                if (messageListener != null) {
+                    messageListener.accept(direct.getText());
+                }
+                break;
+            case HISTORY_MESSAGE:
+                HistoryMessage history = HistoryMessage.decode(decryptChat(frame.getPayload()));
+                log("[" + new SimpleDateFormat("HH:mm:ss").format(new Date(history.getTimestamp())) + "] " + history.getText());
+                break;
+            case CLIENT_ID:
+                clientId = ByteBuffer.wrap(frame.getPayload()).getLong();
+                log("Your id is #" + clientId);
+                break;
+            case SESSION_TICKET:
+                byte[] resumptionSecret = session.getResumptionSecret();
+                if (resumptionSecret != null) {
+                    sessionTicket = new SessionTicket(frame.getPayload(), resumptionSecret);
+                }
+                break;
+            case PRESENCE:
+                receivePresence(PresenceUpdate.decode(session.decrypt(frame.getPayload())));
+                break;
+            case CREDIT:
+                grantCredit(frame.getCreditAcknowledged(), frame.getCreditWindow());
+                break;
+            case HEARTBEAT:
+                break; // Keeps the read timeout from firing, not shown in the chat
+            default:
+                log("Unexpected frame from server: " + frame);
+                break;
+        }
+    }
+
+    /**
+     * Raises the credit limit to what a CREDIT frame allows, and wakes the senders waiting for it.
+     * A limit below the current one is ignored, credit once granted stays granted.
+     */
+    private void grantCredit(long acknowledged, int window) {
+        synchronized (credit) {
+            if (acknowledged + window > creditLimit) {
+                creditLimit = acknowledged + window;
+                credit.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Takes one credit for a frame about to be sent, waiting up to the given time for the server
+     * to grant more if there is none. Always succeeds without flow control.
+     *
+     * @return false if no credit was granted in time, or the client stopped
+     */
+    private boolean takeCredit(long timeoutNanos) throws InterruptedException {
+        if (!flowControl) {
+            return true;
+        }
+        synchronized (credit) {
+            long deadline = System.nanoTime() + timeoutNanos;
+            while (framesSent >= creditLimit) {
+                long wait = deadline - System.nanoTime();
+                if (!running || wait <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(credit, wait);
+            }
+            framesSent++;
+            return true;
+        }
+    }
+
+    /**
+     * Gives back a credit taken for a frame that was not sent after all.
+     */
+    private void returnCredit() {
+        if (flowControl) {
+            synchronized (credit) {
+                framesSent--;
+                credit.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Passes a decrypted chat message on to the log and the message listener.
+     */
+    private void received(String message) {
+        log("[Received] " + message);
+        if (messageListener != null) {
+            messageListener.accept(message);
+        }
+    }
+
+    /**
+     * Passes a decrypted room message on to the log, tagged with its room, and the message listener.
+     */
+    private void receivedInRoom(RoomMessage message) {
+        log("[" + message.getRoom() + "] " + message.getText());
+        if (messageListener != null) {
+            messageListener.accept(message.getText());
+        }
+    }
+
+    /**
+     * Applies a presence update to the list of clients online. A delta that does not start at the
+     * list's version is skipped, as it was already part of the last snapshot.
+     */
+    private void receivePresence(PresenceUpdate update) {
+        synchronized (presence) {
+            if (update.isSnapshot()) {
+                presence.clear();
+            } else if (update.getFromVersion() != presenceVersion) {
+                return;
+            }
+            for (PresenceUpdate.Entry entry : update.getEntries()) {
+                if (entry.isOnline()) {
+                    presence.put(entry.getId(), entry.getStatus());
+                } else {
+                    presence.remove(entry.getId());
+                }
+            }
+            presenceVersion = update.getToVersion();
+        }
+        if (presenceListener != null) {
+            presenceListener.accept(update);
+        }
+    }
+
+    /**
+     * Stores a group key sent by the server.
+     */
+    private void receiveGroupKey(Frame frame) throws Exception {
+        byte[] encodedKey = session.decrypt(frame.getEpochBody());
+        groupKeys.put(frame.getEpoch(), GroupKey.fromEncoded(frame.getEpoch(), encodedKey));
+    }
+
+    /**
+     * Decrypts a chat message with the session encryptor, and decompresses it if compression is on.
+     */
+    private byte[] decryptChat(byte[] encryptedMessage) throws Exception {
+        return decompress(session.decrypt(encryptedMessage));
+    }
+
+    private byte[] decompress(byte[] plainText) throws DataFormatException {
+        return compression ? PayloadCompressor.decompress(plainText) : plainText;
+    }
+
+    /**
+     * Decrypts a group broadcast with the group key of its epoch.
+     */
+    private byte[] decryptGroupMessage(Frame frame) throws Exception {
+        GroupKey key = groupKeys.get(frame.getEpoch());
+        if (key == null) {
+            throw new IllegalStateException("No group key for epoch " + frame.getEpoch());
+        }
+        return key.decrypt(frame.getEpochBody());
+    }
+
     /**
      * Encrypts and sends a message to the server.
      * If "exit" is typed, the client stops.
+     *
+     * @return true if the message was written to the server
      */
-    public void sendMessage(String message) {
+    public boolean sendMessage(String message) {
         if (running) {
             if ("exit".equalsIgnoreCase(message)) {
                 log("Exiting chat...");
                 stop();
-                return;
+                return false;
             }
-            if (serverPublicKey == null) {
-                log("Cannot send messages: server's public key is missing.");
-                return;
+            if (session == null) {
+                log("Cannot send messages: key exchange with the server is incomplete.");
+                return false;
+            }
+
+            return sendChat(FrameType.MESSAGE, message.getBytes(StandardCharsets.UTF_8));
+        }
+        return false;
+    }
+
+    /**
+     * Joins a room. Messages sent to the room by its other members are delivered from then on.
+     *
+     * @return true if the request was written to the server
+     */
+    public boolean joinRoom(String room) {
+        return sendRoomCommand(FrameType.JOIN, room);
+    }
+
+    /**
+     * Leaves a room.
+     *
+     * @return true if the request was written to the server
+     */
+    public boolean leaveRoom(String room) {
+        return sendRoomCommand(FrameType.LEAVE, room);
+    }
+
+    /**
+     * Encrypts and sends a message to the members of a room the client has joined.
+     *
+     * @return true if the message was written to the server
+     */
+    public boolean sendToRoom(String room, String message) {
+        if (!RoomMessage.isValidRoom(room)) {
+            log("Invalid room name: " + room);
+            return false;
+        }
+        return running && session != null && sendChat(FrameType.ROOM_MESSAGE, new RoomMessage(room, message).encode());
+    }
+
+    /**
+     * Encrypts and sends a direct message to the client with the given id, see `getClientId()`.
+     *
+     * @return true if the message was written to the server
+     */
+    public boolean sendDirect(long recipientId, String message) {
+        return running && session != null && sendChat(FrameType.DIRECT_MESSAGE, new DirectMessage(recipientId, message).encode());
+    }
+
+    /**
+     * Asks the server for the messages it received since the given time, in milliseconds since
+     * the epoch. The server sends at most its scrollback limit of them, oldest first.
+     *
+     * @return true if the request was written to the server
+     */
+    public boolean requestHistory(long sinceMillis) {
+        return running && session != null && sendEncrypted(FrameType.HISTORY, ByteBuffer.allocate(Long.BYTES).putLong(sinceMillis).array());
+    }
+
+    /**
+     * Sets the status text the other clients see next to this client in their list of clients
+     * online, or an empty one for none. Cut down to `PresenceUpdate.MAX_STATUS_LENGTH` characters.
+     *
+     * @return true if the status was written to the server
+     */
+    public boolean setStatus(String status) {
+        return running && session != null
+                && sendEncrypted(FrameType.PRESENCE, PresenceUpdate.truncateStatus(status).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private boolean sendRoomCommand(FrameType command, String room) {
+        if (!RoomMessage.isValidRoom(room)) {
+            log("Invalid room name: " + room);
+            return false;
+        }
+        return running && session != null && sendEncrypted(command, room.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Queues a message to the server, like `sendMessage` but without waiting for it to be
+     * encrypted and written. Does not treat "exit" as a command.
+     *
+     * @return a future completed once the message has been written to the server, or completed
+     *         exceptionally if it could not be, with a `RejectedExecutionException` if the send
+     *         queue is full
+     */
+    public CompletableFuture<Void> sendMessageAsync(String message) {
+        return enqueue(FrameType.MESSAGE, message.getBytes(StandardCharsets.UTF_8), true);
+    }
+
+    /**
+     * Queues a message to the members of a room, like `sendToRoom`.
+     *
+     * @return a future completed once the message has been written, see `sendMessageAsync`
+     */
+    public CompletableFuture<Void> sendToRoomAsync(String room, String message) {
+        if (!RoomMessage.isValidRoom(room)) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException("Invalid room name: " + room));
+        }
+        return enqueue(FrameType.ROOM_MESSAGE, new RoomMessage(room, message).encode(), true);
+    }
+
+    /**
+     * Queues a direct message to the client with the given id, like `sendDirect`.
+     *
+     * @return a future completed once the message has been written, see `sendMessageAsync`
+     */
+    public CompletableFuture<Void> sendDirectAsync(long recipientId, String message) {
+        return enqueue(FrameType.DIRECT_MESSAGE, new DirectMessage(recipientId, message).encode(), true);
+    }
+
+    /**
+     * Queues a request to join a room, like `joinRoom`. Goes through the same queue as messages,
+     * so it is written after the messages queued before it.
+     *
+     * @return a future completed once the request has been written, see `sendMessageAsync`
+     */
+    public CompletableFuture<Void> joinRoomAsync(String room) {
+        return enqueueRoomCommand(FrameType.JOIN, room);
+    }
+
+    /**
+     * Queues a request to leave a room, like `leaveRoom`.
+     *
+     * @return a future completed once the request has been written, see `sendMessageAsync`
+     */
+    public CompletableFuture<Void> leaveRoomAsync(String room) {
+        return enqueueRoomCommand(FrameType.LEAVE, room);
+    }
+
+    /**
+     * Queues a request for the messages since the given time, like `requestHistory`.
+     *
+     * @return a future completed once the request has been written, see `sendMessageAsync`
+     */
+    public CompletableFuture<Void> requestHistoryAsync(long sinceMillis) {
+        return enqueue(FrameType.HISTORY, ByteBuffer.allocate(Long.BYTES).putLong(sinceMillis).array(), false);
+    }
+
+    /**
+     * Queues a status change, like `setStatus`.
+     *
+     * @return a future completed once the status has been written, see `sendMessageAsync`
+     */
+    public CompletableFuture<Void> setStatusAsync(String status) {
+        return enqueue(FrameType.PRESENCE, PresenceUpdate.truncateStatus(status).getBytes(StandardCharsets.UTF_8), false);
+    }
+
+    private CompletableFuture<Void> enqueueRoomCommand(FrameType command, String room) {
+        if (!RoomMessage.isValidRoom(room)) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException("Invalid room name: " + room));
+        }
+        return enqueue(command, room.getBytes(StandardCharsets.UTF_8), false);
+    }
+
+    /**
+     * Adds a message to the send queue, and reports backpressure if that fills the queue.
+     *
+     * @param chat true if the payload is a chat message, to be compressed if compression is on
+     */
+    private CompletableFuture<Void> enqueue(FrameType type, byte[] payload, boolean chat) {
+        if (!running || session == null) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Not connected to the server"));
+        }
+        OutgoingMessage message = new OutgoingMessage(type, payload, chat);
+        if (!sendQueue.offer(message)) {
+            setBackpressured(true);
+            return CompletableFuture.failedFuture(new RejectedExecutionException("Send queue is full"));
+        }
+        if (sendQueue.remainingCapacity() == 0) {
+            setBackpressured(true);
+        }
+        if (!running) {
+            failQueuedMessages(new IOException("Client stopped")); // Raced with stop()
+        }
+        return message.result;
+    }
+
+    private void setBackpressured(boolean full) {
+        if (backpressured.compareAndSet(!full, full) && backpressureListener != null) {
+            backpressureListener.accept(full);
+        }
+    }
+
+    /**
+     * Sender thread: takes queued messages, encrypts them and writes them in batches of up to
+     * `MAX_BATCH_BYTES` with a single flush, so many lines pasted at once go out together. With
+     * flow control a batch is also no larger than the credit left, and the sender waits for more
+     * credit before it takes the next message. Writes a heartbeat instead once nothing has been
+     * written for the heartbeat interval.
+     */
+    private void writeQueuedMessages() {
+        List<OutgoingMessage> batch = new ArrayList<>();
+        List<Frame> frames = new ArrayList<>();
+        long intervalNanos = TimeUnit.MILLISECONDS.toNanos(heartbeatIntervalMillis);
+        OutgoingMessage message = null; // Taken from the queue, but still waiting for credit
+        try {
+            while (running) {
+                if (message == null) {
+                    message = sendQueue.poll(lastWrite + intervalNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+                }
+                if (message == null || !takeCredit(lastWrite + intervalNanos - System.nanoTime())) {
+                    if (System.nanoTime() - lastWrite >= intervalNanos) {
+                        sendHeartbeat();
+                    }
+                    continue;
+                }
+                int bytes = 0;
+                while (message != null) {
+                    try {
+                        byte[] payload = message.chat && compression ? compressor.compress(message.payload) : message.payload;
+                        Frame frame = new Frame(message.type, session.encrypt(payload, serverPublicKey));
+                        frames.add(frame);
+                        batch.add(message);
+                        bytes += frame.getEncodedLength();
+                    } catch (Exception e) {
+                        returnCredit();
+                        message.result.completeExceptionally(e); // Only this message is lost
+                    }
+                    message = bytes < MAX_BATCH_BYTES && !sendQueue.isEmpty() && takeCredit(0) ? takeQueuedOrReturnCredit() : null;
+                }
+
+                try {
+                    synchronized (out) {
+                        for (Frame frame : frames) {
+                            FrameCodec.write(out, frame);
+                        }
+                        out.flush();
+                        lastWrite = System.nanoTime();
+                    }
+                    batch.forEach(written -> written.result.complete(null));
+                } catch (IOException e) {
+                    batch.forEach(failed -> failed.result.completeExceptionally(e));
+                }
+                batch.clear();
+                frames.clear();
+
+                if (sendQueue.size() <= SEND_QUEUE_CAPACITY / 2) {
+                    setBackpressured(false);
+                }
             }
-            
-            try {
-                String encrypted = encryptor.encrypt(message, serverPublicKey);
-                out.println(encrypted);
-            } catch (Exception e) {
-                System.err.println("Encryption failed: " + e.getMessage());
+        } catch (InterruptedException e) {
+            // Stopped
+        }
+        if (message != null) {
+            message.result.completeExceptionally(new IOException("Client stopped"));
+        }
+        failQueuedMessages(new IOException("Client stopped"));
+    }
+
+    /**
+     * Takes the next queued message for a credit already taken, or gives the credit back if the
+     * queue was emptied in the meantime, e.g. by `stop()`.
+     */
+    private OutgoingMessage takeQueuedOrReturnCredit() {
+        OutgoingMessage message = sendQueue.poll();
+        if (message == null) {
+            returnCredit();
+        }
+        return message;
+    }
+
+    private void sendHeartbeat() {
+        try {
+            writeFrame(new Frame(FrameType.HEARTBEAT));
+        } catch (IOException e) {
+            lastWrite = System.nanoTime(); // Not retried before the next interval, the reader will notice the connection is gone
+        }
+    }
+
+    private void failQueuedMessages(Exception cause) {
+        OutgoingMessage message;
+        while ((message = sendQueue.poll()) != null) {
+            message.result.completeExceptionally(cause);
+        }
+    }
+
+    /**
+     * A message waiting in the send queue, still unencrypted.
+     */
+    private static class OutgoingMessage {
+        final FrameType type;
+        final byte[] payload;
+        final boolean chat;
+        final CompletableFuture<Void> result = new CompletableFuture<>();
+
+        OutgoingMessage(FrameType type, byte[] payload, boolean chat) {
+            this.type = type;
+            this.payload = payload;
+            this.chat = chat;
+        }
+    }
+
+    /**
+     * Sends a chat message frame, compressing the message first if compression is on.
+     */
+    private boolean sendChat(FrameType type, byte[] message) {
+        return sendEncrypted(type, compression ? compressor.compress(message) : message);
+    }
+
+    /**
+     * Encrypts a payload with the session encryptor and sends it as a frame of the given type,
+     * once the server has granted credit for it.
+     */
+    private boolean sendEncrypted(FrameType type, byte[] payload) {
+        try {
+            if (!takeCredit(Long.MAX_VALUE)) {
+                return false; // Stopped while waiting
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        try {
+            writeFrame(new Frame(type, session.encrypt(payload, serverPublicKey)));
+            return true;
+        } catch (IOException e) {
+            System.err.println("Send failed: " + e.getMessage());
+        } catch (Exception e) {
+            System.err.println("Encryption failed: " + e.getMessage());
         }
+        returnCredit();
+        return false;
     }
-    
+
     /**
      * Logs a message to both the terminal and the consumer, if one has been set.
      */
     public void log(String message) {
-        System.err.println(message); // Log to terminal
+        if (logToTerminal) {
+            System.err.println(message); // Log to terminal
+        }
         if (consumer != null) {
             consumer.accept(message);
         }
     }
-    
+
+    /**
+     * Writes a single frame to the server. Synchronized, as the GUI and the client's own threads
+     * may send at the same time.
+     */
+    private void writeFrame(Frame frame) throws IOException {
+        synchronized (out) {
+            FrameCodec.write(out, frame);
+            out.flush();
+            lastWrite = System.nanoTime();
+        }
+    }
+
+    /**
+     * Reads the next frame during the key exchange, which must be of the expected type.
+     */
+    private Frame expectFrame(FrameType expected) throws IOException {
+        Frame frame = FrameCodec.read(in);
+        if (frame == null) {
+            throw new EOFException("Server closed the connection during the key exchange");
+        }
+        if (frame.getType() != expected) {
+            throw new ProtocolException("Expected " + expected + ", got " + frame.getType());
+        }
+        return frame;
+    }
+
     /**
-     * Helper method to convert Base64 key to PublicKey
+     * Helper method to convert encoded key bytes to PublicKey
      */
-    private PublicKey convertBase64ToKey(String serverKeyBase64) {
-        byte[] keyBytes = Base64.getDecoder().decode(serverKeyBase64);
+    private PublicKey convertToKey(byte[] keyBytes) {
         // Convert byte array into PublicKey
         PublicKey serverPublicKey = null;
         try {
-            KeyFactory factory = KeyFactory.getInstance("RSA");
-            X509EncodedKeySpec spec = new X509EncodedKeySpec(keyBytes);
-            serverPublicKey = factory.generatePublic(spec);
+            serverPublicKey = PublicKeys.decode(keyBytes); // RSA or X25519, matching our own key
         } catch (Exception e) {
             System.err.println("Key construction failed: " + e.getMessage());
         }
@@ -178,11 +1034,11 @@ public class Client {
      */
     public static void main(String[] args) {
         try {
-            SecureMessenger encryptor = new SecureMessenger();
+            MessageEncryptor encryptor = new HybridMessenger();
             Client client = new Client("localhost", 12345, encryptor);
             client.start();
         } catch (Exception e) {
-            System.err.println("Failed to intialize SecureMessenger: " + e.getMessage());
+            System.err.println("Failed to intialize encryptor: " + e.getMessage());
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,66 @@
+package com.chatapp.cryptography;
+
+import javax.crypto.SecretKey;
+
+/**
+ * A symmetric AES-GCM key shared by every member of the chat, used to encrypt a broadcast once
+ * instead of once per recipient.
+ *
+ * Each key has an epoch number. The server generates a new key with the next epoch whenever a
+ * member joins or leaves, and hands it to every member encrypted with their own session
+ * encryptor. Broadcasts are tagged with the epoch of the key they were encrypted with, so
+ * members can keep decrypting messages that were already in flight during a rotation.
+ *
+ * On the wire the keys travel in `GROUP_KEY` frames and the broadcasts in `GROUP_MESSAGE` frames,
+ * both tagged with the epoch.
+ *
+ * @version 2026-10-17
+ */
+public final class GroupKey {
+    private final int epoch;
+    private final SecretKey key;
+
+    private GroupKey(int epoch, SecretKey key) {
+        this.epoch = epoch;
+        this.key = key;
+    }
+
+    /**
+     * Generates a new random group key for the given epoch.
+     */
+    public static GroupKey generate(int epoch) throws Exception {
+        return new GroupKey(epoch, SessionCipher.generateKey());
+    }
+
+    /**
+     * Rebuilds a group key received from the server.
+     */
+    public static GroupKey fromEncoded(int epoch, byte[] encodedKey) {
+        return new GroupKey(epoch, SessionCipher.keyFromBytes(encodedKey));
+    }
+
+    public int getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * Returns the raw key bytes, to be encrypted for each member before they are sent.
+     */
+    public byte[] getEncodedKey() {
+        return key.getEncoded();
+    }
+
+    /**
+     * Encrypts a broadcast with the group key.
+     */
+    public byte[] encrypt(byte[] message) throws Exception {
+        return SessionCipher.encrypt(key, message);
+    }
+
+    /**
+     * Decrypts a broadcast encrypted with the group key.
+     */
+    public byte[] decrypt(byte[] encryptedMessage) throws Exception {
+        return SessionCipher.decrypt(key, encryptedMessage);
+    }
+}
\ No newline at end of file
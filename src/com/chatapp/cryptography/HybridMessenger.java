@@ -0,0 +1,162 @@
+package com.chatapp.cryptography;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.Key;
+import java.security.PublicKey;
+import java.util.Base64;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+
+/**
+ * The HybridMessenger class uses RSA only for the key exchange, and AES-GCM for the messages.
+ *
+ * During the key exchange the server generates a random AES session key for the connection,
+ * wraps it with the client's RSA public key and sends it as the last step of the exchange.
+ * The client unwraps it with its private key. From then on both sides encrypt every message
+ * with the shared session key, which is far cheaper than RSA and has no message size limit.
+ *
+ * A HybridMessenger created with its constructor only holds the RSA key pair; the per-connection
+ * instances returned by `openSession`/`joinSession` hold the session key and are used for the
+ * messages.
+ *
+ * @version 2026-10-17
+ */
+public class HybridMessenger implements MessageEncryptor {
+    private static final String WRAP_TRANSFORMATION = "RSA/ECB/OAEPWithSHA-256AndMGF1Padding";
+
+    private final SecureMessenger identity;    // RSA key pair used for the key exchange
+    private final SecretKey sessionKey;        // Null until the key exchange is done
+    private final SessionCipher.KeyedCipher bufferCipher; // For encrypting into buffers, null without a session key
+    private final byte[] wrappedSessionKey;    // Session key wrapped for the peer, server side only
+
+    /**
+     * Constructs a HybridMessenger with a newly generated RSA key pair.
+     * @throws Exception if key generation fails.
+     */
+    public HybridMessenger() throws Exception {
+        this(new SecureMessenger());
+    }
+
+    /**
+     * Constructs a HybridMessenger that uses an existing RSA key pair for the key exchange.
+     */
+    public HybridMessenger(SecureMessenger identity) {
+        this(identity, null, null);
+    }
+
+    private HybridMessenger(SecureMessenger identity, SecretKey sessionKey, byte[] wrappedSessionKey) {
+        this.identity = identity;
+        this.sessionKey = sessionKey;
+        this.bufferCipher = sessionKey != null ? new SessionCipher.KeyedCipher(sessionKey) : null;
+        this.wrappedSessionKey = wrappedSessionKey;
+    }
+
+    /**
+     * Encrypts a message with the session key. The receiver's public key is not needed, as the
+     * session key is specific to one connection already.
+     *
+     * @return the encrypted message as a Base64 string
+     */
+    @Override
+    public String encrypt(String message, PublicKey receiverPublicKey) throws Exception {
+        byte[] encrypted = SessionCipher.encrypt(requireSessionKey(), message.getBytes(StandardCharsets.UTF_8));
+        return Base64.getEncoder().encodeToString(encrypted);
+    }
+
+    /**
+     * Decrypts a message with the session key.
+     */
+    @Override
+    public String decrypt(String encryptedMessage) throws Exception {
+        byte[] decrypted = SessionCipher.decrypt(requireSessionKey(), Base64.getDecoder().decode(encryptedMessage));
+        return new String(decrypted, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public byte[] encrypt(byte[] message, PublicKey receiverPublicKey) throws Exception {
+        return SessionCipher.encrypt(requireSessionKey(), message);
+    }
+
+    @Override
+    public byte[] decrypt(byte[] encryptedMessage) throws Exception {
+        return SessionCipher.decrypt(requireSessionKey(), encryptedMessage);
+    }
+
+    @Override
+    public int encryptedLength(int messageLength) {
+        return sessionKey != null ? SessionCipher.encryptedLength(messageLength) : -1;
+    }
+
+    @Override
+    public void encrypt(ByteBuffer message, ByteBuffer out) throws Exception {
+        requireSessionKey();
+        bufferCipher.encrypt(message, out);
+    }
+
+    @Override
+    public int decryptedLength(int encryptedLength) {
+        return sessionKey != null ? SessionCipher.decryptedLength(encryptedLength) : -1;
+    }
+
+    @Override
+    public void decrypt(ByteBuffer encryptedMessage, ByteBuffer out) throws Exception {
+        SessionCipher.decrypt(requireSessionKey(), encryptedMessage, out);
+    }
+
+    @Override
+    public PublicKey getPublicKey() {
+        return identity.getPublicKey();
+    }
+
+    @Override
+    public boolean usesSessionKeys() {
+        return true;
+    }
+
+    /**
+     * Generates a new session key and wraps it with the peer's public key.
+     */
+    @Override
+    public MessageEncryptor openSession(PublicKey peerPublicKey) throws Exception {
+        SecretKey key = SessionCipher.generateKey();
+
+        Cipher cipher = Cipher.getInstance(WRAP_TRANSFORMATION);
+        cipher.init(Cipher.WRAP_MODE, peerPublicKey);
+        byte[] wrapped = cipher.wrap(key);
+
+        return new HybridMessenger(identity, key, wrapped);
+    }
+
+    @Override
+    public byte[] getWrappedSessionKey() {
+        return wrappedSessionKey;
+    }
+
+    /**
+     * Unwraps the session key sent by the server with this messenger's private key.
+     */
+    @Override
+    public MessageEncryptor joinSession(PublicKey peerPublicKey, byte[] wrappedSessionKey) throws Exception {
+        if (wrappedSessionKey == null) {
+            throw new IllegalArgumentException("No session key received");
+        }
+        Cipher cipher = Cipher.getInstance(WRAP_TRANSFORMATION);
+        cipher.init(Cipher.UNWRAP_MODE, identity.getPrivateKey());
+        Key key = cipher.unwrap(wrappedSessionKey, "AES", Cipher.SECRET_KEY);
+
+        return new HybridMessenger(identity, (SecretKey) key, null);
+    }
+
+    @Override
+    public byte[] getResumptionSecret() throws Exception {
+        return sessionKey == null ? null : SessionCipher.resumptionSecret(sessionKey);
+    }
+
+    private SecretKey requireSessionKey() {
+        if (sessionKey == null) {
+            throw new IllegalStateException("Key exchange has not been completed");
+        }
+        return sessionKey;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,110 @@
+package com.chatapp.cryptography;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.util.Base64;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Keeps a long-lived key pair in a local file, so a restarted server can load its key instead of
+ * generating a new one.
+ *
+ * The file holds the private key in its PKCS#8 encoding and the public key in its X.509 encoding,
+ * as the PEM blocks `openssl` reads and writes, for RSA and X25519 keys alike. A Java `KeyStore`
+ * would need a certificate for the key, which the JDK has no public API to create.
+ *
+ * The file is as secret as the key: on file systems that support it, it is only readable by its
+ * owner, and it is written to a temporary file first and then moved into place, so a crash never
+ * leaves half a key behind. Anyone who can read it can read the server's past sessions, see
+ * `X25519Messenger`.
+ *
+ * @version 2026-10-17
+ */
+public final class KeyFiles {
+    private static final Pattern PEM = Pattern.compile("-----BEGIN ([A-Z ]+)-----([^-]*)-----END \\1-----");
+
+    /**
+     * Where a key pair comes from if there is no file yet, e.g. `KeyPairPool::take`.
+     */
+    @FunctionalInterface
+    public interface Source {
+        KeyPair get() throws GeneralSecurityException;
+    }
+
+    private KeyFiles() {
+    }
+
+    /**
+     * Loads the key pair in the given file, or takes a new one from the source and saves it
+     * there if the file does not exist.
+     */
+    public static KeyPair loadOrCreate(Path file, Source source) throws IOException, GeneralSecurityException {
+        if (Files.exists(file)) {
+            return load(file);
+        }
+        KeyPair pair = source.get();
+        save(file, pair);
+        return pair;
+    }
+
+    /**
+     * Loads a key pair saved with `save`.
+     */
+    public static KeyPair load(Path file) throws IOException, GeneralSecurityException {
+        byte[] privateEncoded = null;
+        byte[] publicEncoded = null;
+        Matcher block = PEM.matcher(Files.readString(file, StandardCharsets.US_ASCII));
+        while (block.find()) {
+            byte[] der = Base64.getMimeDecoder().decode(block.group(2));
+            if (block.group(1).equals("PRIVATE KEY")) {
+                privateEncoded = der;
+            } else if (block.group(1).equals("PUBLIC KEY")) {
+                publicEncoded = der;
+            }
+        }
+        if (privateEncoded == null || publicEncoded == null) {
+            throw new IOException("No key pair in " + file);
+        }
+        PublicKey publicKey = PublicKeys.decode(publicEncoded);
+        PrivateKey privateKey = KeyFactory.getInstance(PublicKeys.algorithmOf(publicEncoded))
+                .generatePrivate(new PKCS8EncodedKeySpec(privateEncoded));
+        return new KeyPair(publicKey, privateKey);
+    }
+
+    /**
+     * Saves a key pair, replacing the file if it exists.
+     */
+    public static void save(Path file, KeyPair pair) throws IOException {
+        String pem = pem("PRIVATE KEY", pair.getPrivate().getEncoded()) + pem("PUBLIC KEY", pair.getPublic().getEncoded());
+        Path directory = file.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temporary = createPrivateFile(directory, file.getFileName().toString());
+        try {
+            Files.writeString(temporary, pem, StandardCharsets.US_ASCII);
+            Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    private static Path createPrivateFile(Path directory, String name) throws IOException {
+        if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            return Files.createTempFile(directory, name, ".tmp", PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        }
+        return Files.createTempFile(directory, name, ".tmp");
+    }
+
+    private static String pem(String type, byte[] der) {
+        String body = Base64.getMimeEncoder(64, new byte[] {'\n'}).encodeToString(der);
+        return "-----BEGIN " + type + "-----\n" + body + "\n-----END " + type + "-----\n";
+    }
+}
\ No newline at end of file
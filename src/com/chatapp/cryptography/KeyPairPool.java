@@ -0,0 +1,149 @@
+package com.chatapp.cryptography;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Key pairs generated ahead of time, so the code that needs one does not have to wait for it.
+ *
+ * Generating a 2048-bit RSA key pair takes tens to hundreds of milliseconds of CPU, which adds up
+ * when a process starts with a server and a client, or a load test with several identities. Once
+ * `start` is called, a low priority background thread generates pairs until the pool holds its
+ * capacity, and tops it up whenever one is taken. Call it as early as possible, so the keys are
+ * generated while the rest of the process starts.
+ *
+ * `take` never fails for lack of pooled pairs: it waits for the pair being generated if the pool
+ * has been started, and generates one itself if it has not, so an unstarted pool behaves like
+ * generating keys inline. Taken pairs are counted as misses when the caller had to wait for them.
+ *
+ * `rsa()` is the pool shared by every `SecureMessenger` created without a key pair.
+ *
+ * @version 2026-10-17
+ */
+public final class KeyPairPool {
+    public static final int DEFAULT_CAPACITY = 2;
+    public static final int RSA_KEY_SIZE = 2048;
+
+    private static volatile KeyPairPool rsa;
+
+    private final String algorithm;
+    private final int keySize;                 // 0 for the algorithm's fixed size
+    private final BlockingQueue<KeyPair> pairs;
+    private final LongAdder misses = new LongAdder();
+    private Thread filler;                     // Null until started, guarded by this
+
+    /**
+     * @param algorithm `KeyPairGenerator` algorithm, e.g. "RSA" or "X25519"
+     * @param keySize   key size in bits, 0 for algorithms with a fixed size
+     * @param capacity  most pairs kept ready
+     */
+    public KeyPairPool(String algorithm, int keySize, int capacity) throws GeneralSecurityException {
+        if (capacity <= 0 || keySize < 0) {
+            throw new IllegalArgumentException("Capacity must be positive and key size not negative");
+        }
+        this.algorithm = algorithm;
+        this.keySize = keySize;
+        this.pairs = new ArrayBlockingQueue<>(capacity);
+        newGenerator(); // Fails now if the algorithm or size is not supported, not on the filler thread
+    }
+
+    /**
+     * Returns the shared pool of 2048-bit RSA key pairs, not started until someone calls `start`.
+     */
+    public static KeyPairPool rsa() {
+        KeyPairPool pool = rsa;
+        if (pool == null) {
+            synchronized (KeyPairPool.class) {
+                pool = rsa;
+                if (pool == null) {
+                    try {
+                        pool = new KeyPairPool("RSA", RSA_KEY_SIZE, DEFAULT_CAPACITY);
+                    } catch (GeneralSecurityException e) {
+                        throw new IllegalStateException("RSA is not available", e);
+                    }
+                    rsa = pool;
+                }
+            }
+        }
+        return pool;
+    }
+
+    /**
+     * Starts generating key pairs in the background, if not already started.
+     *
+     * @return this pool
+     */
+    public synchronized KeyPairPool start() {
+        if (filler == null) {
+            filler = new Thread(this::fill, "keypair-pool-" + algorithm);
+            filler.setDaemon(true);
+            filler.setPriority(Thread.MIN_PRIORITY);
+            filler.start();
+        }
+        return this;
+    }
+
+    /**
+     * Returns a pooled key pair, or the next one generated if the pool is empty. Generates one on
+     * the caller's thread if the pool was never started.
+     */
+    public KeyPair take() throws GeneralSecurityException {
+        KeyPair pair = pairs.poll();
+        if (pair != null) {
+            return pair;
+        }
+        misses.increment();
+        if (!isStarted()) {
+            return newGenerator().generateKeyPair();
+        }
+        try {
+            return pairs.take(); // The filler is already generating it, doing it here too would only slow both down
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return newGenerator().generateKeyPair();
+        }
+    }
+
+    /**
+     * Returns the number of pairs ready to be taken.
+     */
+    public int available() {
+        return pairs.size();
+    }
+
+    /**
+     * Returns the number of pairs taken so far that were not ready.
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    private synchronized boolean isStarted() {
+        return filler != null;
+    }
+
+    private void fill() {
+        try {
+            KeyPairGenerator generator = newGenerator();
+            while (true) {
+                pairs.put(generator.generateKeyPair()); // Blocks while the pool is full
+            }
+        } catch (InterruptedException e) {
+            // Stopped
+        } catch (GeneralSecurityException e) {
+            System.err.println("Key pair pool stopped: " + e.getMessage());
+        }
+    }
+
+    private KeyPairGenerator newGenerator() throws GeneralSecurityException {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance(algorithm);
+        if (keySize > 0) {
+            generator.initialize(keySize);
+        }
+        return generator;
+    }
+}
\ No newline at end of file
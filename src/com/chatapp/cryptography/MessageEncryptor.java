@@ -1,6 +1,9 @@
 package com.chatapp.cryptography;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.security.PublicKey;
+import java.util.Base64;
 
 /**
  * Interface for message encryption and decryption.
@@ -9,9 +12,21 @@ import java.security.PublicKey;
  * Implementations of this interface will provide the actual encryption and decryption logic
  * to ensure that the messages can be securely transmitted over a network or other communication medium.
  * 
+ * Implementations may also take part in the key exchange to set up a per-connection session, see
+ * `openSession` and `joinSession`. By default no session is set up and every message is encrypted
+ * with the receiver's public key. Sessions that expose a resumption secret can be resumed on a
+ * later connection with a `SessionTicket`.
+ * 
+ * The binary wire protocol uses the `byte[]` variants of `encrypt` and `decrypt`, which work on
+ * raw ciphertext. Their default implementations go through the String variants, so implementations
+ * should override them to avoid the Base64 round trip. Session encryptors can also encrypt from
+ * one `ByteBuffer` into another, see `encryptedLength`, so the server can encrypt a message
+ * straight into a pooled frame buffer, and decrypt one into a reused buffer, see
+ * `decryptedLength`.
+ * 
  * @author Philip Jonsson
  * @author Mohamed El Yahioui
- * @version 2025-04-25
+ * @version 2026-10-17
  */
 public interface MessageEncryptor {
 
@@ -25,8 +40,95 @@ public interface MessageEncryptor {
      */
     String decrypt(String encryptedMessage) throws Exception;
 
+    /**
+     * Encrypts the given message bytes, returning raw ciphertext.
+     */
+    default byte[] encrypt(byte[] message, PublicKey receiverPublicKey) throws Exception {
+        return Base64.getDecoder().decode(encrypt(new String(message, StandardCharsets.UTF_8), receiverPublicKey));
+    }
+
+    /**
+     * Decrypts raw ciphertext produced by `encrypt(byte[], PublicKey)`.
+     */
+    default byte[] decrypt(byte[] encryptedMessage) throws Exception {
+        return decrypt(Base64.getEncoder().encodeToString(encryptedMessage)).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the number of bytes `encrypt(ByteBuffer, ByteBuffer)` writes for a message of the
+     * given length, or -1, the default, if the encryptor can only encrypt into a new array.
+     */
+    default int encryptedLength(int messageLength) {
+        return -1;
+    }
+
+    /**
+     * Encrypts the remaining bytes of the message straight into `out`, which must have
+     * `encryptedLength` bytes remaining. Only supported if `encryptedLength` is not -1.
+     */
+    default void encrypt(ByteBuffer message, ByteBuffer out) throws Exception {
+        throw new UnsupportedOperationException("Encryption into a buffer is not supported");
+    }
+
+    /**
+     * Returns the number of bytes `decrypt(ByteBuffer, ByteBuffer)` writes for raw ciphertext of
+     * the given length, or -1, the default, if the encryptor can only decrypt into a new array.
+     */
+    default int decryptedLength(int encryptedLength) {
+        return -1;
+    }
+
+    /**
+     * Decrypts the remaining bytes of raw ciphertext straight into `out`, which must have
+     * `decryptedLength` bytes remaining. Only supported if `decryptedLength` is not -1.
+     */
+    default void decrypt(ByteBuffer encryptedMessage, ByteBuffer out) throws Exception {
+        throw new UnsupportedOperationException("Decryption into a buffer is not supported");
+    }
+
     /**
      * Returns the public key of the encryptor.
      */
     PublicKey getPublicKey();
+
+    /**
+     * Returns true if the key exchange ends with the server sending a wrapped session key,
+     * see `getWrappedSessionKey`.
+     */
+    default boolean usesSessionKeys() {
+        return false;
+    }
+
+    /**
+     * Server side of the key exchange, called once the client's public key is known.
+     * Returns the encryptor to use for the rest of the connection.
+     */
+    default MessageEncryptor openSession(PublicKey peerPublicKey) throws Exception {
+        return this;
+    }
+
+    /**
+     * Returns the session key of an encryptor returned by `openSession`, wrapped so only the
+     * peer can read it, or null if there is none to send.
+     */
+    default byte[] getWrappedSessionKey() {
+        return null;
+    }
+
+    /**
+     * Client side of the key exchange, called once the server's public key and, if
+     * `usesSessionKeys` is true, its wrapped session key have been received.
+     * Returns the encryptor to use for the rest of the connection.
+     */
+    default MessageEncryptor joinSession(PublicKey peerPublicKey, byte[] wrappedSessionKey) throws Exception {
+        return this;
+    }
+
+    /**
+     * Returns the secret from which this session can be resumed on a later connection without a
+     * new key exchange, see `SessionTickets`, or null if it cannot be resumed.
+     */
+    default byte[] getResumptionSecret() throws Exception {
+        return null;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,43 @@
+package com.chatapp.cryptography;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.PublicKey;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Arrays;
+
+/**
+ * Decodes public keys received during the key exchange.
+ *
+ * Keys travel in their X.509 encoding, which names the key's algorithm. Rather than fully parsing
+ * the encoding, or trying each `KeyFactory` in turn, the algorithm is recognised from the fixed
+ * header of an X25519 key; anything else is treated as RSA.
+ *
+ * @version 2026-10-17
+ */
+public final class PublicKeys {
+    // SEQUENCE { SEQUENCE { OID 1.3.101.110 } BIT STRING (32 bytes) }, RFC 8410
+    private static final byte[] X25519_HEADER = {
+        0x30, 0x2a, 0x30, 0x05, 0x06, 0x03, 0x2b, 0x65, 0x6e, 0x03, 0x21, 0x00
+    };
+    private static final int X25519_ENCODED_LENGTH = X25519_HEADER.length + 32;
+
+    private PublicKeys() {
+    }
+
+    /**
+     * Returns the algorithm of an X.509 encoded public key, "X25519" or "RSA".
+     */
+    public static String algorithmOf(byte[] encoded) {
+        boolean x25519 = encoded.length == X25519_ENCODED_LENGTH
+                && Arrays.equals(encoded, 0, X25519_HEADER.length, X25519_HEADER, 0, X25519_HEADER.length);
+        return x25519 ? "X25519" : "RSA";
+    }
+
+    /**
+     * Decodes an X.509 encoded RSA or X25519 public key.
+     */
+    public static PublicKey decode(byte[] encoded) throws GeneralSecurityException {
+        return KeyFactory.getInstance(algorithmOf(encoded)).generatePublic(new X509EncodedKeySpec(encoded));
+    }
+}
@@ -1,7 +1,7 @@
 package com.chatapp.cryptography;
 
+import java.nio.charset.StandardCharsets;
 import java.security.KeyPair;
-import java.security.KeyPairGenerator;
 import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.util.Base64;
@@ -16,8 +16,11 @@ import javax.crypto.Cipher;
  * - Decrypt messages with their own private key
  * - Access their own public/private keys for sharing or storage
  * 
+ * A single RSA block holds at most 245 bytes of message, so longer messages need an encryptor
+ * with session keys, such as `HybridMessenger`.
+ * 
  * @author Mohamed El Yahioui
- * @version 1.0
+ * @version 1.1
  */
 public class SecureMessenger implements MessageEncryptor{
     private PublicKey publicKey;
@@ -33,14 +36,19 @@ public class SecureMessenger implements MessageEncryptor{
 
 
     /**
-     * Constructs a SecureMessenger instance and generates a new RSA key pair.
+     * Constructs a SecureMessenger instance with a new RSA key pair, taken from the shared
+     * `KeyPairPool.rsa()` if it has one ready, and generated otherwise.
      * @throws Exception if key generation fails.
      */
     public SecureMessenger() throws Exception {
-        KeyPairGenerator keyGen = KeyPairGenerator.getInstance("RSA");
-        keyGen.initialize(2048);
-        KeyPair keyPair = keyGen.generateKeyPair();
+        this(KeyPairPool.rsa().take());
+    }
 
+    /**
+     * Constructs a SecureMessenger instance that uses an existing RSA key pair, e.g. one loaded
+     * with `KeyFiles`.
+     */
+    public SecureMessenger(KeyPair keyPair) {
         this.publicKey = keyPair.getPublic();
         this.privateKey = keyPair.getPrivate();
     }
@@ -54,10 +62,21 @@ public class SecureMessenger implements MessageEncryptor{
      * @throws Exception if encryption fails
      */
     public String encrypt(String message, PublicKey receiverPublicKey) throws Exception {
+        byte[] encrypted = encrypt(message.getBytes(StandardCharsets.UTF_8), receiverPublicKey);
+        return Base64.getEncoder().encodeToString(encrypted);
+    }
+
+    /**
+     * Encrypts raw message bytes using the recipient's public key.
+     * 
+     * @return the raw encrypted bytes
+     * @throws Exception if encryption fails
+     */
+    @Override
+    public byte[] encrypt(byte[] message, PublicKey receiverPublicKey) throws Exception {
         Cipher cipher = Cipher.getInstance("RSA");
         cipher.init(Cipher.ENCRYPT_MODE, receiverPublicKey);
-        byte[] encrypted = cipher.doFinal(message.getBytes("UTF-8"));
-        return Base64.getEncoder().encodeToString(encrypted);
+        return cipher.doFinal(message);
     }
 
      /**
@@ -68,9 +87,20 @@ public class SecureMessenger implements MessageEncryptor{
      * @throws Exception if decryption fails
      */
     public String decrypt(String encryptedMessage) throws Exception {
+        byte[] decrypted = decrypt(Base64.getDecoder().decode(encryptedMessage));
+        return new String(decrypted, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Decrypts raw encrypted bytes using the user's private key.
+     * 
+     * @return the original message bytes
+     * @throws Exception if decryption fails
+     */
+    @Override
+    public byte[] decrypt(byte[] encryptedMessage) throws Exception {
         Cipher cipher = Cipher.getInstance("RSA");
         cipher.init(Cipher.DECRYPT_MODE, privateKey);
-        byte[] decrypted = cipher.doFinal(Base64.getDecoder().decode(encryptedMessage));
-        return new String(decrypted, "UTF-8");
+        return cipher.doFinal(encryptedMessage);
     }
 }
\ No newline at end of file
@@ -0,0 +1,178 @@
+package com.chatapp.cryptography;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * AES-GCM helper used for all symmetric encryption in the app.
+ *
+ * Every encryption uses a fresh random 96-bit IV, which is prepended to the ciphertext:
+ * `IV (12 bytes) || ciphertext || GCM tag (16 bytes)`. The cipher instances are cached per thread,
+ * since `Cipher.getInstance` is comparatively expensive and a `Cipher` is not thread-safe.
+ *
+ * Besides the `byte[]` variants, a session can encrypt a message from one `ByteBuffer` straight
+ * into another with a `KeyedCipher`, e.g. into a pooled direct buffer that already holds a frame
+ * header, without allocating the output or copying it afterwards.
+ *
+ * It also derives the secrets used to resume a session later, see `SessionTickets`.
+ *
+ * @version 2026-10-17
+ */
+public final class SessionCipher {
+    public static final int KEY_BITS = 256;
+    public static final int IV_LENGTH = 12;
+    public static final int TAG_BITS = 128;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+    private static final byte[] RESUMPTION_LABEL = "chatapp resumption".getBytes(StandardCharsets.US_ASCII);
+    private static final ThreadLocal<Cipher> CIPHERS = ThreadLocal.withInitial(() -> {
+        try {
+            return Cipher.getInstance("AES/GCM/NoPadding");
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("AES-GCM is not available", e);
+        }
+    });
+    private static final ThreadLocal<byte[]> IVS = ThreadLocal.withInitial(() -> new byte[IV_LENGTH]);
+
+    private SessionCipher() {
+    }
+
+    /**
+     * Generates a new random AES key.
+     */
+    public static SecretKey generateKey() throws GeneralSecurityException {
+        KeyGenerator keyGen = KeyGenerator.getInstance("AES");
+        keyGen.init(KEY_BITS, RANDOM);
+        return keyGen.generateKey();
+    }
+
+    /**
+     * Rebuilds an AES key from its raw bytes.
+     */
+    public static SecretKey keyFromBytes(byte[] keyBytes) {
+        return new SecretKeySpec(keyBytes, "AES");
+    }
+
+    /**
+     * Encrypts the plaintext with the given key.
+     *
+     * @return IV followed by the ciphertext and tag
+     */
+    public static byte[] encrypt(SecretKey key, byte[] plaintext) throws GeneralSecurityException {
+        byte[] iv = new byte[IV_LENGTH];
+        RANDOM.nextBytes(iv);
+
+        Cipher cipher = CIPHERS.get();
+        cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, iv));
+
+        ByteBuffer out = ByteBuffer.allocate(IV_LENGTH + cipher.getOutputSize(plaintext.length));
+        out.put(iv);
+        cipher.doFinal(ByteBuffer.wrap(plaintext), out);
+        return out.array();
+    }
+
+    /**
+     * Returns the number of bytes `encrypt` produces for a plaintext of the given length.
+     */
+    public static int encryptedLength(int plaintextLength) {
+        return IV_LENGTH + plaintextLength + TAG_BITS / 8;
+    }
+
+    /**
+     * A session key with a cipher of its own, for encrypting into buffers.
+     *
+     * A cipher initialized with a different key than the last time expands the key schedule again,
+     * which allocates more than the encryption itself, and a server that encrypts a broadcast for
+     * one client after the other switches keys on every message. A `KeyedCipher` keeps its key, so
+     * only the IV changes between messages. Its cipher is created on first use, and encryptions
+     * with it are serialized.
+     */
+    public static final class KeyedCipher {
+        private final SecretKey key;
+        private Cipher cipher; // Guarded by this
+
+        public KeyedCipher(SecretKey key) {
+            this.key = key;
+        }
+
+        /**
+         * Encrypts the remaining bytes of the plaintext, writing the IV, ciphertext and tag to
+         * `out` from its position. `out` must have `encryptedLength` bytes remaining.
+         */
+        public synchronized void encrypt(ByteBuffer plaintext, ByteBuffer out) throws GeneralSecurityException {
+            if (cipher == null) {
+                cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            }
+            byte[] iv = IVS.get(); // Copied by the parameter spec, so it can be reused
+            RANDOM.nextBytes(iv);
+
+            cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, iv));
+            out.put(iv);
+            cipher.doFinal(plaintext, out);
+        }
+    }
+
+    /**
+     * Decrypts a message produced by `encrypt`, verifying its tag.
+     */
+    public static byte[] decrypt(SecretKey key, byte[] message) throws GeneralSecurityException {
+        if (message.length < IV_LENGTH) {
+            throw new GeneralSecurityException("Message too short");
+        }
+        Cipher cipher = CIPHERS.get();
+        cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, message, 0, IV_LENGTH));
+        return cipher.doFinal(message, IV_LENGTH, message.length - IV_LENGTH);
+    }
+
+    /**
+     * Returns the length of the plaintext in a message of the given length produced by
+     * `encrypt`, or 0 if it is too short to be one.
+     */
+    public static int decryptedLength(int messageLength) {
+        return Math.max(0, messageLength - IV_LENGTH - TAG_BITS / 8);
+    }
+
+    /**
+     * Decrypts the remaining bytes of a message produced by `encrypt`, verifying its tag, and
+     * writes the plaintext to `out` from its position. `out` must have `decryptedLength` bytes
+     * remaining.
+     */
+    public static void decrypt(SecretKey key, ByteBuffer message, ByteBuffer out) throws GeneralSecurityException {
+        if (message.remaining() < IV_LENGTH) {
+            throw new GeneralSecurityException("Message too short");
+        }
+        byte[] iv = IVS.get(); // Copied by the parameter spec, so it can be reused
+        message.get(iv);
+        Cipher cipher = CIPHERS.get();
+        cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, iv));
+        cipher.doFinal(message, out);
+    }
+
+    /**
+     * HMAC-SHA256 of the concatenated parts under the given key, used to derive keys and secrets.
+     */
+    public static byte[] hmac(byte[] key, byte[]... parts) throws GeneralSecurityException {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(key, "HmacSHA256"));
+        for (byte[] part : parts) {
+            mac.update(part);
+        }
+        return mac.doFinal();
+    }
+
+    /**
+     * Derives the secret from which a session with the given key can later be resumed. Both sides
+     * of the session can derive it, and it does not reveal the session key itself.
+     */
+    public static byte[] resumptionSecret(SecretKey sessionKey) throws GeneralSecurityException {
+        return hmac(sessionKey.getEncoded(), RESUMPTION_LABEL);
+    }
+}
\ No newline at end of file
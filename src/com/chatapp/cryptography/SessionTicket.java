@@ -0,0 +1,142 @@
+package com.chatapp.cryptography;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.PublicKey;
+import java.security.SecureRandom;
+import java.util.Base64;
+import javax.crypto.SecretKey;
+
+/**
+ * A session resumption ticket as held by the client: the opaque ticket issued by the server, see
+ * `SessionTickets`, and the resumption secret of the session it was issued for.
+ *
+ * To resume, the client sends the ticket and a random nonce, the server answers with its own
+ * nonce, and both call `resume` to derive the new session's key from the secret and both nonces.
+ * The resumed session is a plain AES-GCM session, whatever encryptor set up the original one,
+ * and can itself be resumed again.
+ *
+ * @version 2026-10-17
+ */
+public final class SessionTicket {
+    public static final int NONCE_LENGTH = 32;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+    private static final byte[] SESSION_LABEL = "chatapp resumed session".getBytes(StandardCharsets.US_ASCII);
+
+    private final byte[] ticket;
+    private final byte[] resumptionSecret;
+
+    public SessionTicket(byte[] ticket, byte[] resumptionSecret) {
+        this.ticket = ticket;
+        this.resumptionSecret = resumptionSecret;
+    }
+
+    /**
+     * Returns the opaque ticket to present to the server.
+     */
+    public byte[] getTicket() {
+        return ticket;
+    }
+
+    /**
+     * Returns a new random nonce for one resumption attempt.
+     */
+    public static byte[] newNonce() {
+        byte[] nonce = new byte[NONCE_LENGTH];
+        RANDOM.nextBytes(nonce);
+        return nonce;
+    }
+
+    /**
+     * Client side: derives the resumed session from this ticket's secret and both nonces.
+     */
+    public MessageEncryptor resume(byte[] clientNonce, byte[] serverNonce) throws GeneralSecurityException {
+        return resume(resumptionSecret, clientNonce, serverNonce);
+    }
+
+    /**
+     * Derives the resumed session from a resumption secret and both nonces. Used by the server
+     * with the secret from an opened ticket.
+     */
+    public static MessageEncryptor resume(byte[] resumptionSecret, byte[] clientNonce, byte[] serverNonce)
+            throws GeneralSecurityException {
+        if (clientNonce.length != NONCE_LENGTH || serverNonce.length != NONCE_LENGTH) {
+            throw new GeneralSecurityException("Invalid resumption nonce");
+        }
+        byte[] key = SessionCipher.hmac(resumptionSecret, SESSION_LABEL, clientNonce, serverNonce);
+        return new ResumedSession(SessionCipher.keyFromBytes(key));
+    }
+
+    /**
+     * An AES-GCM session restored from a ticket. It has no key pair of its own.
+     */
+    private static final class ResumedSession implements MessageEncryptor {
+        private final SecretKey sessionKey;
+        private final SessionCipher.KeyedCipher bufferCipher;
+
+        ResumedSession(SecretKey sessionKey) {
+            this.sessionKey = sessionKey;
+            this.bufferCipher = new SessionCipher.KeyedCipher(sessionKey);
+        }
+
+        @Override
+        public String encrypt(String message, PublicKey receiverPublicKey) throws Exception {
+            return Base64.getEncoder().encodeToString(encrypt(message.getBytes(StandardCharsets.UTF_8), receiverPublicKey));
+        }
+
+        @Override
+        public String decrypt(String encryptedMessage) throws Exception {
+            return new String(decrypt(Base64.getDecoder().decode(encryptedMessage)), StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public byte[] encrypt(byte[] message, PublicKey receiverPublicKey) throws Exception {
+            return SessionCipher.encrypt(sessionKey, message);
+        }
+
+        @Override
+        public byte[] decrypt(byte[] encryptedMessage) throws Exception {
+            return SessionCipher.decrypt(sessionKey, encryptedMessage);
+        }
+
+        @Override
+        public int encryptedLength(int messageLength) {
+            return SessionCipher.encryptedLength(messageLength);
+        }
+
+        @Override
+        public void encrypt(ByteBuffer message, ByteBuffer out) throws Exception {
+            bufferCipher.encrypt(message, out);
+        }
+
+        @Override
+        public int decryptedLength(int encryptedLength) {
+            return SessionCipher.decryptedLength(encryptedLength);
+        }
+
+        @Override
+        public void decrypt(ByteBuffer encryptedMessage, ByteBuffer out) throws Exception {
+            SessionCipher.decrypt(sessionKey, encryptedMessage, out);
+        }
+
+        /**
+         * A resumed session has no public key, the peer is identified by its ticket.
+         */
+        @Override
+        public PublicKey getPublicKey() {
+            return null;
+        }
+
+        @Override
+        public boolean usesSessionKeys() {
+            return true;
+        }
+
+        @Override
+        public byte[] getResumptionSecret() throws Exception {
+            return SessionCipher.resumptionSecret(sessionKey);
+        }
+    }
+}
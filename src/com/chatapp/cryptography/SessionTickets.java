@@ -0,0 +1,70 @@
+package com.chatapp.cryptography;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.time.Duration;
+import javax.crypto.SecretKey;
+
+/**
+ * Issues and opens the server's session resumption tickets.
+ *
+ * A ticket is the session's resumption secret and an expiry time, encrypted with AES-GCM under a
+ * key only the server knows. The server hands it to the client after the key exchange and keeps
+ * nothing itself; when the client reconnects and presents the ticket, the server opens it to get
+ * the secret back, and both sides derive a new session key from the secret and fresh nonces, see
+ * `SessionTicket`. A reconnecting client thereby skips the public-key work of a full key exchange.
+ *
+ * Tickets stay valid across server restarts only if the same ticket key is used, see
+ * `SessionTickets(SecretKey, Duration)`.
+ *
+ * @version 2026-10-17
+ */
+public final class SessionTickets {
+    public static final Duration DEFAULT_LIFETIME = Duration.ofHours(1);
+
+    private final SecretKey ticketKey;
+    private final long lifetimeMillis;
+
+    /**
+     * Creates tickets with a new random ticket key and the default lifetime.
+     */
+    public SessionTickets() throws GeneralSecurityException {
+        this(SessionCipher.generateKey(), DEFAULT_LIFETIME);
+    }
+
+    public SessionTickets(SecretKey ticketKey, Duration lifetime) {
+        this.ticketKey = ticketKey;
+        this.lifetimeMillis = lifetime.toMillis();
+    }
+
+    /**
+     * Issues a ticket for a session's resumption secret.
+     */
+    public byte[] issue(byte[] resumptionSecret) throws GeneralSecurityException {
+        long expiresAt = System.currentTimeMillis() + lifetimeMillis;
+        byte[] plaintext = ByteBuffer.allocate(Long.BYTES + resumptionSecret.length)
+                .putLong(expiresAt)
+                .put(resumptionSecret)
+                .array();
+        return SessionCipher.encrypt(ticketKey, plaintext);
+    }
+
+    /**
+     * Opens a ticket presented by a client.
+     *
+     * @return the resumption secret, or null if the ticket was not issued with this key or has expired
+     */
+    public byte[] open(byte[] ticket) {
+        try {
+            ByteBuffer plaintext = ByteBuffer.wrap(SessionCipher.decrypt(ticketKey, ticket));
+            if (plaintext.remaining() <= Long.BYTES || plaintext.getLong() < System.currentTimeMillis()) {
+                return null;
+            }
+            byte[] resumptionSecret = new byte[plaintext.remaining()];
+            plaintext.get(resumptionSecret);
+            return resumptionSecret;
+        } catch (GeneralSecurityException e) {
+            return null; // Forged, corrupted, or issued under another key
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package com.chatapp.cryptography;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.SecureRandom;
+import java.util.Base64;
+import javax.crypto.KeyAgreement;
+import javax.crypto.SecretKey;
+
+/**
+ * The X25519Messenger class uses X25519 (elliptic-curve Diffie-Hellman) key agreement for the key
+ * exchange, and AES-GCM for the messages.
+ *
+ * Generating an X25519 key pair and running the agreement each take tens of microseconds, where
+ * generating a 2048-bit RSA key pair takes tens to hundreds of milliseconds and every RSA wrap and
+ * unwrap a good fraction of a millisecond. This keeps start-up and handshakes cheap, which matters
+ * most when many clients reconnect at once.
+ *
+ * During the key exchange the server sends a random nonce for the connection as the last step of
+ * the exchange, in place of a wrapped session key. Both sides then derive the AES session key with
+ * HKDF-SHA256 from the X25519 agreement of their two keys, bound to both keys and the nonce, so
+ * every connection gets a fresh key and only the holder of the key in the server's HELLO can derive
+ * it. That is one agreement per side and no key generation per connection. As with
+ * `HybridMessenger`, whose session keys are wrapped with the long-lived RSA key, a leaked server
+ * key exposes past sessions.
+ *
+ * Like `HybridMessenger`, the instance created with the constructor only holds the key pair, and
+ * the per-connection instances returned by `openSession`/`joinSession` hold the session key.
+ * The server picks this encryptor for clients whose HELLO carries an X25519 key.
+ *
+ * @version 2026-10-17
+ */
+public class X25519Messenger implements MessageEncryptor {
+    public static final String ALGORITHM = "X25519";
+    public static final int NONCE_LENGTH = 32;
+    private static final byte[] KDF_SALT = "chatapp-x25519-v1".getBytes(StandardCharsets.US_ASCII);
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final KeyPair identity;            // Long-lived key pair sent in the HELLO
+    private final SecretKey sessionKey;        // Null until the key exchange is done
+    private final SessionCipher.KeyedCipher bufferCipher; // For encrypting into buffers, null without a session key
+    private final byte[] nonce;                // Per-connection nonce sent to the client, server side only
+
+    /**
+     * Constructs an X25519Messenger with a newly generated key pair.
+     */
+    public X25519Messenger() throws GeneralSecurityException {
+        this(generateKeyPair());
+    }
+
+    /**
+     * Constructs an X25519Messenger that uses an existing X25519 key pair for the key exchange.
+     */
+    public X25519Messenger(KeyPair identity) {
+        this(identity, null, null);
+    }
+
+    private X25519Messenger(KeyPair identity, SecretKey sessionKey, byte[] nonce) {
+        this.identity = identity;
+        this.sessionKey = sessionKey;
+        this.bufferCipher = sessionKey != null ? new SessionCipher.KeyedCipher(sessionKey) : null;
+        this.nonce = nonce;
+    }
+
+    /**
+     * Generates a new X25519 key pair.
+     */
+    public static KeyPair generateKeyPair() throws GeneralSecurityException {
+        return KeyPairGenerator.getInstance(ALGORITHM).generateKeyPair();
+    }
+
+    /**
+     * Encrypts a message with the session key.
+     *
+     * @return the encrypted message as a Base64 string
+     */
+    @Override
+    public String encrypt(String message, PublicKey receiverPublicKey) throws Exception {
+        byte[] encrypted = SessionCipher.encrypt(requireSessionKey(), message.getBytes(StandardCharsets.UTF_8));
+        return Base64.getEncoder().encodeToString(encrypted);
+    }
+
+    /**
+     * Decrypts a message with the session key.
+     */
+    @Override
+    public String decrypt(String encryptedMessage) throws Exception {
+        byte[] decrypted = SessionCipher.decrypt(requireSessionKey(), Base64.getDecoder().decode(encryptedMessage));
+        return new String(decrypted, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public byte[] encrypt(byte[] message, PublicKey receiverPublicKey) throws Exception {
+        return SessionCipher.encrypt(requireSessionKey(), message);
+    }
+
+    @Override
+    public byte[] decrypt(byte[] encryptedMessage) throws Exception {
+        return SessionCipher.decrypt(requireSessionKey(), encryptedMessage);
+    }
+
+    @Override
+    public int encryptedLength(int messageLength) {
+        return sessionKey != null ? SessionCipher.encryptedLength(messageLength) : -1;
+    }
+
+    @Override
+    public void encrypt(ByteBuffer message, ByteBuffer out) throws Exception {
+        requireSessionKey();
+        bufferCipher.encrypt(message, out);
+    }
+
+    @Override
+    public int decryptedLength(int encryptedLength) {
+        return sessionKey != null ? SessionCipher.decryptedLength(encryptedLength) : -1;
+    }
+
+    @Override
+    public void decrypt(ByteBuffer encryptedMessage, ByteBuffer out) throws Exception {
+        SessionCipher.decrypt(requireSessionKey(), encryptedMessage, out);
+    }
+
+    @Override
+    public PublicKey getPublicKey() {
+        return identity.getPublic();
+    }
+
+    @Override
+    public boolean usesSessionKeys() {
+        return true;
+    }
+
+    /**
+     * Picks the connection's nonce and derives the session key from it and the client's key.
+     */
+    @Override
+    public MessageEncryptor openSession(PublicKey peerPublicKey) throws Exception {
+        requireX25519(peerPublicKey);
+        byte[] sessionNonce = new byte[NONCE_LENGTH];
+        RANDOM.nextBytes(sessionNonce);
+
+        SecretKey key = deriveKey(agree(identity.getPrivate(), peerPublicKey),
+                peerPublicKey.getEncoded(), identity.getPublic().getEncoded(), sessionNonce);
+        return new X25519Messenger(identity, key, sessionNonce);
+    }
+
+    /**
+     * Returns the connection's nonce, which the client needs to derive the session key.
+     */
+    @Override
+    public byte[] getWrappedSessionKey() {
+        return nonce;
+    }
+
+    /**
+     * Derives the session key from the server's key and the nonce it sent.
+     */
+    @Override
+    public MessageEncryptor joinSession(PublicKey peerPublicKey, byte[] wrappedSessionKey) throws Exception {
+        if (wrappedSessionKey == null || wrappedSessionKey.length != NONCE_LENGTH) {
+            throw new IllegalArgumentException("No session nonce received");
+        }
+        requireX25519(peerPublicKey);
+
+        SecretKey key = deriveKey(agree(identity.getPrivate(), peerPublicKey),
+                identity.getPublic().getEncoded(), peerPublicKey.getEncoded(), wrappedSessionKey);
+        return new X25519Messenger(identity, key, null);
+    }
+
+    private static byte[] agree(PrivateKey privateKey, PublicKey publicKey) throws GeneralSecurityException {
+        KeyAgreement agreement = KeyAgreement.getInstance(ALGORITHM);
+        agreement.init(privateKey);
+        agreement.doPhase(publicKey, true);
+        return agreement.generateSecret();
+    }
+
+    /**
+     * HKDF-SHA256 (RFC 5869) of the shared secret, bound to both keys and the nonce. A single
+     * expand block gives the 256-bit AES key.
+     */
+    private static SecretKey deriveKey(byte[] sharedSecret, byte[] clientKey, byte[] serverKey, byte[] sessionNonce)
+            throws GeneralSecurityException {
+        byte[] pseudoRandomKey = SessionCipher.hmac(KDF_SALT, sharedSecret);
+        return SessionCipher.keyFromBytes(SessionCipher.hmac(pseudoRandomKey, clientKey, serverKey, sessionNonce, new byte[] {1}));
+    }
+
+    private static void requireX25519(PublicKey key) throws InvalidKeyException {
+        if (!ALGORITHM.equals(key.getAlgorithm()) && !"XDH".equals(key.getAlgorithm())) {
+            throw new InvalidKeyException("Expected an X25519 key, got " + key.getAlgorithm());
+        }
+    }
+
+    @Override
+    public byte[] getResumptionSecret() throws Exception {
+        return sessionKey == null ? null : SessionCipher.resumptionSecret(sessionKey);
+    }
+
+    private SecretKey requireSessionKey() {
+        if (sessionKey == null) {
+            throw new IllegalStateException("Key exchange has not been completed");
+        }
+        return sessionKey;
+    }
+}
@@ -1,23 +1,53 @@
 package com.chatapp.gui;
 
 import java.awt.*;
+import java.awt.event.MouseEvent;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
 import javax.swing.*;
 
 import com.chatapp.client.*;
 
 /**
  * Early draft GUI
+ *
+ * Type `/join <room>` to join a room and send to it, `/leave` to leave it and talk to everyone
+ * again, and `/msg <id> <message>` to send a direct message to the client with that id.
+ * `/history <minutes>` asks the server for the messages of the last few minutes, and
+ * `/status <text>` sets the status the others see next to you in their Users list.
+ *
+ * The Users list shows the clients online on the server, as the client keeps it from the server's
+ * presence updates.
+ *
+ * The chat shows the last `MAX_MESSAGES` messages in a list that only lays out the rows in view,
+ * and takes in new messages at most once per frame, see `MessageListModel`. Hover over a message
+ * that is too long for the window to read all of it.
+ *
+ * Messages are queued with the client's `...Async` methods and encrypted and written by its
+ * sender thread, so the window never waits for the connection. Pasted text can hold many lines,
+ * each sent as its own message. While the client's send queue is full the Send button is
+ * disabled, and the lines that did not fit stay in the input field to be sent again.
+ *
  * @author Philip Jonsson
- * @version 2025-04-30
+ * @version 2026-10-17
  */
 public class ChatGUI {
+    public static final int MAX_MESSAGES = 5000; // Older messages are dropped from the view
+
     private Client client;
     private JFrame frame;
-    private JTextArea chatArea;
+    private JList<String> chatList;
+    private JScrollPane chatScrollPane;
+    private MessageListModel chatModel;
     private JTextField inputField;
     private JButton sendButton;
     private JList<String> userList;
     private DefaultListModel<String> userListModel;
+    private String currentRoom; // Room messages are sent to, or null to send to everyone
+    private boolean rejected;   // Set when the send queue had no room for the line being handled
 
     /**
      * Initialize GUI with components, and 
@@ -33,15 +63,31 @@ public class ChatGUI {
         frame.setLayout(new BorderLayout());
 
         // === Chat Area ===
-        chatArea = new JTextArea();
-        chatArea.setEditable(false);
-        JScrollPane chatScrollPane = new JScrollPane(chatArea);
+        chatModel = new MessageListModel(MAX_MESSAGES, this::followLatest);
+        chatList = new JList<>(chatModel) {
+            @Override
+            public boolean getScrollableTracksViewportWidth() {
+                return true; // Rows are as wide as the window, so their widths are never measured
+            }
+
+            @Override
+            public String getToolTipText(MouseEvent event) {
+                int index = locationToIndex(event.getPoint());
+                return index >= 0 ? getModel().getElementAt(index) : null;
+            }
+        };
+        // Fixed row sizes, so the list never measures rows outside the view
+        chatList.setFixedCellHeight(chatList.getFontMetrics(chatList.getFont()).getHeight() + 2);
+        chatList.setFixedCellWidth(1);
+        chatList.setToolTipText("");
+        chatScrollPane = new JScrollPane(chatList);
         frame.add(chatScrollPane, BorderLayout.CENTER);
 
         // === Input Panel ===
         JPanel inputPanel = new JPanel();
         inputPanel.setLayout(new BorderLayout());
         inputField = new JTextField();
+        inputField.getDocument().putProperty("filterNewlines", Boolean.FALSE); // Keep pasted lines apart
         sendButton = new JButton("Send");
         inputPanel.add(inputField, BorderLayout.CENTER);
         inputPanel.add(sendButton, BorderLayout.EAST);
@@ -60,37 +106,167 @@ public class ChatGUI {
         inputField.addActionListener(e -> handleSend());
 
         client.setConsumer(this::displayMessage); // Connect consumer to displayMessage
+        client.setPresenceListener(update -> SwingUtilities.invokeLater(this::refreshUsers));
+        client.setBackpressureListener(full -> SwingUtilities.invokeLater(() -> {
+            sendButton.setEnabled(!full);
+            sendButton.setText(full ? "Sending..." : "Send");
+        }));
 
         frame.setVisible(true);
     }
 
     /** 
-     * Helper method to handle sending messages using the GUI
+     * Helper method to handle sending messages using the GUI. Sends the input line by line until
+     * the client's send queue is full, and leaves the rest in the input field
      */
     private void handleSend() {
-        String message = inputField.getText().trim();
-        if (message.isEmpty()) return;
-
-        if ("exit".equalsIgnoreCase(message)) {
-            client.log("[System] Exiting chat...");
-            frame.dispose();
-            client.stop();
-            return;
+        String[] lines = inputField.getText().split("\\R");
+        int handled = 0;
+        while (handled < lines.length && !client.isBackpressured()) {
+            String message = lines[handled].trim();
+            if ("exit".equalsIgnoreCase(message)) {
+                client.log("[System] Exiting chat...");
+                frame.dispose();
+                client.stop();
+                return;
+            }
+            if (!message.isEmpty() && !handleLine(message)) {
+                break; // The queue filled up during the call, keep the line to send again
+            }
+            handled++;
         }
+        inputField.setText(String.join("\n", Arrays.copyOfRange(lines, handled, lines.length)));
+    }
 
+    /**
+     * Helper method to handle a single line of input, a command or a message
+     *
+     * @return false if the send queue was full, so the line was not sent
+     */
+    private boolean handleLine(String message) {
+        rejected = false;
         try {
-            client.sendMessage(message);
-            client.log("You: " + message);
-            inputField.setText("");
+            if (message.startsWith("/join ")) {
+                joinRoom(message.substring("/join ".length()).trim());
+            } else if ("/leave".equalsIgnoreCase(message)) {
+                leaveRoom();
+            } else if (message.startsWith("/msg ")) {
+                sendDirect(message.substring("/msg ".length()).trim());
+            } else if (message.startsWith("/status ")) {
+                queued(client.setStatusAsync(message.substring("/status ".length()).trim()));
+            } else if (message.startsWith("/history ")) {
+                requestHistory(message.substring("/history ".length()).trim());
+            } else if (currentRoom != null) {
+                if (queued(client.sendToRoomAsync(currentRoom, message))) {
+                    client.log("You [" + currentRoom + "]: " + message);
+                }
+            } else if (queued(client.sendMessageAsync(message))) {
+                client.log("You: " + message);
+            }
         } catch (Exception e) {
             client.log("[Error] " + e.getMessage());
         }
+        return !rejected;
+    }
+
+    /**
+     * Helper method to join a room and make it the one messages are sent to
+     */
+    private void joinRoom(String room) {
+        if (room.equals(currentRoom)) {
+            return;
+        }
+        if (queued(client.joinRoomAsync(room))) {
+            leaveRoom();
+            currentRoom = room;
+            frame.setTitle("DD1349 - ChatApp - " + room);
+            client.log("[System] Joined " + room);
+        }
+    }
+
+    /**
+     * Helper method to send a direct message, given as "<id> <message>"
+     */
+    private void sendDirect(String command) {
+        String[] parts = command.split("\\s+", 2);
+        try {
+            long id = Long.parseLong(parts[0].replace("#", ""));
+            if (parts.length == 2 && queued(client.sendDirectAsync(id, parts[1]))) {
+                client.log("You [to #" + id + "]: " + parts[1]);
+            }
+        } catch (NumberFormatException e) {
+            client.log("[System] Usage: /msg <id> <message>");
+        }
+    }
+
+    /**
+     * Helper method to ask for the history of the last given number of minutes
+     */
+    private void requestHistory(String minutes) {
+        try {
+            queued(client.requestHistoryAsync(System.currentTimeMillis() - Long.parseLong(minutes) * 60_000));
+        } catch (NumberFormatException e) {
+            client.log("[System] Usage: /history <minutes>");
+        }
+    }
+
+    /**
+     * Helper method to leave the current room, if any
+     */
+    private void leaveRoom() {
+        if (currentRoom != null) {
+            queued(client.leaveRoomAsync(currentRoom));
+            client.log("[System] Left " + currentRoom);
+            currentRoom = null;
+            frame.setTitle("DD1349 - ChatApp");
+        }
+    }
+
+    /**
+     * Helper method to report a request the client could not queue, or failed to send later. A
+     * request the full send queue had no room for is not reported, its line is sent again instead
+     *
+     * @return true if the request was queued
+     */
+    private boolean queued(CompletableFuture<Void> result) {
+        result.whenComplete((ignored, e) -> { // Runs right away if the request was not queued
+            if (e instanceof RejectedExecutionException) {
+                rejected = true;
+            } else if (e != null) {
+                client.log("[Error] Not sent: " + e.getMessage());
+            }
+        });
+        return !result.isCompletedExceptionally();
+    }
+
+    /**
+     * Helper method to show the client's current list of clients online in the Users list
+     */
+    private void refreshUsers() {
+        List<String> users = new ArrayList<>();
+        client.getPresence().forEach((id, status) -> users.add("#" + id
+                + (id == client.getClientId() ? " (you)" : "")
+                + (status.isEmpty() ? "" : " - " + status)));
+        userListModel.clear();
+        userListModel.addAll(users);
     }
 
     /**
-     * Helper method to display messages in the chatArea
+     * Helper method to display messages in the chat list. Can be called from any thread.
      */
     public void displayMessage(String message) {
-        SwingUtilities.invokeLater(() -> chatArea.append(message + "\n"));
+        chatModel.add(message);
+    }
+
+    /**
+     * Helper method to keep the latest message in view after new ones were added, unless the
+     * user has scrolled up to read older ones
+     */
+    private void followLatest() {
+        JScrollBar bar = chatScrollPane.getVerticalScrollBar();
+        boolean atBottom = bar.getValue() + bar.getVisibleAmount() >= bar.getMaximum() - chatList.getFixedCellHeight();
+        if (atBottom) {
+            chatList.ensureIndexIsVisible(chatModel.getSize() - 1); // The viewport lays out the new rows first
+        }
     }
 }
\ No newline at end of file
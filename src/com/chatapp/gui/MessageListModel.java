@@ -0,0 +1,103 @@
+package com.chatapp.gui;
+
+import java.util.ArrayDeque;
+import javax.swing.AbstractListModel;
+import javax.swing.Timer;
+
+/**
+ * List model of the chat window's messages: a ring buffer that keeps the latest `capacity`
+ * messages and drops the oldest, so memory stays flat however long the session runs.
+ *
+ * Messages can be added from any thread. They are collected in a pending batch, bounded by the
+ * capacity as well, and moved into the model on the event dispatch thread at most once per
+ * `FRAME_MILLIS`, with a single removed and a single added event per batch. A busy room then costs
+ * the EDT one update per frame instead of one per message.
+ *
+ * @version 2026-10-17
+ */
+class MessageListModel extends AbstractListModel<String> {
+    private static final long serialVersionUID = 1L;
+
+    static final int FRAME_MILLIS = 16; // About 60 updates per second at most
+
+    private final String[] messages;    // Ring buffer, only touched on the EDT
+    private int head = 0;               // Index of the oldest message
+    private int size = 0;
+
+    private final ArrayDeque<String> pending = new ArrayDeque<>(); // Guarded by itself
+    private boolean flushScheduled = false;                         // Guarded by pending
+    private final Timer flushTimer;
+    private final Runnable afterFlush;
+
+    /**
+     * @param capacity   number of messages kept
+     * @param afterFlush run on the EDT after each batch has been added
+     */
+    MessageListModel(int capacity, Runnable afterFlush) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        this.messages = new String[capacity];
+        this.afterFlush = afterFlush;
+        this.flushTimer = new Timer(FRAME_MILLIS, e -> flush());
+        this.flushTimer.setRepeats(false);
+    }
+
+    /**
+     * Adds a message. Safe to call from any thread; the message shows up with the next frame.
+     */
+    void add(String message) {
+        synchronized (pending) {
+            if (pending.size() == messages.length) {
+                pending.pollFirst(); // Would be pushed out of the buffer by this batch anyway
+            }
+            pending.addLast(message);
+            if (!flushScheduled) {
+                flushScheduled = true;
+                flushTimer.start();
+            }
+        }
+    }
+
+    /**
+     * Moves the pending batch into the buffer, on the EDT.
+     */
+    private void flush() {
+        String[] batch;
+        synchronized (pending) {
+            batch = pending.toArray(new String[0]);
+            pending.clear();
+            flushScheduled = false;
+        }
+        if (batch.length == 0) {
+            return;
+        }
+
+        // A batch is never larger than the buffer, so at most the old messages are dropped
+        int capacity = messages.length;
+        int removed = Math.max(0, size + batch.length - capacity);
+        if (removed > 0) {
+            head = (head + removed) % capacity;
+            size -= removed;
+            fireIntervalRemoved(this, 0, removed - 1);
+        }
+
+        int first = size;
+        for (String message : batch) {
+            messages[(head + size) % capacity] = message;
+            size++;
+        }
+        fireIntervalAdded(this, first, size - 1);
+        afterFlush.run();
+    }
+
+    @Override
+    public int getSize() {
+        return size;
+    }
+
+    @Override
+    public String getElementAt(int index) {
+        return messages[(head + index) % messages.length];
+    }
+}
\ No newline at end of file
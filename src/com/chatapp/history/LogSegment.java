@@ -0,0 +1,274 @@
+package com.chatapp.history;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.zip.CRC32C;
+
+/**
+ * One file of a `MessageLog`, memory-mapped in full.
+ *
+ * Records are appended back to back as `[int length][int CRC32C][long timestamp][length bytes of
+ * message]`, with non-decreasing timestamps. The checksum covers the timestamp and the message.
+ * Recovery stops at the first record whose length or checksum is wrong, since the operating system
+ * writes the mapped pages back in any order and a crash can leave any of them behind, and clears
+ * what follows it, so records written after a lost one are never read as new ones later.
+ * A sparse index keeps the sequence number, timestamp and position of the first record after
+ * every `INDEX_INTERVAL` bytes, so a lookup binary searches the index and then scans at most that
+ * many bytes of the mapped file.
+ *
+ * Only the owning log's appending thread writes to a segment. Readers may scan it at the same
+ * time: the index size and the end of the data are volatile, and published only after the bytes
+ * they cover have been written.
+ *
+ * @version 2026-10-17
+ */
+class LogSegment {
+    static final int HEADER_LENGTH = Integer.BYTES + Integer.BYTES + Long.BYTES;
+    static final int INDEX_INTERVAL = 4096; // Bytes of records between index entries
+    private static final int CHECKSUM_OFFSET = Integer.BYTES;
+    private static final int TIMESTAMP_OFFSET = CHECKSUM_OFFSET + Integer.BYTES;
+    private static final String SUFFIX = ".log";
+
+    private final Path path;
+    private final long baseSequence;          // Sequence number of the first record
+    private final MappedByteBuffer buffer;    // Written and read with absolute gets and puts only
+    private final CRC32C checksum = new CRC32C(); // Appending thread only
+
+    private final long[] indexSequences;
+    private final long[] indexTimestamps;
+    private final int[] indexPositions;
+    private volatile int indexSize = 0;
+    private int nextIndexPosition = 0;        // Records at or past this position get an index entry
+
+    private volatile int end = 0;             // End of the last complete record
+    private volatile long nextSequence;       // Sequence number of the next record appended
+    private volatile long lastTimestamp = Long.MIN_VALUE;
+
+    private LogSegment(Path path, long baseSequence, MappedByteBuffer buffer) {
+        this.path = path;
+        this.baseSequence = baseSequence;
+        this.buffer = buffer;
+        this.nextSequence = baseSequence;
+
+        int indexCapacity = buffer.capacity() / INDEX_INTERVAL + 1;
+        this.indexSequences = new long[indexCapacity];
+        this.indexTimestamps = new long[indexCapacity];
+        this.indexPositions = new int[indexCapacity];
+    }
+
+    /**
+     * Creates a new, empty segment in the directory, sized to hold `capacity` bytes of records.
+     */
+    static LogSegment create(Path directory, long baseSequence, int capacity) throws IOException {
+        Path path = directory.resolve(fileName(baseSequence));
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return new LogSegment(path, baseSequence, channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity));
+        }
+    }
+
+    /**
+     * Maps an existing segment file and rebuilds its index by scanning its records.
+     */
+    static LogSegment open(Path path) throws IOException {
+        long baseSequence = parseBaseSequence(path);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            LogSegment segment = new LogSegment(path, baseSequence, channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size()));
+            segment.recover();
+            return segment;
+        }
+    }
+
+    /**
+     * Returns true if the path names a segment file.
+     */
+    static boolean isSegmentFile(Path path) {
+        String name = path.getFileName().toString();
+        return name.endsWith(SUFFIX) && name.length() > SUFFIX.length()
+                && name.chars().limit(name.length() - SUFFIX.length()).allMatch(Character::isDigit);
+    }
+
+    static long parseBaseSequence(Path path) {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+    }
+
+    private static String fileName(long baseSequence) {
+        return String.format("%020d%s", baseSequence, SUFFIX); // Zero padded, so files sort by sequence
+    }
+
+    /**
+     * Scans the records in the file, stopping at the first one that is empty, incomplete or does
+     * not match its checksum, and clears everything after it.
+     */
+    private void recover() {
+        int position = 0;
+        while (position + HEADER_LENGTH <= buffer.capacity()) {
+            int length = buffer.getInt(position);
+            if (length <= 0 || length > buffer.capacity() - position - HEADER_LENGTH
+                    || buffer.getInt(position + CHECKSUM_OFFSET) != checksum(position, length)) {
+                break;
+            }
+            long timestamp = buffer.getLong(position + TIMESTAMP_OFFSET);
+            indexRecord(position, timestamp);
+            position += HEADER_LENGTH + length;
+            lastTimestamp = timestamp;
+            nextSequence++;
+        }
+        end = position;
+        for (int i = position; i < buffer.capacity(); i++) {
+            if (buffer.get(i) != 0) {
+                buffer.put(i, (byte) 0); // Only pages with leftovers are written
+            }
+        }
+    }
+
+    /**
+     * Returns the CRC32C of the timestamp and message of the record at the position.
+     */
+    private int checksum(int position, int length) {
+        checksum.reset();
+        checksum.update(buffer.slice(position + TIMESTAMP_OFFSET, Long.BYTES + length));
+        return (int) checksum.getValue();
+    }
+
+    /**
+     * Returns true if a record with a message of the given length still fits.
+     */
+    boolean hasRoomFor(int length) {
+        return buffer.capacity() - end >= HEADER_LENGTH + length;
+    }
+
+    /**
+     * Appends a record. The caller must have checked `hasRoomFor` and serialize appends.
+     *
+     * @return the record's sequence number
+     */
+    long append(long timestamp, byte[] message) {
+        int position = end;
+        buffer.putLong(position + TIMESTAMP_OFFSET, timestamp);
+        buffer.put(position + HEADER_LENGTH, message);
+        buffer.putInt(position + CHECKSUM_OFFSET, checksum(position, message.length));
+        buffer.putInt(position, message.length); // Marks the record complete
+
+        lastTimestamp = timestamp;
+        end = position + HEADER_LENGTH + message.length;
+        indexRecord(position, timestamp); // After the end, so an index entry never points past it
+        return nextSequence++;
+    }
+
+    private void indexRecord(int position, long timestamp) {
+        if (position >= nextIndexPosition) {
+            int i = indexSize;
+            indexSequences[i] = nextSequence;
+            indexTimestamps[i] = timestamp;
+            indexPositions[i] = position;
+            indexSize = i + 1;
+            nextIndexPosition = position + INDEX_INTERVAL;
+        }
+    }
+
+    /**
+     * Visits, in order, the records with a sequence number of at least `fromSequence` and a
+     * timestamp of at least `fromTimestamp`, up to `limit` of them.
+     *
+     * @return the number of records visited
+     */
+    int scan(long fromSequence, long fromTimestamp, int limit, MessageLog.Visitor visitor) {
+        ByteBuffer records = buffer.asReadOnlyBuffer();
+        int size = indexSize;
+        int limitPosition = end; // Read after the index size, so it covers every entry read
+
+        // Start from whichever index entry is later: the last one at or before the sequence, or
+        // the last one before the timestamp. Every record before either fails the bounds.
+        int entry = Math.max(floorEntry(indexSequences, size, fromSequence, true), floorEntry(indexTimestamps, size, fromTimestamp, false));
+        int position = entry < 0 ? 0 : indexPositions[entry];
+        long sequence = entry < 0 ? baseSequence : indexSequences[entry];
+
+        int visited = 0;
+        while (visited < limit && position < limitPosition) {
+            int length = records.getInt(position);
+            long timestamp = records.getLong(position + TIMESTAMP_OFFSET);
+            if (sequence >= fromSequence && timestamp >= fromTimestamp) {
+                byte[] message = new byte[length];
+                records.get(position + HEADER_LENGTH, message);
+                visitor.visit(sequence, timestamp, message);
+                visited++;
+            }
+            position += HEADER_LENGTH + length;
+            sequence++;
+        }
+        return visited;
+    }
+
+    /**
+     * Returns the last of the first `size` index entries whose key is at most (or, if not
+     * `inclusive`, below) the given key, or -1 if there is none. Keys are non-decreasing.
+     */
+    private static int floorEntry(long[] keys, int size, long key, boolean inclusive) {
+        int low = 0;
+        int high = size - 1;
+        int found = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (keys[mid] < key || (inclusive && keys[mid] == key)) {
+                found = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    long getBaseSequence() {
+        return baseSequence;
+    }
+
+    long getNextSequence() {
+        return nextSequence;
+    }
+
+    /**
+     * Returns the timestamp of the last record, or `Long.MIN_VALUE` if the segment is empty.
+     */
+    long getLastTimestamp() {
+        return lastTimestamp;
+    }
+
+    /**
+     * Returns the number of bytes of records. The file is that long once sealed, see `seal`, and
+     * `segmentBytes` long before.
+     */
+    int size() {
+        return end;
+    }
+
+    /**
+     * Writes the mapped pages back to the file.
+     */
+    void flush() {
+        buffer.force();
+    }
+
+    /**
+     * Writes the mapped pages back and cuts the file down to its records, once nothing more will
+     * be appended. The mapping stays, for readers, but nothing past the records is read again.
+     */
+    void seal() throws IOException {
+        buffer.force();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.truncate(end);
+        }
+    }
+
+    /**
+     * Deletes the segment's file. Readers that are still scanning it keep the mapping until they
+     * are done.
+     */
+    void delete() throws IOException {
+        Files.deleteIfExists(path);
+    }
+}
@@ -0,0 +1,236 @@
+package com.chatapp.history;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.*;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Append-only, persistent log of chat messages, kept in a directory of memory-mapped segment files.
+ *
+ * Every message gets a sequence number and a timestamp. Appending writes straight into the mapped
+ * file of the newest segment, and once that is full the log rolls over to a new one. A sparse
+ * index per segment finds where to start reading, so the last N messages, or the messages since
+ * a point in time, can be replayed without reading the whole log, and without ever holding more
+ * than one message of it on the heap. The operating system decides which pages stay in memory.
+ *
+ * Disk use is bounded by retention limits: the log keeps at most `maxSegments` segments, each cut
+ * down to its messages once sealed, and drops segments whose newest message is older than the
+ * retention period. Messages older than that are also never replayed.
+ *
+ * Appends are serialized, replays can run at the same time as appends and each other. Pages are
+ * written back by the operating system, and forced to disk when a segment is sealed or the log
+ * closed. Every record has a checksum, so after a crash of the machine the log ends at the last
+ * message of the active segment that reached the disk whole, and the messages after it are lost.
+ *
+ * @version 2026-10-17
+ */
+public class MessageLog implements Closeable {
+    public static final int DEFAULT_SEGMENT_BYTES = 16 * 1024 * 1024;
+    public static final int DEFAULT_MAX_SEGMENTS = 8;
+    public static final Duration DEFAULT_RETENTION = Duration.ofDays(7);
+
+    /**
+     * Receives replayed messages, in the order they were appended.
+     */
+    @FunctionalInterface
+    public interface Visitor {
+        void visit(long sequence, long timestamp, byte[] message);
+    }
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final int maxSegments;
+    private final long retentionMillis;
+
+    private volatile List<LogSegment> segments; // Oldest first, the last one is appended to
+    private long lastTimestamp = Long.MIN_VALUE; // Guarded by this
+    private boolean closed = false;              // Guarded by this
+
+    /**
+     * Opens the log in the directory with the default segment size and retention limits.
+     */
+    public MessageLog(Path directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_BYTES, DEFAULT_MAX_SEGMENTS, DEFAULT_RETENTION);
+    }
+
+    /**
+     * Opens the log in the directory, creating it if needed, and recovers any segments already
+     * in it.
+     *
+     * @param segmentBytes size of each segment file, which also bounds the size of one message
+     * @param maxSegments  number of segments kept, so disk use is at most `maxSegments * segmentBytes`
+     * @param retention    how long messages are kept
+     */
+    public MessageLog(Path directory, int segmentBytes, int maxSegments, Duration retention) throws IOException {
+        if (segmentBytes < LogSegment.HEADER_LENGTH + 1 || maxSegments < 1 || retention.isNegative()) {
+            throw new IllegalArgumentException("Invalid segment size or retention limits");
+        }
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.maxSegments = maxSegments;
+        this.retentionMillis = retention.toMillis();
+
+        Files.createDirectories(directory);
+        List<LogSegment> opened = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path path : (Iterable<Path>) files.filter(LogSegment::isSegmentFile).sorted()::iterator) {
+                opened.add(LogSegment.open(path));
+            }
+        }
+        if (opened.isEmpty()) {
+            opened.add(LogSegment.create(directory, 0, segmentBytes));
+        }
+        this.segments = List.copyOf(opened);
+        this.lastTimestamp = active().getLastTimestamp();
+        dropExpired(System.currentTimeMillis());
+    }
+
+    /**
+     * Appends a message. Timestamps never go backwards: a timestamp before the previous message's
+     * is stored as the previous one.
+     *
+     * @return the message's sequence number
+     * @throws IOException if the log is closed, the message does not fit in a segment, or a new
+     *                     segment could not be created
+     */
+    public synchronized long append(long timestamp, byte[] message) throws IOException {
+        if (closed) {
+            throw new IOException("Message log is closed");
+        }
+        if (message.length == 0 || message.length > segmentBytes - LogSegment.HEADER_LENGTH) {
+            throw new IOException("Message of " + message.length + " bytes does not fit in a segment");
+        }
+
+        lastTimestamp = Math.max(lastTimestamp, timestamp);
+        LogSegment active = active();
+        if (!active.hasRoomFor(message.length)) {
+            active = roll();
+        }
+        long sequence = active.append(lastTimestamp, message);
+        dropExpired(lastTimestamp);
+        return sequence;
+    }
+
+    /**
+     * Replays the last `count` messages, oldest first, skipping any older than the retention period.
+     *
+     * @return the number of messages replayed
+     */
+    public int replayLast(int count, Visitor visitor) {
+        List<LogSegment> snapshot = segments;
+        long from = snapshot.get(snapshot.size() - 1).getNextSequence() - count;
+        return replay(snapshot, from, oldestRetained(), count, visitor);
+    }
+
+    /**
+     * Replays the messages appended at or after the given time, oldest first, up to `limit` of them.
+     *
+     * @return the number of messages replayed
+     */
+    public int replaySince(long timestampMillis, int limit, Visitor visitor) {
+        return replay(segments, Long.MIN_VALUE, Math.max(timestampMillis, oldestRetained()), limit, visitor);
+    }
+
+    private int replay(List<LogSegment> snapshot, long fromSequence, long fromTimestamp, int limit, Visitor visitor) {
+        int replayed = 0;
+        for (LogSegment segment : snapshot) {
+            if (replayed >= limit) {
+                break;
+            }
+            if (segment.getNextSequence() <= fromSequence || segment.getLastTimestamp() < fromTimestamp) {
+                continue; // Nothing to replay in this segment
+            }
+            replayed += segment.scan(fromSequence, fromTimestamp, limit - replayed, visitor);
+        }
+        return replayed;
+    }
+
+    private long oldestRetained() {
+        return System.currentTimeMillis() - retentionMillis;
+    }
+
+    /**
+     * Returns the sequence number of the oldest message still in the log.
+     */
+    public long getFirstSequence() {
+        return segments.get(0).getBaseSequence();
+    }
+
+    /**
+     * Returns the sequence number the next message appended will get.
+     */
+    public long getNextSequence() {
+        List<LogSegment> snapshot = segments;
+        return snapshot.get(snapshot.size() - 1).getNextSequence();
+    }
+
+    public int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * Returns the number of bytes of messages, with their record headers, in the log.
+     */
+    public long getSizeBytes() {
+        return segments.stream().mapToLong(LogSegment::size).sum();
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    private LogSegment active() {
+        return segments.get(segments.size() - 1);
+    }
+
+    /**
+     * Seals the active segment and starts a new one, dropping the oldest segment if the log
+     * would otherwise hold more than `maxSegments`.
+     */
+    private LogSegment roll() throws IOException {
+        LogSegment sealed = active();
+        sealed.seal();
+        LogSegment next = LogSegment.create(directory, sealed.getNextSequence(), segmentBytes);
+
+        List<LogSegment> rolled = new ArrayList<>(segments);
+        rolled.add(next);
+        while (rolled.size() > maxSegments) {
+            rolled.remove(0).delete();
+        }
+        segments = List.copyOf(rolled);
+        return next;
+    }
+
+    /**
+     * Drops the oldest sealed segments while all of their messages are older than the retention
+     * period. The active segment is never dropped.
+     */
+    private synchronized void dropExpired(long now) throws IOException {
+        List<LogSegment> current = segments;
+        int expired = 0;
+        while (expired < current.size() - 1 && current.get(expired).getLastTimestamp() < now - retentionMillis) {
+            expired++;
+        }
+        if (expired > 0) {
+            segments = List.copyOf(current.subList(expired, current.size()));
+            for (LogSegment segment : current.subList(0, expired)) {
+                segment.delete();
+            }
+        }
+    }
+
+    /**
+     * Forces the active segment to disk and stops accepting appends.
+     */
+    @Override
+    public synchronized void close() {
+        if (!closed) {
+            closed = true;
+            active().flush();
+        }
+    }
+}
@@ -1,5 +1,10 @@
 package com.chatapp;
 
+import java.nio.file.Path;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
 import com.chatapp.client.*;
 import com.chatapp.cryptography.*;
 import com.chatapp.gui.*;
@@ -7,33 +12,37 @@ import com.chatapp.server.*;
 
 /**
  * Early draft launcher class for starting the chat app
- * Starts a server instance, waits one second, then starts a client with GUI.
+ * Starts a server instance, waits until it accepts connections, then starts a client with GUI.
+ * The server's keys are kept in `./keys`, so only the first start has to generate them.
  * 
- * @version 2025-04-30
+ * @version 2026-10-17
  */
 public class launcher {
     public static void main(String[] args) throws Exception {
         int port = 12345;
         String host = "localhost";
         
-        new Thread(() -> {
-            try {
-                MessageEncryptor serverEncryptor = new SecureMessenger();
-                ChatServer server = new ChatServer(port, serverEncryptor);
-                server.start();
-            } catch (Exception e) {
-                System.err.println("Failed to start server: " + e.getMessage());
-            }
-        }).start();
+        ChatServer server;
+        try {
+            Path keys = Path.of("keys");
+            MessageEncryptor serverEncryptor = new HybridMessenger(new SecureMessenger(KeyFiles.loadOrCreate(keys.resolve("server-rsa.pem"), KeyPairPool.rsa()::take)));
+            server = new ChatServer(port, serverEncryptor);
+            server.addEncryptor(new X25519Messenger(KeyFiles.loadOrCreate(keys.resolve("server-x25519.pem"), X25519Messenger::generateKeyPair)));
+        } catch (Exception e) {
+            System.err.println("Failed to start server: " + e.getMessage());
+            return;
+        }
+        new Thread(server::start, "chat-server").start();
 
         try {
-            Thread.sleep(1000); // 1 second delay
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
+            server.whenReady().get(30, TimeUnit.SECONDS); // Instead of guessing how long binding the port takes
+        } catch (ExecutionException | TimeoutException e) {
+            System.err.println("Failed to start server: " + e.getMessage());
+            System.exit(1);
         }
 
         try {
-            SecureMessenger clientEncryptor = new SecureMessenger();
+            MessageEncryptor clientEncryptor = new X25519Messenger(); // Cheaper to create than an RSA key pair
             Client client = new Client(host, port, clientEncryptor);
             client.start();
             new ChatGUI(client);
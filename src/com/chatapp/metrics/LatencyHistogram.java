@@ -0,0 +1,148 @@
+package com.chatapp.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of non-negative values, typically latencies in nanoseconds.
+ *
+ * Values are counted in log-linear buckets: every power of two is split into 32 sub-buckets,
+ * so a reported percentile is at most about 3% above the true value, while the whole histogram
+ * is a fixed array of counters. Recording is a couple of atomic increments and never allocates,
+ * so it is cheap enough for hot paths and safe to call from any number of threads.
+ *
+ * Histograms can be published over JMX as they are, see `LatencyHistogramMBean`.
+ *
+ * @version 2026-10-17
+ */
+public class LatencyHistogram implements LatencyHistogramMBean {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Records a single value. Negative values are counted as zero.
+     */
+    public void record(long value) {
+        long v = Math.max(0, value);
+        buckets.incrementAndGet(bucketIndex(v));
+        count.increment();
+        sum.add(v);
+        max.accumulate(v);
+    }
+
+    /**
+     * Records the time elapsed since `startNanos`, a value from `System.nanoTime()`.
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    @Override
+    public long getCount() {
+        return count.sum();
+    }
+
+    @Override
+    public long getMax() {
+        return max.get();
+    }
+
+    @Override
+    public double getMean() {
+        long n = count.sum();
+        return n == 0 ? 0 : (double) sum.sum() / n;
+    }
+
+    @Override
+    public long getP50() {
+        return getPercentile(50);
+    }
+
+    @Override
+    public long getP99() {
+        return getPercentile(99);
+    }
+
+    @Override
+    public long getP999() {
+        return getPercentile(99.9);
+    }
+
+    /**
+     * Returns the value at the given percentile (0-100), rounded up to the upper bound of its
+     * bucket, or 0 if nothing has been recorded.
+     */
+    public long getPercentile(double percentile) {
+        long total = 0;
+        long[] counts = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = (long) Math.ceil(total * Math.min(100, Math.max(0, percentile)) / 100.0);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts[i];
+            if (seen >= Math.max(1, rank)) {
+                return Math.min(upperBound(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * Clears all recorded values. Values recorded concurrently with a reset may be partly lost.
+     */
+    @Override
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets.set(i, 0);
+        }
+        count.reset();
+        sum.reset();
+        max.reset();
+    }
+
+    /**
+     * Formats count, mean and the usual percentiles, dividing every value by `unitNanos`
+     * (e.g. 1000 for microseconds).
+     */
+    public String summary(long unitNanos, String unit) {
+        return String.format("count=%d mean=%.1f%s p50=%d%s p99=%d%s p999=%d%s max=%d%s",
+                getCount(), getMean() / unitNanos, unit,
+                getPercentile(50) / unitNanos, unit,
+                getPercentile(99) / unitNanos, unit,
+                getPercentile(99.9) / unitNanos, unit,
+                getMax() / unitNanos, unit);
+    }
+
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value); // Position of the highest bit, >= SUB_BUCKET_BITS
+        int shift = exponent - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+        return (shift + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long upperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long lower = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+        return lower + (1L << shift) - 1;
+    }
+}
\ No newline at end of file
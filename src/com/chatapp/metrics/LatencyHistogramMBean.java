@@ -0,0 +1,26 @@
+package com.chatapp.metrics;
+
+/**
+ * JMX view of a `LatencyHistogram`. All values are in nanoseconds.
+ *
+ * @version 2026-10-17
+ */
+public interface LatencyHistogramMBean {
+
+    long getCount();
+
+    double getMean();
+
+    long getMax();
+
+    long getP50();
+
+    long getP99();
+
+    long getP999();
+
+    /**
+     * Clears the histogram, e.g. to start a new measurement window.
+     */
+    void reset();
+}
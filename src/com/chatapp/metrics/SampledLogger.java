@@ -0,0 +1,64 @@
+package com.chatapp.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Leveled logging for hot paths: wraps a `java.util.logging.Logger` and only logs one in every
+ * `sampleRate` calls per level.
+ *
+ * The message is passed as a `Supplier`, so nothing is formatted unless the level is enabled
+ * and the call is sampled. With the default logging configuration FINE and below are off, which
+ * makes a disabled call a single level check.
+ *
+ * @version 2026-10-17
+ */
+public class SampledLogger {
+    private final Logger logger;
+    private final int sampleRate;
+    private final AtomicLong fineCalls = new AtomicLong();
+    private final AtomicLong warningCalls = new AtomicLong();
+
+    /**
+     * @param name        name of the underlying logger
+     * @param sampleRate  log one in every `sampleRate` calls, 1 logs every call
+     */
+    public SampledLogger(String name, int sampleRate) {
+        this.logger = Logger.getLogger(name);
+        this.sampleRate = Math.max(1, sampleRate);
+    }
+
+    /**
+     * Logs per-message or per-connection details, sampled.
+     */
+    public void fine(Supplier<String> message) {
+        log(Level.FINE, fineCalls, message);
+    }
+
+    /**
+     * Logs recurring problems, such as failed decryptions, sampled.
+     */
+    public void warning(Supplier<String> message) {
+        log(Level.WARNING, warningCalls, message);
+    }
+
+    /**
+     * Logs rare events, such as start-up, without sampling.
+     */
+    public void info(String message) {
+        logger.info(message);
+    }
+
+    private void log(Level level, AtomicLong calls, Supplier<String> message) {
+        if (!logger.isLoggable(level)) {
+            return;
+        }
+        long call = calls.getAndIncrement();
+        if (call % sampleRate == 0) {
+            String suffix = sampleRate > 1 ? " (sampled 1/" + sampleRate + ", " + (call + 1) + " total)" : "";
+            logger.log(level, message.get() + suffix);
+        }
+    }
+}
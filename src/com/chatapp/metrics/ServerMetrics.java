@@ -0,0 +1,375 @@
+package com.chatapp.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counters and per-stage latency histograms for one ChatServer.
+ *
+ * Everything here is updated on the hot path, so it only uses `LongAdder`s and
+ * `LatencyHistogram`s, which never lock or allocate. `register` publishes the counters and every
+ * histogram as JMX MBeans under the `com.chatapp` domain, so they can be watched with JConsole,
+ * VisualVM or any JMX collector:
+ * - `com.chatapp:type=ChatServer,port=<port>` for the counters
+ * - `com.chatapp:type=ChatServer,port=<port>,stage=<stage>` for each latency histogram
+ * - `com.chatapp:type=ChatServer,port=<port>,batch=frames|bytes` for the size of outbound write
+ *   batches, which are counts rather than nanoseconds
+ *
+ * @version 2026-10-17
+ */
+public class ServerMetrics implements ServerMetricsMBean {
+    private final LongAdder activeConnections = new LongAdder();
+    private final LongAdder totalConnections = new LongAdder();
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+    private final LongAdder messagesReceived = new LongAdder();
+    private final LongAdder framesSent = new LongAdder();
+    private final LongAdder droppedMessages = new LongAdder();
+    private final LongAdder slowConsumerDisconnects = new LongAdder();
+    private final LongAdder compressionBytesIn = new LongAdder();
+    private final LongAdder compressionBytesOut = new LongAdder();
+    private final LongAdder relayedOut = new LongAdder();
+    private final LongAdder relayedIn = new LongAdder();
+    private final LongAdder presenceUpdates = new LongAdder();
+    private final LongAdder deferredAccepts = new LongAdder();
+    private final LongAdder handshakeTimeouts = new LongAdder();
+    private final LongAdder rateLimitedMessages = new LongAdder();
+    private final LongAdder idleDisconnects = new LongAdder();
+    private final LongAdder heartbeatsSent = new LongAdder();
+    private final LongAdder creditsGranted = new LongAdder();
+
+    private final LatencyHistogram handshakeTime = new LatencyHistogram();
+    private final LatencyHistogram resumptionTime = new LatencyHistogram();
+    private final LatencyHistogram replayTime = new LatencyHistogram();
+    private final LatencyHistogram decryptTime = new LatencyHistogram();
+    private final LatencyHistogram compressTime = new LatencyHistogram();
+    private final LatencyHistogram decompressTime = new LatencyHistogram();
+    private final LatencyHistogram broadcastTime = new LatencyHistogram();
+    private final LatencyHistogram sendTime = new LatencyHistogram();
+    private final LatencyHistogram batchFrames = new LatencyHistogram();
+    private final LatencyHistogram batchBytes = new LatencyHistogram();
+
+    /**
+     * Server-side time of a key exchange, from the client's HELLO to the session being ready.
+     */
+    public LatencyHistogram handshakeTime() {
+        return handshakeTime;
+    }
+
+    /**
+     * Server-side time of a session resumption, from the client's RESUME to the session being ready.
+     */
+    public LatencyHistogram resumptionTime() {
+        return resumptionTime;
+    }
+
+    /**
+     * Time to read one replay of the message history from the log and queue it for a client.
+     */
+    public LatencyHistogram replayTime() {
+        return replayTime;
+    }
+
+    /**
+     * Time to decrypt one incoming chat message.
+     */
+    public LatencyHistogram decryptTime() {
+        return decryptTime;
+    }
+
+    /**
+     * Time to compress one outgoing chat message, once per broadcast.
+     */
+    public LatencyHistogram compressTime() {
+        return compressTime;
+    }
+
+    /**
+     * Time to decompress one incoming chat message.
+     */
+    public LatencyHistogram decompressTime() {
+        return decompressTime;
+    }
+
+    /**
+     * Time for one broadcast to encrypt and queue the message for every recipient.
+     */
+    public LatencyHistogram broadcastTime() {
+        return broadcastTime;
+    }
+
+    /**
+     * Time for a connection's writer to write one batch of frames to a client's socket, from
+     * taking the first frame off the queue until the last byte is written, including any wait
+     * for more frames to coalesce.
+     */
+    public LatencyHistogram sendTime() {
+        return sendTime;
+    }
+
+    /**
+     * Number of frames written per outbound batch.
+     */
+    public LatencyHistogram batchFrames() {
+        return batchFrames;
+    }
+
+    /**
+     * Number of bytes written per outbound batch.
+     */
+    public LatencyHistogram batchBytes() {
+        return batchBytes;
+    }
+
+    public void connectionOpened() {
+        activeConnections.increment();
+        totalConnections.increment();
+    }
+
+    public void connectionClosed() {
+        activeConnections.decrement();
+    }
+
+    public void bytesRead(long bytes) {
+        bytesIn.add(bytes);
+    }
+
+    public void bytesWritten(long bytes) {
+        bytesOut.add(bytes);
+    }
+
+    /**
+     * Counts one outbound batch, written with a single flush or gathering write where possible.
+     */
+    public void batchWritten(int frames, long bytes) {
+        framesSent.add(frames);
+        batchFrames.record(frames);
+        batchBytes.record(bytes);
+    }
+
+    public void messageReceived() {
+        messagesReceived.increment();
+    }
+
+    public void messageDropped() {
+        droppedMessages.increment();
+    }
+
+    public void slowConsumerDisconnected() {
+        slowConsumerDisconnects.increment();
+    }
+
+    /**
+     * Counts one outgoing chat message that went through compression.
+     */
+    public void messageCompressed(long rawBytes, long compressedBytes) {
+        compressionBytesIn.add(rawBytes);
+        compressionBytesOut.add(compressedBytes);
+    }
+
+    /**
+     * Counts one message queued for a peer node of the cluster.
+     */
+    public void relaySent() {
+        relayedOut.increment();
+    }
+
+    /**
+     * Counts one message received from a peer node of the cluster.
+     */
+    public void relayReceived() {
+        relayedIn.increment();
+    }
+
+    /**
+     * Counts presence updates queued for clients.
+     */
+    public void presenceSent(int updates) {
+        presenceUpdates.add(updates);
+    }
+
+    /**
+     * Counts one connection the accept loop had to wait for, for the accept rate or a free
+     * handshake slot.
+     */
+    public void acceptDeferred() {
+        deferredAccepts.increment();
+    }
+
+    /**
+     * Counts one connection closed because it did not finish its key exchange in time.
+     */
+    public void handshakeTimedOut() {
+        handshakeTimeouts.increment();
+    }
+
+    /**
+     * Counts one frame that took a client over its rate limit, so its connection stopped reading.
+     */
+    public void messageRateLimited() {
+        rateLimitedMessages.increment();
+    }
+
+    /**
+     * Counts one client disconnected because nothing was read from it for the idle timeout.
+     */
+    public void idleDisconnected() {
+        idleDisconnects.increment();
+    }
+
+    public void heartbeatSent() {
+        heartbeatsSent.increment();
+    }
+
+    /**
+     * Counts one CREDIT frame sent to a client.
+     */
+    public void creditGranted() {
+        creditsGranted.increment();
+    }
+
+    @Override
+    public long getActiveConnections() {
+        return activeConnections.sum();
+    }
+
+    @Override
+    public long getTotalConnections() {
+        return totalConnections.sum();
+    }
+
+    @Override
+    public long getBytesIn() {
+        return bytesIn.sum();
+    }
+
+    @Override
+    public long getBytesOut() {
+        return bytesOut.sum();
+    }
+
+    @Override
+    public long getMessagesReceived() {
+        return messagesReceived.sum();
+    }
+
+    @Override
+    public long getFramesSent() {
+        return framesSent.sum();
+    }
+
+    @Override
+    public long getDroppedMessages() {
+        return droppedMessages.sum();
+    }
+
+    @Override
+    public long getSlowConsumerDisconnects() {
+        return slowConsumerDisconnects.sum();
+    }
+
+    @Override
+    public long getCompressionBytesIn() {
+        return compressionBytesIn.sum();
+    }
+
+    @Override
+    public long getCompressionBytesOut() {
+        return compressionBytesOut.sum();
+    }
+
+    @Override
+    public double getCompressionRatio() {
+        long out = compressionBytesOut.sum();
+        return out == 0 ? 1 : (double) compressionBytesIn.sum() / out;
+    }
+
+    @Override
+    public long getRelayedOut() {
+        return relayedOut.sum();
+    }
+
+    @Override
+    public long getRelayedIn() {
+        return relayedIn.sum();
+    }
+
+    @Override
+    public long getPresenceUpdates() {
+        return presenceUpdates.sum();
+    }
+
+    @Override
+    public long getDeferredAccepts() {
+        return deferredAccepts.sum();
+    }
+
+    @Override
+    public long getHandshakeTimeouts() {
+        return handshakeTimeouts.sum();
+    }
+
+    @Override
+    public long getRateLimitedMessages() {
+        return rateLimitedMessages.sum();
+    }
+
+    @Override
+    public long getIdleDisconnects() {
+        return idleDisconnects.sum();
+    }
+
+    @Override
+    public long getHeartbeatsSent() {
+        return heartbeatsSent.sum();
+    }
+
+    @Override
+    public long getCreditsGranted() {
+        return creditsGranted.sum();
+    }
+
+    /**
+     * Returns every latency histogram by its stage name.
+     */
+    public Map<String, LatencyHistogram> histograms() {
+        Map<String, LatencyHistogram> histograms = new LinkedHashMap<>();
+        histograms.put("handshake", handshakeTime);
+        histograms.put("resumption", resumptionTime);
+        histograms.put("replay", replayTime);
+        histograms.put("decrypt", decryptTime);
+        histograms.put("compress", compressTime);
+        histograms.put("decompress", decompressTime);
+        histograms.put("broadcast", broadcastTime);
+        histograms.put("send", sendTime);
+        return histograms;
+    }
+
+    /**
+     * Publishes the counters and histograms on the platform MBean server. Registering the same
+     * port twice replaces the earlier MBeans.
+     */
+    public void register(int port) throws JMException {
+        MBeanServer mbeans = ManagementFactory.getPlatformMBeanServer();
+        String base = "com.chatapp:type=ChatServer,port=" + port;
+
+        registerReplacing(mbeans, this, new ObjectName(base));
+        for (Map.Entry<String, LatencyHistogram> entry : histograms().entrySet()) {
+            registerReplacing(mbeans, entry.getValue(), new ObjectName(base + ",stage=" + entry.getKey()));
+        }
+        registerReplacing(mbeans, batchFrames, new ObjectName(base + ",batch=frames"));
+        registerReplacing(mbeans, batchBytes, new ObjectName(base + ",batch=bytes"));
+    }
+
+    private static void registerReplacing(MBeanServer mbeans, Object mbean, ObjectName name) throws JMException {
+        if (mbeans.isRegistered(name)) {
+            mbeans.unregisterMBean(name);
+        }
+        mbeans.registerMBean(mbean, name);
+    }
+}
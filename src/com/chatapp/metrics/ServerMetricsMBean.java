@@ -0,0 +1,70 @@
+package com.chatapp.metrics;
+
+/**
+ * JMX view of the server's counters. Latencies are published separately, as one
+ * `LatencyHistogramMBean` per stage.
+ *
+ * @version 2026-10-17
+ */
+public interface ServerMetricsMBean {
+
+    /** Clients currently connected. */
+    long getActiveConnections();
+
+    /** Clients accepted since the server started. */
+    long getTotalConnections();
+
+    /** Bytes read from clients. */
+    long getBytesIn();
+
+    /** Bytes written to clients. */
+    long getBytesOut();
+
+    /** Chat messages received and decrypted. */
+    long getMessagesReceived();
+
+    /** Frames written to clients. */
+    long getFramesSent();
+
+    /** Messages dropped because a client's outbound queue was full. */
+    long getDroppedMessages();
+
+    /** Clients disconnected because their outbound queue overflowed. */
+    long getSlowConsumerDisconnects();
+
+    /** Bytes of outgoing chat messages before compression. */
+    long getCompressionBytesIn();
+
+    /** Bytes of outgoing chat messages after compression, including messages left raw. */
+    long getCompressionBytesOut();
+
+    /** Bytes before compression per byte after it, 1 if nothing was compressed. */
+    double getCompressionRatio();
+
+    /** Messages relayed to peer nodes of the cluster, counted once per peer. */
+    long getRelayedOut();
+
+    /** Messages relayed from peer nodes of the cluster. */
+    long getRelayedIn();
+
+    /** Presence snapshots and deltas sent to clients, counted once per client. */
+    long getPresenceUpdates();
+
+    /** Connections the accept loop waited for, for the accept rate or a free handshake slot. */
+    long getDeferredAccepts();
+
+    /** Connections closed because they did not finish the key exchange in time. */
+    long getHandshakeTimeouts();
+
+    /** Frames that took a client over its rate limit, each pausing reads from the client. */
+    long getRateLimitedMessages();
+
+    /** Clients disconnected because nothing was read from them for the idle timeout. */
+    long getIdleDisconnects();
+
+    /** Heartbeats sent to clients the server had nothing else to send to. */
+    long getHeartbeatsSent();
+
+    /** CREDIT frames sent to clients that use flow control. */
+    long getCreditsGranted();
+}
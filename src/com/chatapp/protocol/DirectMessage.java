@@ -0,0 +1,49 @@
+package com.chatapp.protocol;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A direct (1:1) chat message, as carried (encrypted) in `DIRECT_MESSAGE` frames.
+ *
+ * Encoded as the 8 byte id of the other client and the UTF-8 message text. From the client the
+ * id is the recipient's, and from the server the sender's, so the recipient can answer.
+ *
+ * @version 2026-10-17
+ */
+public final class DirectMessage {
+    private final long peerId;
+    private final String text;
+
+    public DirectMessage(long peerId, String text) {
+        this.peerId = peerId;
+        this.text = text;
+    }
+
+    /**
+     * Returns the recipient's id in a message from a client, the sender's in one from the server.
+     */
+    public long getPeerId() {
+        return peerId;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public byte[] encode() {
+        byte[] textBytes = text.getBytes(StandardCharsets.UTF_8);
+        return ByteBuffer.allocate(Long.BYTES + textBytes.length).putLong(peerId).put(textBytes).array();
+    }
+
+    /**
+     * Decodes a direct message, throwing `IllegalArgumentException` if it is malformed.
+     */
+    public static DirectMessage decode(byte[] encoded) {
+        if (encoded.length < Long.BYTES) {
+            throw new IllegalArgumentException("Malformed direct message");
+        }
+        long peerId = ByteBuffer.wrap(encoded).getLong();
+        return new DirectMessage(peerId, new String(encoded, Long.BYTES, encoded.length - Long.BYTES, StandardCharsets.UTF_8));
+    }
+}
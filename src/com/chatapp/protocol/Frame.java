@@ -0,0 +1,264 @@
+package com.chatapp.protocol;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * A single unit of the binary wire protocol spoken between `Client` and the server.
+ *
+ * On the wire every frame is a 4 byte big-endian payload length, a type byte (see `FrameType`)
+ * and the raw payload bytes. Ciphertext is carried as-is, without any Base64 or line encoding.
+ *
+ * A frame is immutable. Its wire encoding is built on first use and then shared, so a broadcast
+ * frame sent to many clients is only ever encoded once.
+ *
+ * A frame can also be built around a buffer that already holds its wire encoding, see
+ * `wrapEncoded`, e.g. a pooled direct buffer a message was encrypted straight into. Such a frame
+ * is handed back to its pool with `release()` once it has been written.
+ *
+ * @version 2026-10-17
+ */
+public final class Frame {
+    public static final int HEADER_LENGTH = 5;
+    public static final int MAX_PAYLOAD_LENGTH = 1 << 20; // 1 MiB
+    public static final int RESUME_NONCE_LENGTH = 32;
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private final FrameType type;
+    private final byte[] payload;              // Null for a frame created with wrapEncoded
+    private final int payloadLength;
+    private volatile ByteBuffer encoded = null;
+    private final Consumer<ByteBuffer> recycler; // Takes back the encoded buffer, or null
+
+    public Frame(FrameType type, byte[] payload) {
+        if (payload.length > MAX_PAYLOAD_LENGTH) {
+            throw new IllegalArgumentException("Frame payload too large: " + payload.length);
+        }
+        this.type = type;
+        this.payload = payload;
+        this.payloadLength = payload.length;
+        this.recycler = null;
+    }
+
+    private Frame(FrameType type, ByteBuffer encoded, Consumer<ByteBuffer> recycler) {
+        this.type = type;
+        this.payload = null;
+        this.payloadLength = encoded.remaining() - HEADER_LENGTH;
+        this.encoded = encoded;
+        this.recycler = recycler;
+    }
+
+    public Frame(FrameType type) {
+        this(type, EMPTY);
+    }
+
+    /**
+     * Creates a frame around a buffer holding its whole wire encoding, header included, from
+     * position 0 to the limit. The buffer is not copied, and must not be changed afterwards.
+     *
+     * @param recycler given the buffer by `release()`, or null
+     */
+    public static Frame wrapEncoded(FrameType type, ByteBuffer encoded, Consumer<ByteBuffer> recycler) {
+        if (encoded.position() != 0 || encoded.remaining() < HEADER_LENGTH
+                || encoded.getInt(0) != encoded.remaining() - HEADER_LENGTH || encoded.get(4) != type.getCode()) {
+            throw new IllegalArgumentException("Buffer does not hold an encoded " + type + " frame");
+        }
+        return new Frame(type, encoded, recycler);
+    }
+
+    /**
+     * Creates a HELLO frame carrying the sender's protocol version and public key, and no features.
+     */
+    public static Frame hello(int version, byte[] publicKey) {
+        return hello(version, 0, publicKey);
+    }
+
+    /**
+     * Creates a HELLO frame carrying the sender's protocol version, its feature flags (from
+     * version 2 on) and its public key.
+     */
+    public static Frame hello(int version, int features, byte[] publicKey) {
+        return new Frame(FrameType.HELLO, withVersion(version, features, publicKey));
+    }
+
+    /**
+     * Creates a RESUME frame carrying the sender's protocol version, its nonce and, from the
+     * client, the session ticket, and no features.
+     */
+    public static Frame resume(int version, byte[] nonce, byte[] ticket) {
+        return resume(version, 0, nonce, ticket);
+    }
+
+    /**
+     * Creates a RESUME frame carrying the sender's protocol version, its feature flags (from
+     * version 2 on), its nonce and, from the client, the session ticket.
+     */
+    public static Frame resume(int version, int features, byte[] nonce, byte[] ticket) {
+        if (nonce.length != RESUME_NONCE_LENGTH) {
+            throw new IllegalArgumentException("Resumption nonce must be " + RESUME_NONCE_LENGTH + " bytes");
+        }
+        byte[] body = ByteBuffer.allocate(RESUME_NONCE_LENGTH + ticket.length).put(nonce).put(ticket).array();
+        return new Frame(FrameType.RESUME, withVersion(version, features, body));
+    }
+
+    private static byte[] withVersion(int version, int features, byte[] body) {
+        int offset = versionLength(version);
+        byte[] payload = new byte[offset + body.length];
+        payload[0] = (byte) version;
+        if (offset > 1) {
+            payload[1] = (byte) features;
+        }
+        System.arraycopy(body, 0, payload, offset, body.length);
+        return payload;
+    }
+
+    /**
+     * Returns the number of bytes the version, and from version 2 on the features, take.
+     */
+    private static int versionLength(int version) {
+        return version >= FrameCodec.FEATURES_VERSION ? 2 : 1;
+    }
+
+    /**
+     * Creates a frame whose payload starts with a group key epoch, see `GROUP_KEY` and
+     * `GROUP_MESSAGE`.
+     */
+    public static Frame withEpoch(FrameType type, int epoch, byte[] body) {
+        return new Frame(type, ByteBuffer.allocate(4 + body.length).putInt(epoch).put(body).array());
+    }
+
+    /**
+     * Creates a CREDIT frame acknowledging the client's frames up to `acknowledged`, and letting
+     * it send `window` more.
+     */
+    public static Frame credit(long acknowledged, int window) {
+        return new Frame(FrameType.CREDIT, ByteBuffer.allocate(Long.BYTES + Integer.BYTES).putLong(acknowledged).putInt(window).array());
+    }
+
+    public FrameType getType() {
+        return type;
+    }
+
+    /**
+     * Returns the payload. For a frame created with `wrapEncoded` it is copied out of the
+     * encoded buffer on every call.
+     */
+    public byte[] getPayload() {
+        if (payload != null) {
+            return payload;
+        }
+        byte[] copy = new byte[payloadLength];
+        encoded.get(HEADER_LENGTH, copy);
+        return copy;
+    }
+
+    /**
+     * Returns the protocol version of a HELLO or RESUME frame.
+     */
+    public int getVersion() {
+        return getPayload()[0] & 0xFF;
+    }
+
+    /**
+     * Returns the feature flags of a HELLO or RESUME frame, none before version 2.
+     */
+    public int getFeatures() {
+        return versionLength(getVersion()) > 1 ? getPayload()[1] & 0xFF : 0;
+    }
+
+    /**
+     * Returns the public key of a HELLO frame.
+     */
+    public byte[] getPublicKey() {
+        return Arrays.copyOfRange(getPayload(), versionLength(getVersion()), payloadLength);
+    }
+
+    /**
+     * Returns true if a RESUME frame was accepted, i.e. carries a version and nonce.
+     */
+    public boolean isResumeAccepted() {
+        return payloadLength > 0 && payloadLength >= versionLength(getVersion()) + RESUME_NONCE_LENGTH;
+    }
+
+    /**
+     * Returns the nonce of a RESUME frame.
+     */
+    public byte[] getResumeNonce() {
+        int offset = versionLength(getVersion());
+        return Arrays.copyOfRange(getPayload(), offset, offset + RESUME_NONCE_LENGTH);
+    }
+
+    /**
+     * Returns the session ticket of a client's RESUME frame.
+     */
+    public byte[] getResumeTicket() {
+        return Arrays.copyOfRange(getPayload(), versionLength(getVersion()) + RESUME_NONCE_LENGTH, payloadLength);
+    }
+
+    /**
+     * Returns the epoch of a frame created with `withEpoch`.
+     */
+    public int getEpoch() {
+        return ByteBuffer.wrap(getPayload()).getInt();
+    }
+
+    /**
+     * Returns the payload after the epoch of a frame created with `withEpoch`.
+     */
+    public byte[] getEpochBody() {
+        return Arrays.copyOfRange(getPayload(), 4, payloadLength);
+    }
+
+    /**
+     * Returns the number of the client's frames a CREDIT frame acknowledges.
+     */
+    public long getCreditAcknowledged() {
+        return ByteBuffer.wrap(getPayload()).getLong();
+    }
+
+    /**
+     * Returns the number of frames past the acknowledged ones a CREDIT frame lets the client send.
+     */
+    public int getCreditWindow() {
+        return ByteBuffer.wrap(getPayload()).getInt(Long.BYTES);
+    }
+
+    /**
+     * Returns the number of bytes this frame takes on the wire.
+     */
+    public int getEncodedLength() {
+        return HEADER_LENGTH + payloadLength;
+    }
+
+    /**
+     * Returns a read-only view of the frame's wire encoding, positioned at its start. Every call
+     * returns an independent view of the same bytes.
+     */
+    public ByteBuffer encoded() {
+        ByteBuffer buffer = encoded;
+        if (buffer == null) {
+            buffer = ByteBuffer.allocate(getEncodedLength());
+            buffer.putInt(payload.length).put(type.getCode()).put(payload).flip();
+            encoded = buffer;
+        }
+        return buffer.asReadOnlyBuffer();
+    }
+
+    /**
+     * Hands the encoded buffer of a frame created with `wrapEncoded` back to its recycler. Must
+     * only be called once the frame has been written and will not be used again, and only for a
+     * frame sent to a single client. Does nothing for other frames.
+     */
+    public void release() {
+        if (recycler != null) {
+            recycler.accept(encoded);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return type + "[" + payloadLength + " bytes]";
+    }
+}
\ No newline at end of file
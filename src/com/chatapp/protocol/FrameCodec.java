@@ -0,0 +1,121 @@
+package com.chatapp.protocol;
+
+import java.io.*;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads and writes `Frame`s, both on blocking streams and on NIO buffers.
+ *
+ * Also holds the protocol version negotiated in the key exchange: the client's HELLO carries the
+ * highest version it speaks, and the server answers with the version both sides will use, or
+ * closes the connection if it cannot speak any version the client does.
+ *
+ * From version 2 on, HELLO and RESUME frames also carry a byte of feature flags after the version.
+ * The client sets the optional features it wants, and the server answers with the ones both sides
+ * will use, e.g. `FEATURE_COMPRESSION`.
+ *
+ * @version 2026-10-17
+ */
+public final class FrameCodec {
+    public static final int PROTOCOL_VERSION = 2;     // Highest version this build speaks
+    public static final int MIN_PROTOCOL_VERSION = 1; // Oldest version this build still accepts
+    public static final int FEATURES_VERSION = 2;     // First version with feature flags
+
+    /** Chat message plaintext is compressed before encryption, see `PayloadCompressor`. */
+    public static final int FEATURE_COMPRESSION = 0x01;
+    /** The server grants the client credit for the frames it sends, see `FrameType.CREDIT`. */
+    public static final int FEATURE_FLOW_CONTROL = 0x02;
+
+    private FrameCodec() {
+    }
+
+    /**
+     * Returns the version to use with a peer that speaks up to `peerVersion`, or -1 if there is
+     * no version both sides speak.
+     */
+    public static int negotiateVersion(int peerVersion) {
+        int version = Math.min(peerVersion, PROTOCOL_VERSION);
+        return version >= MIN_PROTOCOL_VERSION ? version : -1;
+    }
+
+    /**
+     * Writes a frame to the stream. Does not flush.
+     */
+    public static void write(OutputStream out, Frame frame) throws IOException {
+        ByteBuffer encoded = frame.encoded();
+        if (encoded.hasArray()) {
+            out.write(encoded.array(), encoded.arrayOffset() + encoded.position(), encoded.remaining());
+        } else {
+            byte[] bytes = new byte[encoded.remaining()];
+            encoded.get(bytes);
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Reads the next frame from the stream, blocking until it has arrived completely.
+     *
+     * @return the frame, or null if the stream ended cleanly between two frames
+     * @throws ProtocolException if the frame is malformed
+     */
+    public static Frame read(DataInputStream in) throws IOException {
+        int length;
+        try {
+            length = in.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+        FrameType type = readType(length, in.readByte());
+
+        byte[] payload = new byte[length];
+        in.readFully(payload);
+        return new Frame(type, payload);
+    }
+
+    /**
+     * Decodes the next frame from the buffer, if it has arrived completely. The buffer must be
+     * in read mode; on success its position is moved past the frame, otherwise it is left as is.
+     *
+     * @return the frame, or null if the buffer does not hold a complete frame yet
+     * @throws ProtocolException if the frame is malformed
+     */
+    public static Frame decode(ByteBuffer buffer) throws ProtocolException {
+        if (buffer.remaining() < Frame.HEADER_LENGTH) {
+            return null;
+        }
+        int start = buffer.position();
+        int length = buffer.getInt(start);
+        FrameType type = readType(length, buffer.get(start + 4));
+        if (buffer.remaining() < Frame.HEADER_LENGTH + length) {
+            return null;
+        }
+
+        byte[] payload = new byte[length];
+        buffer.position(start + Frame.HEADER_LENGTH);
+        buffer.get(payload);
+        return new Frame(type, payload);
+    }
+
+    /**
+     * Returns the total length of the frame starting at the buffer's position, as given by its
+     * header, or -1 if the header has not arrived yet. Used to grow read buffers for large frames.
+     */
+    public static int peekEncodedLength(ByteBuffer buffer) {
+        if (buffer.remaining() < Frame.HEADER_LENGTH) {
+            return -1;
+        }
+        return Frame.HEADER_LENGTH + buffer.getInt(buffer.position());
+    }
+
+    private static FrameType readType(int length, byte code) throws ProtocolException {
+        if (length < 0 || length > Frame.MAX_PAYLOAD_LENGTH) {
+            throw new ProtocolException("Invalid frame length: " + length);
+        }
+        FrameType type = FrameType.fromCode(code);
+        if (type == null) {
+            throw new ProtocolException("Unknown frame type: " + code);
+        }
+        return type;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,97 @@
+package com.chatapp.protocol;
+
+/**
+ * The type byte of a `Frame`, telling the receiver how to interpret its payload.
+ *
+ * @version 2026-10-17
+ */
+public enum FrameType {
+    /** Key exchange: protocol version, feature flags (version 2 on) and the sender's encoded public key. */
+    HELLO(0x01),
+    /** Key exchange: the session key, wrapped with the client's public key. */
+    SESSION_KEY(0x02),
+    /** A group key epoch followed by the group key, encrypted with the client's session. */
+    GROUP_KEY(0x03),
+    /** A session resumption ticket, opaque to the client. */
+    SESSION_TICKET(0x04),
+    /**
+     * Session resumption, sent instead of HELLO: protocol version, feature flags (version 2 on),
+     * a nonce and, from the client, a ticket. The server answers with its own nonce, or with an
+     * empty payload to ask for a HELLO.
+     */
+    RESUME(0x05),
+    /** The 8 byte id the server gave the client, sent once the session is ready. */
+    CLIENT_ID(0x06),
+    /**
+     * Asks for the chat history since a time: 8 bytes of milliseconds since the epoch, encrypted
+     * with the connection's session encryptor.
+     */
+    HISTORY(0x07),
+    /** A chat message encrypted with the connection's session encryptor. */
+    MESSAGE(0x10),
+    /** A group key epoch followed by a chat message encrypted with that group key. */
+    GROUP_MESSAGE(0x11),
+    /** A `RoomMessage` encrypted with the connection's session encryptor. */
+    ROOM_MESSAGE(0x12),
+    /** A group key epoch followed by a `RoomMessage` encrypted with that group key. */
+    GROUP_ROOM_MESSAGE(0x13),
+    /** A `DirectMessage` encrypted with the connection's session encryptor. */
+    DIRECT_MESSAGE(0x14),
+    /** A `HistoryMessage` replayed from the server's log, encrypted with the connection's session encryptor. */
+    HISTORY_MESSAGE(0x15),
+    /** Presence information about other clients. */
+    PRESENCE(0x20),
+    /** Keep-alive with no payload. */
+    HEARTBEAT(0x21),
+    /**
+     * Flow control, from the server: the number of frames it has handled from the client so far,
+     * 8 bytes, and how many frames the client may send beyond those, 4 bytes. Heartbeats and the
+     * key exchange are not counted. Only sent if both sides agreed to `FrameCodec.FEATURE_FLOW_CONTROL`.
+     */
+    CREDIT(0x22),
+    /** Joins the room whose name is the payload, encrypted with the connection's session encryptor. */
+    JOIN(0x30),
+    /** Leaves the room whose name is the payload, encrypted with the connection's session encryptor. */
+    LEAVE(0x31),
+
+    // Only sent between the nodes of a cluster, see `ChatServer.setCluster`. All payloads after the
+    // challenge are encrypted with the key of the link, see `LinkSession`.
+
+    /** Opens a link to a peer node, in answer to its challenge: a nonce, then the sending node's id. */
+    NODE_HELLO(0x40),
+    /** A broadcast relayed from the node it was sent to. */
+    RELAY_MESSAGE(0x41),
+    /** A `RoomMessage` relayed between nodes: the origin node's id, a forward flag and the message. */
+    RELAY_ROOM_MESSAGE(0x42),
+    /** A `DirectMessage` relayed to the recipient's node: the recipient's id and the message, carrying the sender's id. */
+    RELAY_DIRECT_MESSAGE(0x43),
+    /** Tells a room's owner node whether the sender has members in the room: a flag and the room name. */
+    ROOM_INTEREST(0x44),
+    /** The first frame on a link, sent in the clear by the node that accepted it: a random nonce. */
+    NODE_CHALLENGE(0x45);
+
+    private static final FrameType[] BY_CODE = new FrameType[256];
+
+    static {
+        for (FrameType type : values()) {
+            BY_CODE[type.code] = type;
+        }
+    }
+
+    private final int code;
+
+    FrameType(int code) {
+        this.code = code;
+    }
+
+    public byte getCode() {
+        return (byte) code;
+    }
+
+    /**
+     * Returns the frame type with the given code, or null if there is none.
+     */
+    public static FrameType fromCode(byte code) {
+        return BY_CODE[code & 0xFF];
+    }
+}
\ No newline at end of file
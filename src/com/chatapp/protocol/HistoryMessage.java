@@ -0,0 +1,56 @@
+package com.chatapp.protocol;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A chat message replayed from the server's message history, as carried (encrypted) in
+ * `HISTORY_MESSAGE` frames.
+ *
+ * Encoded as the 8 byte time the server received the message, in milliseconds since the epoch,
+ * and the UTF-8 message text.
+ *
+ * @version 2026-10-17
+ */
+public final class HistoryMessage {
+    private final long timestamp;
+    private final String text;
+
+    public HistoryMessage(long timestamp, String text) {
+        this.timestamp = timestamp;
+        this.text = text;
+    }
+
+    /**
+     * Returns when the server received the message, in milliseconds since the epoch.
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public byte[] encode() {
+        return encode(timestamp, text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Encodes a history message whose text is already UTF-8 encoded, e.g. as read from the log.
+     */
+    public static byte[] encode(long timestamp, byte[] text) {
+        return ByteBuffer.allocate(Long.BYTES + text.length).putLong(timestamp).put(text).array();
+    }
+
+    /**
+     * Decodes a history message, throwing `IllegalArgumentException` if it is malformed.
+     */
+    public static HistoryMessage decode(byte[] encoded) {
+        if (encoded.length < Long.BYTES) {
+            throw new IllegalArgumentException("Malformed history message");
+        }
+        long timestamp = ByteBuffer.wrap(encoded).getLong();
+        return new HistoryMessage(timestamp, new String(encoded, Long.BYTES, encoded.length - Long.BYTES, StandardCharsets.UTF_8));
+    }
+}
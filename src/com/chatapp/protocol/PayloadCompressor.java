@@ -0,0 +1,191 @@
+package com.chatapp.protocol;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses chat message plaintext before it is encrypted, for connections that negotiated
+ * `FrameCodec.FEATURE_COMPRESSION` in the key exchange.
+ *
+ * On such a connection the plaintext of every chat message frame (MESSAGE, GROUP_MESSAGE,
+ * ROOM_MESSAGE, GROUP_ROOM_MESSAGE, DIRECT_MESSAGE and HISTORY_MESSAGE) starts with one byte
+ * telling how the rest is encoded: `RAW`, or `DEFLATE` for raw deflate with the shared preset
+ * `DICTIONARY`. The dictionary holds words and fragments common in chat and pasted logs, so even
+ * short messages have something to refer back to. Messages below the threshold, and ones that
+ * would not get smaller, are sent raw, so compression never costs more than the one byte.
+ *
+ * Compressing before encrypting makes the ciphertext length depend on the content. Every message
+ * is compressed on its own, with only the public dictionary, so the length only tells something
+ * about the text of that one message, never about other messages or keys.
+ *
+ * Deflaters and inflaters hold native memory, so they are pooled and shared by all threads
+ * rather than kept per thread or per connection.
+ *
+ * @version 2026-10-17
+ */
+public final class PayloadCompressor {
+    public static final int DEFAULT_THRESHOLD = 128;  // Bytes, smaller messages are sent raw
+    public static final byte RAW = 0;
+    public static final byte DEFLATE = 1;
+
+    /**
+     * Preset dictionary, the same on both sides. The most common strings come last, as deflate
+     * encodes nearby matches in fewer bits. Changing it breaks compatibility with older peers.
+     */
+    static final byte[] DICTIONARY = (
+            "java.lang.NullPointerException java.lang.IllegalStateException java.io.IOException "
+            + "Caused by: \tat com. org. sun. java.base/ (Unknown Source) .java:  ... more "
+            + "Exception in thread \"main\" Traceback (most recent call last): File \"\", line "
+            + "ERROR WARN INFO DEBUG TRACE FATAL [main] [INFO] [ERROR] Failed to Connection refused "
+            + "timeout timed out localhost:8080 http:// https:// www. .com/ .org/ .html .json "
+            + "GET POST HTTP/1.1 200 OK 404 Not Found 500 Internal Server Error "
+            + "2026-01-01T00:00:00.000Z 00:00:00 null true false undefined return function "
+            + "public static void private final class new String int ( ) { } [ ] ; = == != -> "
+            + "thanks thank you please sorry okay sure yeah maybe tomorrow today tonight meeting "
+            + "does anyone know how what when where why which could would should can you "
+            + "I think I don't I'm not sure it's that's there is are was were have has had "
+            + "the and to of a in is it you that for on with this be at as are not but "
+            ).getBytes(StandardCharsets.UTF_8);
+
+    private static final int POOL_SIZE = Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+    private static final BlockingQueue<Deflater> DEFLATERS = new ArrayBlockingQueue<>(POOL_SIZE);
+    private static final BlockingQueue<Inflater> INFLATERS = new ArrayBlockingQueue<>(POOL_SIZE);
+
+    private final int threshold;
+
+    public PayloadCompressor() {
+        this(DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * @param threshold size in bytes below which messages are sent raw
+     */
+    public PayloadCompressor(int threshold) {
+        if (threshold < 0) {
+            throw new IllegalArgumentException("Threshold must not be negative");
+        }
+        this.threshold = threshold;
+    }
+
+    public int getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * Returns the message prefixed with its encoding byte, deflated if that makes it smaller.
+     */
+    public byte[] compress(byte[] message) {
+        if (message.length > 0 && message.length >= threshold) {
+            byte[] deflated = deflate(message);
+            if (deflated != null) {
+                return deflated;
+            }
+        }
+        byte[] raw = new byte[1 + message.length];
+        raw[0] = RAW;
+        System.arraycopy(message, 0, raw, 1, message.length);
+        return raw;
+    }
+
+    /**
+     * Deflates the message behind a `DEFLATE` byte, or returns null if it would not get smaller.
+     */
+    private static byte[] deflate(byte[] message) {
+        Deflater deflater = DEFLATERS.poll();
+        if (deflater == null) {
+            deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        }
+        try {
+            deflater.setDictionary(DICTIONARY);
+            deflater.setInput(message);
+            deflater.finish();
+
+            byte[] out = new byte[message.length]; // Only useful if it ends up smaller than 1 + length
+            out[0] = DEFLATE;
+            int length = 1;
+            while (!deflater.finished() && length < out.length) {
+                length += deflater.deflate(out, length, out.length - length);
+            }
+            return deflater.finished() ? Arrays.copyOf(out, length) : null;
+        } finally {
+            deflater.reset();
+            if (!DEFLATERS.offer(deflater)) {
+                deflater.end();
+            }
+        }
+    }
+
+    /**
+     * Returns the message in a payload produced by `compress`.
+     *
+     * @throws DataFormatException if the payload is malformed, or would inflate to more than
+     *                             `Frame.MAX_PAYLOAD_LENGTH` bytes
+     */
+    public static byte[] decompress(byte[] payload) throws DataFormatException {
+        return decompress(ByteBuffer.wrap(payload));
+    }
+
+    /**
+     * Returns the message in the remaining bytes of a payload produced by `compress`, consuming
+     * them. A raw message is copied out once, straight from the buffer.
+     *
+     * @throws DataFormatException see `decompress(byte[])`
+     */
+    public static byte[] decompress(ByteBuffer payload) throws DataFormatException {
+        if (!payload.hasRemaining()) {
+            throw new DataFormatException("Missing compression byte");
+        }
+        byte encoding = payload.get();
+        switch (encoding) {
+            case RAW: {
+                byte[] message = new byte[payload.remaining()];
+                payload.get(message);
+                return message;
+            }
+            case DEFLATE:
+                return inflate(payload);
+            default:
+                throw new DataFormatException("Unknown compression: " + encoding);
+        }
+    }
+
+    private static byte[] inflate(ByteBuffer payload) throws DataFormatException {
+        Inflater inflater = INFLATERS.poll();
+        if (inflater == null) {
+            inflater = new Inflater(true);
+        }
+        try {
+            inflater.setDictionary(DICTIONARY);
+            int compressedLength = payload.remaining();
+            inflater.setInput(payload);
+
+            byte[] out = new byte[Math.min(Frame.MAX_PAYLOAD_LENGTH, Math.max(64, compressedLength * 4))];
+            int length = 0;
+            while (!inflater.finished()) {
+                if (length == out.length) {
+                    if (out.length >= Frame.MAX_PAYLOAD_LENGTH) {
+                        throw new DataFormatException("Message inflates beyond " + Frame.MAX_PAYLOAD_LENGTH + " bytes");
+                    }
+                    out = Arrays.copyOf(out, Math.min(Frame.MAX_PAYLOAD_LENGTH, out.length * 2));
+                }
+                int inflated = inflater.inflate(out, length, out.length - length);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new DataFormatException("Truncated compressed message");
+                }
+                length += inflated;
+            }
+            return Arrays.copyOf(out, length);
+        } finally {
+            inflater.reset();
+            if (!INFLATERS.offer(inflater)) {
+                inflater.end();
+            }
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.chatapp.protocol;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A change to the list of clients online, as carried (encrypted) in `PRESENCE` frames from the
+ * server.
+ *
+ * A snapshot replaces the client's whole list, and a delta changes only the clients in it. Both
+ * carry the presence version they bring the list from and to, so a client applies a delta only
+ * if it starts at the version it has, and skips one it has already seen in a snapshot. A long
+ * list is split over several updates of at most `MAX_ENTRIES` entries; the ones after the first
+ * start and end at the same version.
+ *
+ * Encoded as a kind byte, the 8 byte from and to versions, a 4 byte entry count, and per entry the
+ * client's 8 byte id, an online byte, and its status as a 1 byte length and UTF-8 bytes.
+ *
+ * From the client, a `PRESENCE` frame instead carries just the client's own status, as UTF-8.
+ *
+ * @version 2026-10-17
+ */
+public final class PresenceUpdate {
+    public static final int MAX_ENTRIES = 2048;       // Per update, so an update stays well below a frame's limit
+    public static final int MAX_STATUS_LENGTH = 64;   // Characters
+    public static final byte SNAPSHOT = 0;
+    public static final byte DELTA = 1;
+
+    /**
+     * One client's presence: online with a status, which may be empty, or offline.
+     */
+    public static final class Entry {
+        private final long id;
+        private final boolean online;
+        private final String status;
+
+        public Entry(long id, boolean online, String status) {
+            this.id = id;
+            this.online = online;
+            this.status = online ? status : "";
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public boolean isOnline() {
+            return online;
+        }
+
+        public String getStatus() {
+            return status;
+        }
+    }
+
+    private final byte kind;
+    private final long fromVersion;
+    private final long toVersion;
+    private final List<Entry> entries;
+
+    public PresenceUpdate(byte kind, long fromVersion, long toVersion, List<Entry> entries) {
+        if (entries.size() > MAX_ENTRIES) {
+            throw new IllegalArgumentException("At most " + MAX_ENTRIES + " entries per update");
+        }
+        this.kind = kind;
+        this.fromVersion = fromVersion;
+        this.toVersion = toVersion;
+        this.entries = Collections.unmodifiableList(entries);
+    }
+
+    public boolean isSnapshot() {
+        return kind == SNAPSHOT;
+    }
+
+    /**
+     * Returns the version a delta applies to. Not used for snapshots.
+     */
+    public long getFromVersion() {
+        return fromVersion;
+    }
+
+    /**
+     * Returns the version of the list once the update has been applied.
+     */
+    public long getToVersion() {
+        return toVersion;
+    }
+
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * Cuts a status down to `MAX_STATUS_LENGTH` characters, without splitting a surrogate pair.
+     */
+    public static String truncateStatus(String status) {
+        if (status.length() <= MAX_STATUS_LENGTH) {
+            return status;
+        }
+        int end = Character.isHighSurrogate(status.charAt(MAX_STATUS_LENGTH - 1)) ? MAX_STATUS_LENGTH - 1 : MAX_STATUS_LENGTH;
+        return status.substring(0, end);
+    }
+
+    public byte[] encode() {
+        byte[][] statuses = new byte[entries.size()][];
+        int length = 1 + 2 * Long.BYTES + Integer.BYTES;
+        for (int i = 0; i < statuses.length; i++) {
+            statuses[i] = truncateStatus(entries.get(i).getStatus()).getBytes(StandardCharsets.UTF_8);
+            length += Long.BYTES + 2 + statuses[i].length;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(length).put(kind).putLong(fromVersion).putLong(toVersion).putInt(statuses.length);
+        for (int i = 0; i < statuses.length; i++) {
+            Entry entry = entries.get(i);
+            buffer.putLong(entry.getId()).put((byte) (entry.isOnline() ? 1 : 0)).put((byte) statuses[i].length).put(statuses[i]);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Decodes a presence update, throwing `IllegalArgumentException` if it is malformed.
+     */
+    public static PresenceUpdate decode(byte[] encoded) {
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(encoded);
+            byte kind = buffer.get();
+            long fromVersion = buffer.getLong();
+            long toVersion = buffer.getLong();
+            int count = buffer.getInt();
+            if ((kind != SNAPSHOT && kind != DELTA) || count < 0 || count > MAX_ENTRIES) {
+                throw new IllegalArgumentException("Malformed presence update");
+            }
+            List<Entry> entries = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                long id = buffer.getLong();
+                boolean online = buffer.get() != 0;
+                byte[] status = new byte[buffer.get() & 0xFF];
+                buffer.get(status);
+                entries.add(new Entry(id, online, new String(status, StandardCharsets.UTF_8)));
+            }
+            return new PresenceUpdate(kind, fromVersion, toVersion, entries);
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Malformed presence update");
+        }
+    }
+}
\ No newline at end of file
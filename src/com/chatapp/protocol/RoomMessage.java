@@ -0,0 +1,76 @@
+package com.chatapp.protocol;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A chat message addressed to a room, as carried (encrypted) in `ROOM_MESSAGE` and
+ * `GROUP_ROOM_MESSAGE` frames.
+ *
+ * Encoded as a 1 byte room name length, the UTF-8 room name and the UTF-8 message text. The room
+ * name travels inside the ciphertext, so only the server and the room's members can see it.
+ *
+ * @version 2026-10-17
+ */
+public final class RoomMessage {
+    public static final int MAX_ROOM_LENGTH = 64; // In UTF-8 bytes
+
+    private final String room;
+    private final String text;
+
+    public RoomMessage(String room, String text) {
+        this.room = room;
+        this.text = text;
+    }
+
+    public String getRoom() {
+        return room;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * Returns true if the name can be used for a room: not blank and at most `MAX_ROOM_LENGTH`
+     * bytes of UTF-8.
+     */
+    public static boolean isValidRoom(String room) {
+        return room != null && !room.isBlank() && room.getBytes(StandardCharsets.UTF_8).length <= MAX_ROOM_LENGTH;
+    }
+
+    public byte[] encode() {
+        if (!isValidRoom(room)) {
+            throw new IllegalArgumentException("Invalid room name: " + room);
+        }
+        byte[] roomBytes = room.getBytes(StandardCharsets.UTF_8);
+        byte[] textBytes = text.getBytes(StandardCharsets.UTF_8);
+        return ByteBuffer.allocate(1 + roomBytes.length + textBytes.length)
+                .put((byte) roomBytes.length)
+                .put(roomBytes)
+                .put(textBytes)
+                .array();
+    }
+
+    /**
+     * Decodes a room message, throwing `IllegalArgumentException` if it is malformed.
+     */
+    public static RoomMessage decode(byte[] encoded) {
+        String room = decodeRoom(encoded);
+        int roomLength = encoded[0] & 0xFF;
+        String text = new String(encoded, 1 + roomLength, encoded.length - 1 - roomLength, StandardCharsets.UTF_8);
+        return new RoomMessage(room, text);
+    }
+
+    /**
+     * Decodes only the room name of an encoded room message, throwing `IllegalArgumentException`
+     * if it is malformed. Lets the server pass the message on without decoding its text.
+     */
+    public static String decodeRoom(byte[] encoded) {
+        int roomLength = encoded.length > 0 ? encoded[0] & 0xFF : -1;
+        if (roomLength <= 0 || 1 + roomLength > encoded.length) {
+            throw new IllegalArgumentException("Malformed room message");
+        }
+        return new String(encoded, 1, roomLength, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,164 @@
+package com.chatapp.server;
+
+import java.util.concurrent.*;
+
+import com.chatapp.metrics.*;
+
+/**
+ * Keeps any one client, or a flood of new connections, from taking the server's CPU from
+ * everyone else.
+ *
+ * Work is deferred rather than thrown away:
+ * - The accept loop only accepts a connection once it may, see `awaitAccept`: at most
+ *   `acceptsPerSecond` a second, and only while fewer than `maxHandshakes` connections are still
+ *   in their key exchange, the public-key work that costs the server the most. Connections that
+ *   have to wait stay in the listen backlog. A connection gives its handshake slot back once its
+ *   session is ready, or it closes, and is closed if that takes longer than the handshake timeout,
+ *   so clients that connect and never send a HELLO cannot hold the slots forever. The timeout is
+ *   checked along with the connection's idle deadlines, see `ClientHandler.checkIdle`.
+ * - Every client has a budget of frames and bytes a second, see `ClientLimit`. A client that
+ *   sends faster than its budget has its connection stop reading until the budget has refilled,
+ *   so it is slowed down by TCP flow control, and the decryption it would cost waits with it.
+ *
+ * Deferred accepts, rate limited frames and handshakes that timed out are counted in the server's
+ * metrics.
+ *
+ * @version 2026-10-17
+ */
+class AdmissionControl {
+    static final int DEFAULT_MESSAGES_PER_SECOND = 50;
+    static final int DEFAULT_BYTES_PER_SECOND = 1024 * 1024;
+    static final int DEFAULT_MAX_HANDSHAKES = 64;
+    static final long DEFAULT_HANDSHAKE_TIMEOUT_MILLIS = 10_000;
+    static final int DEFAULT_ACCEPTS_PER_SECOND = 1000;
+    static final double BURST_SECONDS = 2; // A client may send this many seconds' worth of its budget at once
+
+    private final ServerMetrics metrics;
+    private final ScheduledExecutorService timer;
+
+    private volatile int messagesPerSecond = DEFAULT_MESSAGES_PER_SECOND; // 0 for no limit
+    private volatile int bytesPerSecond = DEFAULT_BYTES_PER_SECOND;       // 0 for no limit
+    private volatile Semaphore handshakes = new Semaphore(DEFAULT_MAX_HANDSHAKES);
+    private volatile long handshakeTimeoutMillis = DEFAULT_HANDSHAKE_TIMEOUT_MILLIS;
+    private volatile int acceptsPerSecond = DEFAULT_ACCEPTS_PER_SECOND;   // 0 for no limit
+    private TokenBucket accepts;                                          // Accept loop thread only
+
+    AdmissionControl(ServerMetrics metrics) {
+        this.metrics = metrics;
+        this.timer = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "admission-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    void setClientRateLimit(int messagesPerSecond, int bytesPerSecond) {
+        if (messagesPerSecond < 0 || bytesPerSecond < 0) {
+            throw new IllegalArgumentException("Rate limits must not be negative");
+        }
+        this.messagesPerSecond = messagesPerSecond;
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    void setHandshakeLimit(int maxHandshakes, long timeoutMillis) {
+        if (maxHandshakes <= 0 || timeoutMillis <= 0) {
+            throw new IllegalArgumentException("Handshake limit and timeout must be positive");
+        }
+        this.handshakes = new Semaphore(maxHandshakes);
+        this.handshakeTimeoutMillis = timeoutMillis;
+    }
+
+    void setAcceptRate(int acceptsPerSecond) {
+        if (acceptsPerSecond < 0) {
+            throw new IllegalArgumentException("Accept rate must not be negative");
+        }
+        this.acceptsPerSecond = acceptsPerSecond;
+    }
+
+    /**
+     * Returns the most frames a client may send at once without being rate limited, 0 for no limit.
+     */
+    int getMessageBurst() {
+        return (int) (messagesPerSecond * BURST_SECONDS);
+    }
+
+    long getHandshakeTimeoutNanos() {
+        return TimeUnit.MILLISECONDS.toNanos(handshakeTimeoutMillis);
+    }
+
+    /**
+     * Waits until the accept loop may accept another connection, and takes a handshake slot for
+     * it, which the accept loop then hands to the connection's handler. Called by the accept loop
+     * only.
+     */
+    void awaitAccept() throws InterruptedException {
+        boolean deferred = false;
+        int rate = acceptsPerSecond;
+        if (rate > 0) {
+            if (accepts == null) {
+                accepts = new TokenBucket(rate, rate); // One second's worth of connections at once
+            }
+            long wait = accepts.take(1);
+            if (wait > 0) {
+                deferred = true;
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+        }
+        if (!handshakes.tryAcquire()) {
+            deferred = true;
+            handshakes.acquire();
+        }
+        if (deferred) {
+            metrics.acceptDeferred();
+        }
+    }
+
+    /**
+     * Gives back the handshake slot of a client whose session is ready, or that disconnected
+     * before it was.
+     */
+    void releaseHandshakeSlot() {
+        handshakes.release();
+    }
+
+    /**
+     * Runs a task once the given time has passed, on the admission control's timer thread.
+     */
+    void schedule(Runnable task, long delayNanos) {
+        timer.schedule(task, delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns a new budget for one client, with the server's current limits.
+     */
+    ClientLimit newClientLimit() {
+        return new ClientLimit(messagesPerSecond, bytesPerSecond);
+    }
+
+    /**
+     * One client's budget of frames and bytes a second. Used by the client's connection only.
+     */
+    final class ClientLimit {
+        private final TokenBucket messages; // Null for no limit
+        private final TokenBucket bytes;    // Null for no limit
+
+        private ClientLimit(int messagesPerSecond, int bytesPerSecond) {
+            this.messages = messagesPerSecond > 0 ? new TokenBucket(messagesPerSecond, messagesPerSecond * BURST_SECONDS) : null;
+            this.bytes = bytesPerSecond > 0 ? new TokenBucket(bytesPerSecond, bytesPerSecond * BURST_SECONDS) : null;
+        }
+
+        /**
+         * Charges a frame to the budget.
+         *
+         * @return nanoseconds the connection should stop reading for, 0 if the client is within
+         *         its budget
+         */
+        long charge(int frameBytes) {
+            long wait = Math.max(messages == null ? 0 : messages.take(1), bytes == null ? 0 : bytes.take(frameBytes));
+            if (wait > 0) {
+                metrics.messageRateLimited();
+            }
+            return wait;
+        }
+    }
+}
\ No newline at end of file
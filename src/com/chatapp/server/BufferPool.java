@@ -0,0 +1,83 @@
+package com.chatapp.server;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Pool of direct `ByteBuffer`s, for connection read buffers and for frames whose messages are
+ * encrypted straight into their wire encoding, see `ClientHandler.encryptFrame`.
+ *
+ * Buffers come in power-of-two size classes from `MIN_SIZE` to `MAX_SIZE` bytes, each kept in its
+ * own bounded queue, like the compressor's deflaters. Direct buffers are expensive to allocate but
+ * cost nothing to reuse, and a channel reads into and writes from them without copying them to a
+ * temporary buffer first.
+ *
+ * Releasing a buffer is optional: one that is never handed back, e.g. because its frame was dropped
+ * from a full queue, is collected as garbage, and the pool allocates a new one once it runs dry.
+ * A buffer must never be used after it has been released. Larger buffers are not pooled.
+ *
+ * @version 2026-10-17
+ */
+class BufferPool {
+    static final int MIN_SIZE = 512;
+    static final int MAX_SIZE = 64 * 1024;
+    private static final int BYTES_PER_CLASS = 4 * 1024 * 1024; // Idle bytes kept per size class
+
+    private final BlockingQueue<ByteBuffer>[] classes;
+    private final LongAdder allocated = new LongAdder();
+
+    /** Hands buffers back to this pool, see `Frame.wrapEncoded`. Shared, so frames do not allocate one. */
+    final Consumer<ByteBuffer> recycler = this::release;
+
+    @SuppressWarnings({"unchecked", "rawtypes"}) // Generic array
+    BufferPool() {
+        int count = classOf(MAX_SIZE) + 1;
+        classes = new BlockingQueue[count];
+        for (int i = 0; i < count; i++) {
+            classes[i] = new ArrayBlockingQueue<>(BYTES_PER_CLASS / (MIN_SIZE << i));
+        }
+    }
+
+    /**
+     * Returns a cleared direct buffer of at least the given size, limited to exactly that size.
+     */
+    ByteBuffer acquire(int size) {
+        if (size > MAX_SIZE) {
+            allocated.increment();
+            return ByteBuffer.allocateDirect(size);
+        }
+        int sizeClass = classOf(size);
+        ByteBuffer buffer = classes[sizeClass].poll();
+        if (buffer == null) {
+            allocated.increment();
+            buffer = ByteBuffer.allocateDirect(MIN_SIZE << sizeClass);
+        }
+        return buffer.limit(size);
+    }
+
+    /**
+     * Hands a buffer back to the pool. The caller must not use it afterwards.
+     */
+    void release(ByteBuffer buffer) {
+        int capacity = buffer.capacity();
+        if (!buffer.isDirect() || capacity > MAX_SIZE || capacity < MIN_SIZE || Integer.bitCount(capacity) != 1) {
+            return;
+        }
+        classes[classOf(capacity)].offer(buffer.clear()); // Dropped if the class is full
+    }
+
+    /**
+     * Returns the number of direct buffers allocated so far, because the pool had none to reuse.
+     */
+    long getAllocatedCount() {
+        return allocated.sum();
+    }
+
+    private static int classOf(int size) {
+        int bits = 32 - Integer.numberOfLeadingZeros(Math.max(size, MIN_SIZE) - 1); // Rounded up to a power of two
+        return bits - Integer.numberOfTrailingZeros(MIN_SIZE);
+    }
+}
\ No newline at end of file
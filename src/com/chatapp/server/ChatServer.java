@@ -2,10 +2,23 @@ package com.chatapp.server;
 
 import java.io.*;
 import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
 import java.util.*;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToIntFunction;
+import javax.management.JMException;
 
 import com.chatapp.cryptography.*;
+import com.chatapp.history.*;
+import com.chatapp.metrics.*;
+import com.chatapp.protocol.*;
 
 /**
  * ChatServer listens for incoming client connections, receives encrypted messages,
@@ -13,7 +26,8 @@ import com.chatapp.cryptography.*;
  * The ChatServer relies on the class ClientHandler that handles each client and
  * the message sending/recieving. 
  * 
- * It uses one thread per client connection.
+ * It runs in one of two modes, see `Mode`: by default it uses one thread per client connection,
+ * but it can also serve all clients from a small fixed set of non-blocking event loops.
  * 
  * The `ChatServer` handles incoming messages from clients and sends them to the server to be broadcasted. 
  * To achieve this with proper encryption, the server/client interaction goes like this: 
@@ -23,18 +37,437 @@ import com.chatapp.cryptography.*;
  * > then _reencrypts it for each connected client_ using their saved `clientPublicKey` in `ClientHandler`, 
  * > which is done inside the broadcast() method.
  * 
+ * With an encryptor that uses session keys, such as `HybridMessenger`, the public keys are only used
+ * during the key exchange, and the messages are encrypted with each client's session key instead.
+ * The server can hold one encryptor per key algorithm, see `addEncryptor`, and serves each client
+ * with the one matching the key in the client's HELLO, e.g. `X25519Messenger` for X25519 keys.
+ * After the key exchange the server hands out a `SessionTickets` ticket, with which a reconnecting
+ * client can resume its session in one round trip instead of repeating the key exchange.
+ * 
+ * In `BroadcastMode.GROUP_KEY` the server instead hands every client a shared `GroupKey`, encrypted
+ * with their session encryptor, and rotates it shortly after clients join or leave, see
+ * `GroupKeyRotator`. Each broadcast is then encrypted only once, and the same ciphertext frame is
+ * sent to every client.
+ * 
+ * Clients can also join rooms, see `broadcastToRoom`, whose messages are only encrypted for and
+ * delivered to the room's members. Plain messages still go to every client.
+ * 
+ * With a `MessageLog` set, see `setHistory`, every broadcast is also appended to a persistent log,
+ * and clients are sent the last few messages when they join, and older ones when they ask.
+ * 
+ * Every client gets a unique id when it connects, which it is told once its session is ready.
+ * Clients are kept in a sharded `ClientRegistry` by id, so connects and disconnects are constant
+ * time, and direct messages (see `sendDirect`) go straight to the recipient.
+ * 
+ * Clients are told who else is online, see `setPresenceInterval`: a snapshot of the list once
+ * their session is ready, and after that the changes, coalesced and sent at most once per interval.
+ * 
+ * Clients can ask to have chat messages compressed before they are encrypted, see `setCompression`.
+ * A broadcast is then compressed once, whatever the number of recipients.
+ * 
+ * Several servers can form a `Cluster`, see `setCluster`, each serving its own clients and relaying
+ * broadcasts, room messages and direct messages to the other nodes, once per node.
+ * 
+ * Sending never writes to a client's socket directly: each client has a bounded outbound queue
+ * drained by its own writer, see `OverflowPolicy` and `getQueueStats()`.
+ * Writers coalesce queued frames into batches, see `setWriteCoalescing`, so a burst costs one
+ * write call instead of one per frame.
+ * 
+ * In `Mode.NIO`, messages encrypted for a single client are encrypted straight into pooled direct
+ * buffers, see `BufferPool`, that hold the whole frame and go back to the pool once written.
+ * Messages are relayed as the UTF-8 bytes they were decrypted to, without a round trip through
+ * `String`, so relaying allocates next to nothing per recipient.
+ * 
+ * Admission control, see `AdmissionControl`, keeps clients from crowding each other out, see
+ * `setAcceptRate`, `setHandshakeLimit` and `setClientRateLimit`.
+ * 
+ * Clients and server send each other heartbeats when they have had nothing else to send for a
+ * while, see `setHeartbeat`, and the server disconnects a client it has not heard from for the idle
+ * timeout, so half-open connections do not linger. Every accepted connection's deadlines are kept
+ * in one `TimingWheel`.
+ * 
+ * Clients that ask for flow control, see `setFlowControl`, are granted credit for the frames they
+ * send, sized to how busy the server is.
+ * 
+ * `whenReady()` tells whoever started the server once it accepts connections, so a launcher or a
+ * test can connect its clients straight away instead of guessing how long binding the port takes.
+ * 
+ * Broadcasts to many recipients are split over per-core fan-out workers, see `FanOutEngine` and
+ * `setParallelFanOut`.
+ * 
+ * Connection, traffic and per-stage latency figures are kept in `ServerMetrics`, which the server
+ * publishes over JMX when it starts. Per-message events are only logged at FINE level, and sampled.
+ * 
  * @author Leonard Smedberg
- * @version 2025-04-27
+ * @version 2026-10-17
  */
 
 public class ChatServer {
+
+    /**
+     * How the server serves its client connections.
+     */
+    public enum Mode {
+        /** One thread per client, blocked reading the client's socket. */
+        BLOCKING,
+        /** A fixed set of selector event loops, one per core, each serving many clients. */
+        NIO
+    }
+
+    /**
+     * How broadcasts are encrypted.
+     */
+    public enum BroadcastMode {
+        /** Encrypt the message separately for each client with their session encryptor. */
+        PER_CLIENT,
+        /** Encrypt the message once with a shared group key that rotates as clients join and leave. */
+        GROUP_KEY
+    }
+
+    /**
+     * What to do when a client's outbound queue is full.
+     */
+    public enum OverflowPolicy {
+        /** Drop the oldest queued message to make room for the new one. */
+        DROP_OLDEST,
+        /** Drop the new message. */
+        DROP_NEWEST,
+        /** Disconnect the client. */
+        DISCONNECT
+    }
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+    public static final int MAX_ROOMS_PER_CLIENT = 256;
+    public static final int DEFAULT_MAX_BATCH_BYTES = 64 * 1024;
+    public static final int DEFAULT_SCROLLBACK = 50;
+    public static final long DEFAULT_HEARTBEAT_INTERVAL_MILLIS = 15_000;
+    public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 45_000;
+    public static final int DEFAULT_CREDIT_BUDGET = 16 * 1024;
+    public static final int MIN_CREDIT_WINDOW = 4;
+    public static final int MAX_CREDIT_WINDOW = 256;
+
     private final int port;
-    private final MessageEncryptor encryptor;
-    private final List<ClientHandler> clients = new CopyOnWriteArrayList<>(); // Thread-safe list type
+    private final Map<String, MessageEncryptor> encryptors = new ConcurrentHashMap<>(); // By key algorithm
+    private final Mode mode;
+    private final ClientRegistry clients = new ClientRegistry();             // Sharded by client id
+    private final RoomRegistry rooms = new RoomRegistry();                   // Room name -> members
+
+    private volatile BroadcastMode broadcastMode = BroadcastMode.PER_CLIENT;
+    private final GroupKeyRotator groupKeys = new GroupKeyRotator(clients, GroupKeyRotator.DEFAULT_INTERVAL_MILLIS);
+
+    private volatile int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+    private volatile OverflowPolicy overflowPolicy = OverflowPolicy.DROP_OLDEST;
+    private volatile int maxBatchBytes = DEFAULT_MAX_BATCH_BYTES;
+    private volatile long maxBatchDelayNanos = 0;
+    private volatile SessionTickets sessionTickets;         // Null if sessions cannot be resumed
+    private volatile MessageLog history;                    // Null if messages are not kept
+    private volatile int scrollback = DEFAULT_SCROLLBACK;
+    private volatile PayloadCompressor compressor = new PayloadCompressor(); // Null if compression is off
+    private volatile Cluster cluster;                       // Null unless the server is part of a cluster
+    private final ServerMetrics metrics = new ServerMetrics();
+    private final BufferPool bufferPool = new BufferPool();
+    private final AdmissionControl admission = new AdmissionControl(metrics);
+    private final FanOutEngine fanOutEngine = new FanOutEngine("fan-out", Runtime.getRuntime().availableProcessors(), metrics);
+    private final TimingWheel timers = new TimingWheel("idle-timer", TimingWheel.DEFAULT_TICK_MILLIS, TimingWheel.DEFAULT_SLOTS);
+    private volatile long heartbeatIntervalNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_HEARTBEAT_INTERVAL_MILLIS);
+    private volatile long idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_IDLE_TIMEOUT_MILLIS);
+    private volatile int creditBudget = DEFAULT_CREDIT_BUDGET; // 0 if clients are not granted credit
+    private volatile PresenceTracker presence = new PresenceTracker(clients, metrics, PresenceTracker.DEFAULT_INTERVAL_MILLIS);
+    private final SampledLogger logger = new SampledLogger(ChatServer.class.getName(), 100);
+    private final CompletableFuture<Integer> ready = new CompletableFuture<>(); // Completed with the bound port
 
     public ChatServer(int port, MessageEncryptor encryptor) {
+        this(port, encryptor, Mode.BLOCKING);
+    }
+
+    public ChatServer(int port, MessageEncryptor encryptor, Mode mode) {
         this.port = port;
-        this.encryptor = encryptor;
+        this.mode = mode;
+        addEncryptor(encryptor);
+        try {
+            this.sessionTickets = new SessionTickets();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Failed to create session ticket key", e);
+        }
+    }
+
+    /**
+     * Sets how session resumption tickets are issued, e.g. with a ticket key that survives
+     * restarts, or null to stop issuing and accepting them. By default every server has its own
+     * random ticket key.
+     */
+    public void setSessionTickets(SessionTickets sessionTickets) {
+        this.sessionTickets = sessionTickets;
+    }
+
+    SessionTickets getSessionTickets() {
+        return sessionTickets;
+    }
+
+    /**
+     * Sets how chat messages are compressed for clients that ask for compression in their HELLO,
+     * or null to never compress. By default messages from `PayloadCompressor.DEFAULT_THRESHOLD`
+     * bytes up are compressed. Only applies to clients that connect afterwards.
+     */
+    public void setCompression(PayloadCompressor compressor) {
+        this.compressor = compressor;
+    }
+
+    PayloadCompressor getCompressor() {
+        return compressor;
+    }
+
+    /**
+     * Sets the log every broadcast is appended to, or null, the default, to keep no history.
+     * Clients are replayed the last `scrollback` messages once their session is ready, and at
+     * most that many when they ask for the history since some time. The scrollback should be
+     * well below the outbound queue capacity, as the replayed messages are queued all at once.
+     * Room and direct messages are never logged.
+     * 
+     * The server does not close the log.
+     */
+    public void setHistory(MessageLog history, int scrollback) {
+        if (scrollback < 0) {
+            throw new IllegalArgumentException("Scrollback must not be negative");
+        }
+        this.history = history;
+        this.scrollback = scrollback;
+    }
+
+    /**
+     * Sets how often changes to the list of clients online are sent to the clients, at most, or
+     * 0 to not send presence at all. Changes within an interval are coalesced into one update.
+     * By default the interval is `PresenceTracker.DEFAULT_INTERVAL_MILLIS`. Must be called
+     * before the server is started.
+     * 
+     * In a cluster, every node only lists its own clients.
+     */
+    public void setPresenceInterval(long intervalMillis) {
+        if (intervalMillis < 0) {
+            throw new IllegalArgumentException("Presence interval must not be negative");
+        }
+        presence = intervalMillis > 0 ? new PresenceTracker(clients, metrics, intervalMillis) : null;
+    }
+
+    /**
+     * Sets how many frames, and how many bytes of them, each client may send per second, or 0
+     * for no limit. A client may send `AdmissionControl.BURST_SECONDS` seconds' worth at once.
+     * A client over either limit is not read from until it is back within it. By default clients
+     * may send `AdmissionControl.DEFAULT_MESSAGES_PER_SECOND` frames and
+     * `AdmissionControl.DEFAULT_BYTES_PER_SECOND` bytes a second. Only applies to clients that
+     * connect afterwards.
+     */
+    public void setClientRateLimit(int messagesPerSecond, int bytesPerSecond) {
+        admission.setClientRateLimit(messagesPerSecond, bytesPerSecond);
+    }
+
+    /**
+     * Sets how many accepted connections may be in their key exchange at once, and how long a
+     * connection may take to finish it before it is closed. Further connections are left in the
+     * listen backlog until a key exchange finishes. By default `AdmissionControl.DEFAULT_MAX_HANDSHAKES`
+     * and `AdmissionControl.DEFAULT_HANDSHAKE_TIMEOUT_MILLIS`. Must be called before the server is
+     * started.
+     */
+    public void setHandshakeLimit(int maxHandshakes, long timeoutMillis) {
+        admission.setHandshakeLimit(maxHandshakes, timeoutMillis);
+    }
+
+    /**
+     * Sets how many connections the server accepts per second at most, or 0 for no limit. By
+     * default `AdmissionControl.DEFAULT_ACCEPTS_PER_SECOND`. Must be called before the server is
+     * started.
+     */
+    public void setAcceptRate(int acceptsPerSecond) {
+        admission.setAcceptRate(acceptsPerSecond);
+    }
+
+    AdmissionControl getAdmissionControl() {
+        return admission;
+    }
+
+    /**
+     * Sets how long the server waits with nothing to send to a client before it sends a
+     * heartbeat, and how long it waits without hearing from a client before it disconnects it.
+     * The idle timeout should be a few heartbeat intervals of the clients, see
+     * `Client.setHeartbeat`, so a heartbeat or two can be lost or late. By default
+     * `DEFAULT_HEARTBEAT_INTERVAL_MILLIS` and `DEFAULT_IDLE_TIMEOUT_MILLIS`.
+     */
+    public void setHeartbeat(long intervalMillis, long idleTimeoutMillis) {
+        if (intervalMillis <= 0 || idleTimeoutMillis <= 0) {
+            throw new IllegalArgumentException("Heartbeat interval and idle timeout must be positive");
+        }
+        this.heartbeatIntervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+    }
+
+    long getHeartbeatIntervalNanos() {
+        return heartbeatIntervalNanos;
+    }
+
+    long getIdleTimeoutNanos() {
+        return idleTimeoutNanos;
+    }
+
+    /**
+     * Sets how many frames all clients together may have sent that the server has not handled
+     * yet, or 0 to turn flow control off. Clients that ask for flow control are granted a share of
+     * it, see `creditWindow`, and wait for the server before they send more, so a burst backs up
+     * in the client's own send queue instead of in socket buffers. By default
+     * `DEFAULT_CREDIT_BUDGET`. Only applies to clients that connect afterwards.
+     */
+    public void setFlowControl(int creditBudget) {
+        if (creditBudget < 0) {
+            throw new IllegalArgumentException("Credit budget must not be negative");
+        }
+        this.creditBudget = creditBudget;
+    }
+
+    int getCreditBudget() {
+        return creditBudget;
+    }
+
+    /**
+     * Returns how many frames a client may send beyond the ones the server has handled: the
+     * credit budget split over the connected clients, so each client's window shrinks as the
+     * server gets busier, and no more than the client's rate limit lets through at once, as frames
+     * past that would only wait in the socket buffers. Between `MIN_CREDIT_WINDOW` and
+     * `MAX_CREDIT_WINDOW`.
+     */
+    int creditWindow() {
+        long window = creditBudget / Math.max(1, metrics.getActiveConnections());
+        int burst = admission.getMessageBurst();
+        if (burst > 0) {
+            window = Math.min(window, burst);
+        }
+        return (int) Math.max(MIN_CREDIT_WINDOW, Math.min(MAX_CREDIT_WINDOW, window));
+    }
+
+    /**
+     * Sets from how many recipients on a broadcast is split over the fan-out workers, see
+     * `FanOutEngine`, or `Integer.MAX_VALUE` to serve every broadcast on the sender's thread.
+     * By default `FanOutEngine.DEFAULT_MIN_PARALLEL_RECIPIENTS`.
+     */
+    public void setParallelFanOut(int minRecipients) {
+        fanOutEngine.setMinParallelRecipients(minRecipients);
+    }
+
+    FanOutEngine getFanOutEngine() {
+        return fanOutEngine;
+    }
+
+    /**
+     * Returns the timing wheel that keeps the accepted connections' idle deadlines.
+     */
+    TimingWheel getTimers() {
+        return timers;
+    }
+
+    /**
+     * Makes the server a node of a cluster: it relays messages to the cluster's other nodes and
+     * delivers the messages they relay to its own clients, see `Cluster`. The server's client ids
+     * start with the node's id, so they are unique in the whole cluster. Must be called before
+     * the server is started.
+     */
+    public void setCluster(Cluster cluster) {
+        this.cluster = cluster;
+        clients.setIdBase((long) cluster.getNodeId() << Cluster.NODE_ID_SHIFT);
+    }
+
+    public Cluster getCluster() {
+        return cluster;
+    }
+
+    /**
+     * Adds an encryptor for clients whose public key uses the same algorithm as its own, replacing
+     * any earlier encryptor for that algorithm. Lets e.g. RSA and X25519 clients use one server.
+     */
+    public void addEncryptor(MessageEncryptor encryptor) {
+        encryptors.put(PublicKeys.algorithmOf(encryptor.getPublicKey().getEncoded()), encryptor);
+    }
+
+    /**
+     * Returns the encryptor for client keys of the given algorithm, or null if there is none.
+     */
+    MessageEncryptor getEncryptor(String keyAlgorithm) {
+        return encryptors.get(keyAlgorithm);
+    }
+
+    /**
+     * Sets how broadcasts are encrypted. Should be called before the server is started.
+     */
+    public void setBroadcastMode(BroadcastMode broadcastMode) {
+        this.broadcastMode = broadcastMode;
+    }
+
+    /**
+     * Sets the capacity of each client's outbound queue, and what to do when it is full.
+     * Only applies to clients that connect afterwards.
+     */
+    public void setOutboundQueue(int capacity, OverflowPolicy policy) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Queue capacity must be positive");
+        }
+        this.queueCapacity = capacity;
+        this.overflowPolicy = policy;
+    }
+
+    /**
+     * Sets how outbound frames are coalesced into batches, each written with a single flush or
+     * gathering write. A batch is written once it holds `maxBatchBytes`, or once `maxDelayMicros`
+     * have passed since its first frame was taken off the queue, whichever comes first. With no
+     * delay, the default, a batch holds the frames that were already queued, so bursts are still
+     * coalesced but no frame ever waits for another.
+     *
+     * The delay applies to the writer threads of `Mode.BLOCKING`. In `Mode.NIO` the event loop
+     * writes everything queued since the connection last became writable in one gathering write,
+     * up to `maxBatchBytes` at a time, and never waits.
+     *
+     * Only applies to clients that connect afterwards.
+     */
+    public void setWriteCoalescing(int maxBatchBytes, long maxDelayMicros) {
+        if (maxBatchBytes <= 0 || maxDelayMicros < 0) {
+            throw new IllegalArgumentException("Batch size must be positive and delay non-negative");
+        }
+        this.maxBatchBytes = maxBatchBytes;
+        this.maxBatchDelayNanos = TimeUnit.MICROSECONDS.toNanos(maxDelayMicros);
+    }
+
+    int getMaxBatchBytes() {
+        return maxBatchBytes;
+    }
+
+    long getMaxBatchDelayNanos() {
+        return maxBatchDelayNanos;
+    }
+
+    int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    /**
+     * Returns the server's counters and latency histograms.
+     */
+    public ServerMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Returns a future that completes with the port the server listens on once it accepts
+     * connections, or exceptionally if it fails to start, e.g. because the port is taken.
+     */
+    public CompletableFuture<Integer> whenReady() {
+        return ready;
+    }
+
+    /**
+     * Returns the pool of direct buffers shared by the server's non-blocking connections.
+     */
+    BufferPool getBufferPool() {
+        return bufferPool;
     }
 
     /**
@@ -42,30 +475,143 @@ public class ChatServer {
      * 
      * When started, server runs indefinitely, always listening on `port` socket for
      * accepting clients seeking to connect on said socket. For each client that connects,
-     * a new instance of `ClientHandler` is launched through which the server can interact
+     * a new instance of `ClientHandler` is created through which the server can interact
      * with the client. 
      * 
-     * The server keeps a global thread-safe list, `clients`, to keep track of all connected
-     * clients.
+     * The server keeps a global thread-safe registry, `clients`, to keep track of all connected
+     * clients by their id.
+     * 
+     * The server's metrics are registered as JMX MBeans under `com.chatapp:type=ChatServer,port=<port>`.
+     * 
+     * In a cluster, the node starts listening for and connecting to its peers first.
      */
     public void start() {
+        try {
+            metrics.register(port);
+        } catch (JMException e) {
+            System.err.println("Failed to register metrics MBeans: " + e.getMessage());
+        }
+        if (cluster != null) {
+            try {
+                cluster.start(this);
+            } catch (IOException e) {
+                System.err.println("Failed to start cluster node: " + e.getMessage());
+                ready.completeExceptionally(e);
+                return;
+            }
+        }
+
+        if (mode == Mode.NIO) {
+            startNonBlocking();
+        } else {
+            startBlocking();
+        }
+    }
+
+    /**
+     * Accept loop for `Mode.BLOCKING`: launches a new `SocketConnection` thread per client.
+     */
+    private void startBlocking() {
         try (ServerSocket serverSocket = new ServerSocket(port)) {
             System.out.println("Server started. Waiting for clients...");
+            ready.complete(serverSocket.getLocalPort());
 
             while(true) {
 
-                // Accept each new client, and make a new instance of ClientHandler for each for threading
+                // Accept each new client, once admission control lets us, and make a new connection thread with its own ClientHandler
+                admission.awaitAccept();
                 Socket clientPort = serverSocket.accept();
-                System.out.println("Accepted client: " + clientPort.getInetAddress());
+                logger.fine(() -> "Accepted client: " + clientPort.getInetAddress());
 
-                ClientHandler handler = new ClientHandler(this, encryptor, clientPort);
-                clients.add(handler);
+                SocketConnection connection = new SocketConnection(this, clientPort);
+                addAcceptedClient(connection.getHandler());
 
                 // Launch client thread
-                handler.start();
+                connection.start();
             }
         } catch (IOException e) {
             System.err.println("Server error: " + e.getMessage());
+            ready.completeExceptionally(e); // No-op if it failed after starting
+        } catch (InterruptedException e) {
+            System.err.println("Server interrupted");
+        }
+    }
+
+    /**
+     * Accept loop for `Mode.NIO`: starts one event loop per core and hands accepted channels
+     * to them round-robin. The loops then run the key exchange and message handling for all
+     * of their clients without blocking.
+     */
+    private void startNonBlocking() {
+        int loopCount = Runtime.getRuntime().availableProcessors();
+        List<Thread> loopThreads = new ArrayList<>();
+
+        try (ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+            serverChannel.bind(new InetSocketAddress(port));
+
+            NioEventLoop[] loops = new NioEventLoop[loopCount];
+            for (int i = 0; i < loopCount; i++) {
+                loops[i] = new NioEventLoop(this);
+                Thread thread = new Thread(loops[i], "chat-event-loop-" + i);
+                thread.start();
+                loopThreads.add(thread);
+            }
+            System.out.println("Server started with " + loopCount + " event loops. Waiting for clients...");
+            ready.complete(serverChannel.socket().getLocalPort());
+
+            int next = 0;
+            while (true) {
+                admission.awaitAccept();
+                SocketChannel channel = serverChannel.accept();
+                logger.fine(() -> "Accepted client: " + channel.socket().getInetAddress());
+
+                loops[next].register(channel);
+                next = (next + 1) % loopCount;
+            }
+        } catch (IOException e) {
+            System.err.println("Server error: " + e.getMessage());
+            ready.completeExceptionally(e); // No-op if it failed after starting
+        } catch (InterruptedException e) {
+            System.err.println("Server interrupted");
+        } finally {
+            loopThreads.forEach(Thread::interrupt);
+        }
+    }
+
+    /**
+     * Register a newly connected client.
+     */
+    void addClient(ClientHandler client) {
+        clients.register(client);
+        metrics.connectionOpened();
+    }
+
+    /**
+     * Registers a client the accept loop has just accepted, handing it the handshake slot the
+     * loop took for it, and starts its idle timeout.
+     */
+    void addAcceptedClient(ClientHandler client) {
+        addClient(client);
+        client.admitted();
+    }
+
+    /**
+     * Called by a ClientHandler once its key exchange is complete. In `GROUP_KEY` mode the new
+     * client is sent the current group key, which is rotated shortly after, so it cannot read
+     * earlier broadcasts for long.
+     */
+    void clientReady(ClientHandler client) {
+        client.releaseHandshakeSlot();
+        if (broadcastMode == BroadcastMode.GROUP_KEY) {
+            groupKeys.clientReady(client);
+        }
+        PresenceTracker tracker = presence;
+        if (tracker != null) {
+            tracker.clientReady(client);
+        }
+        MessageLog log = history;
+        if (log != null && scrollback > 0) {
+            replayHistory(client, visitor -> log.replayLast(scrollback, visitor));
         }
     }
 
@@ -73,39 +619,428 @@ public class ChatServer {
      * Broadcast the encrypted message to all clients connected to ChatServer. 
      * 
      * Receives a plaintext string from ClientHandler -- i.e a message sent by a client to the server --
-     * and broadcast() reencrypts the message separately for each client that will recieve it, using their
-     * stored `clientPublicKey` in `ClientHandler`.
+     * and broadcast() reencrypts the message separately for each client that will recieve it, using the
+     * session encryptor stored in their `ClientHandler`.
+     * 
+     * In `GROUP_KEY` mode the message is encrypted once with the current group key instead, and the
+     * same frame is sent to every client that holds a group key.
+     * 
+     * In a cluster the message is first relayed to every other node, so they fan it out to their
+     * clients at the same time as this server does.
      */
     public void broadcast(String plainTextString, ClientHandler sender) throws Exception {
-        for (ClientHandler client : clients) {
-            if (client != sender) { // Prevent echoing back to the sender
+        broadcast(plainTextString.getBytes(StandardCharsets.UTF_8), sender);
+    }
+
+    /**
+     * Broadcasts a message that is already UTF-8 encoded, see `broadcast(String, ClientHandler)`.
+     */
+    void broadcast(byte[] message, ClientHandler sender) throws Exception {
+        Cluster c = cluster;
+        if (c != null) {
+            c.relayBroadcast(message);
+        }
+        appendHistory(message);
+        fanOut(clients, message, FrameType.MESSAGE, FrameType.GROUP_MESSAGE, sender);
+    }
+
+    /**
+     * Delivers a broadcast relayed by another node of the cluster to every client of this server,
+     * and appends it to the history.
+     */
+    void deliverRelayedBroadcast(byte[] message) throws Exception {
+        appendHistory(message);
+        fanOut(clients, message, FrameType.MESSAGE, FrameType.GROUP_MESSAGE, null);
+    }
+
+    /**
+     * Appends a broadcast to the history, if one is kept. A failed append is logged, and does
+     * not stop the broadcast.
+     */
+    private void appendHistory(byte[] message) {
+        MessageLog log = history;
+        if (log == null) {
+            return;
+        }
+        try {
+            log.append(System.currentTimeMillis(), message);
+        } catch (IOException e) {
+            logger.warning(() -> "Failed to append to the message history: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Sends a client the history since the given time, at most `scrollback` messages of it.
+     */
+    void sendHistorySince(ClientHandler client, long sinceMillis) {
+        MessageLog log = history;
+        if (log != null && scrollback > 0) {
+            replayHistory(client, visitor -> log.replaySince(sinceMillis, scrollback, visitor));
+        }
+    }
 
-                // Throw exception for individual fails to avoid crashing server for single send/encryption fails
-                try {
-                    client.sendMessage(encryptor.encrypt(plainTextString, client.getPublicKey()));
-                } catch (IOException e) {
-                    System.err.println("Failed to send to client: " + e.getMessage());
+    /**
+     * Runs a replay of the history, queueing every replayed message for the client as a
+     * `HistoryMessage` encrypted with the client's session. The messages are read from the log
+     * one at a time, and never all held in memory.
+     */
+    private void replayHistory(ClientHandler client, ToIntFunction<MessageLog.Visitor> replay) {
+        long start = System.nanoTime();
+        replay.applyAsInt((sequence, timestamp, message) -> {
+            try {
+                byte[] encoded = HistoryMessage.encode(timestamp, message);
+                client.sendMessage(new Frame(FrameType.HISTORY_MESSAGE, client.encryptChat(encoded)));
+            } catch (Exception e) {
+                logger.warning(() -> "Failed to replay history: " + e.getMessage());
+            }
+        });
+        metrics.replayTime().recordSince(start);
+    }
+
+    /**
+     * Broadcast a message to the members of one room only, see `broadcast`. The room's members
+     * are found with a single index lookup, and no other client is touched. In a cluster the
+     * message is also relayed to the other nodes with members in the room.
+     */
+    public void broadcastToRoom(String room, String plainTextString, ClientHandler sender) throws Exception {
+        broadcastToRoom(room, new RoomMessage(room, plainTextString).encode(), sender);
+    }
+
+    /**
+     * Broadcasts an encoded `RoomMessage` to the members of its room, see `broadcastToRoom`.
+     */
+    void broadcastToRoom(String room, byte[] message, ClientHandler sender) throws Exception {
+        Cluster c = cluster;
+        if (c != null) {
+            c.relayToRoom(room, message);
+        }
+        deliverToRoom(room, message, sender);
+    }
+
+    /**
+     * Delivers an encoded `RoomMessage` to this server's members of the room, but the sender.
+     */
+    void deliverToRoom(String room, byte[] message, ClientHandler sender) throws Exception {
+        Set<ClientHandler> members = rooms.members(room);
+        if (!members.isEmpty()) {
+            fanOut(FanOutEngine.recipients(members), message, FrameType.ROOM_MESSAGE, FrameType.GROUP_ROOM_MESSAGE, sender);
+        }
+    }
+
+    /**
+     * Encrypts and queues a message for every recipient but the sender, per client or once with
+     * the group key depending on the `BroadcastMode`. Broadcasts to many recipients are split over
+     * the fan-out workers, see `FanOutEngine`, and may still be in progress once this returns.
+     */
+    private void fanOut(FanOutEngine.Recipients recipients, byte[] message, FrameType perClientType, FrameType groupType,
+            ClientHandler sender) {
+        if (broadcastMode == BroadcastMode.GROUP_KEY) {
+            broadcastWithGroupKey(recipients, message, groupType, sender);
+        } else {
+            broadcastPerClient(recipients, message, perClientType, sender);
+        }
+    }
+
+    private void broadcastPerClient(FanOutEngine.Recipients recipients, byte[] message, FrameType type, ClientHandler sender) {
+        Shared<byte[]> compressed = new Shared<>(() -> compress(message)); // Compressed once, by the first shard that needs it
+        fanOutEngine.fanOut(recipients, shard -> {
+            ByteBuffer plain = ByteBuffer.wrap(message); // Wrapped once per shard, and encrypted for every client in turn
+            ByteBuffer compressedPlain = null;
+            for (ClientHandler client : shard) {
+                if (client != sender && client.isKeyExchanged()) { // Prevent echoing back to the sender, skip clients mid key exchange
+
+                    // Catch exception for individual fails to avoid crashing server for single send/encryption fails
+                    try {
+                        ByteBuffer payload = plain;
+                        if (client.usesCompression()) {
+                            compressedPlain = compressedPlain != null ? compressedPlain : ByteBuffer.wrap(compressed.get());
+                            payload = compressedPlain;
+                        }
+                        client.sendMessage(client.encryptFrame(type, payload));
+                    } catch (Exception e) {
+                        logger.warning(() -> "Failed to send to client: " + e.getMessage());
+                    }
                 }
             }
+        });
+    }
+
+    private void broadcastWithGroupKey(FanOutEngine.Recipients recipients, byte[] message, FrameType type, ClientHandler sender) {
+        GroupKey key = groupKeys.current();
+        if (key == null) {
+            return; // No client has completed the key exchange yet
+        }
+
+        // Encrypt once, send the same frame (and its encoded bytes) to everyone. Clients with
+        // compression get a second frame, also encrypted once, built when the first one needs it.
+        Shared<Frame> frame = new Shared<>(() -> Frame.withEpoch(type, key.getEpoch(), key.encrypt(message)));
+        Shared<Frame> compressedFrame = new Shared<>(() -> Frame.withEpoch(type, key.getEpoch(), key.encrypt(compress(message))));
+        fanOutEngine.fanOut(recipients, shard -> {
+            for (ClientHandler client : shard) {
+                if (client != sender && client.hasGroupKey()) {
+
+                    // Per client, like broadcastPerClient, so one failure does not skip the rest of the shard
+                    try {
+                        client.sendMessage(client.usesCompression() ? compressedFrame.get() : frame.get());
+                    } catch (Exception e) {
+                        logger.warning(() -> "Failed to send group broadcast to client: " + e.getMessage());
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * A value computed on first use, once, by whichever fan-out shard needs it first.
+     */
+    private static final class Shared<T> {
+        private final Callable<T> computation;
+        private volatile T value;
+
+        Shared(Callable<T> computation) {
+            this.computation = computation;
+        }
+
+        T get() throws Exception {
+            T result = value;
+            if (result == null) {
+                synchronized (this) {
+                    result = value;
+                    if (result == null) {
+                        result = computation.call();
+                        value = result;
+                    }
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Compresses an outgoing chat message for clients that negotiated compression, see
+     * `PayloadCompressor`, and counts it in the metrics.
+     */
+    byte[] compress(byte[] message) {
+        long start = System.nanoTime();
+        byte[] compressed = compressor.compress(message);
+        metrics.compressTime().recordSince(start);
+        metrics.messageCompressed(message.length, compressed.length);
+        return compressed;
+    }
+
+    /**
+     * Returns a new, unique id for a connecting client.
+     */
+    long nextClientId() {
+        return clients.nextId();
+    }
+
+    /**
+     * Returns the number of connected clients.
+     */
+    public int getClientCount() {
+        return clients.size();
+    }
+
+    /**
+     * Sends a direct message to the client with the given id, encrypted with that client's
+     * session only. The recipient is found by id, without looking at any other client. In a
+     * cluster, a recipient on another node is sent the message through that node.
+     *
+     * @return true if the message was queued for the recipient, or for the recipient's node
+     */
+    public boolean sendDirect(long recipientId, String plainTextString, ClientHandler sender) {
+        if (recipientId == sender.getId()) {
+            return false;
+        }
+        byte[] message = new DirectMessage(sender.getId(), plainTextString).encode();
+        Cluster c = cluster;
+        if (c != null && Cluster.nodeOf(recipientId) != c.getNodeId()) {
+            return c.relayDirect(recipientId, message);
+        }
+        return deliverDirect(recipientId, message);
+    }
+
+    /**
+     * Queues an encoded `DirectMessage` for a client of this server.
+     *
+     * @return true if the message was queued for the recipient
+     */
+    boolean deliverDirect(long recipientId, byte[] message) {
+        ClientHandler recipient = clients.get(recipientId);
+        if (recipient == null || !recipient.isKeyExchanged()) {
+            return false;
+        }
+        try {
+            recipient.sendMessage(recipient.encryptChatFrame(FrameType.DIRECT_MESSAGE, message));
+            return true;
+        } catch (Exception e) {
+            logger.warning(() -> "Failed to send direct message: " + e.getMessage());
+            return false;
         }
     }
 
+    /**
+     * Adds a client to a room. A client can be in at most `MAX_ROOMS_PER_CLIENT` rooms.
+     *
+     * @return true if the client is in the room afterwards
+     */
+    boolean joinRoom(String room, ClientHandler client) {
+        if (!client.addRoom(room)) {
+            return client.isInRoom(room);
+        }
+        if (rooms.join(room, client) && cluster != null) {
+            cluster.roomMembershipChanged(room);
+        }
+        return true;
+    }
+
+    /**
+     * Removes a client from a room.
+     */
+    void leaveRoom(String room, ClientHandler client) {
+        if (client.removeRoom(room) && rooms.leave(room, client) && cluster != null) {
+            cluster.roomMembershipChanged(room);
+        }
+    }
+
+    /**
+     * Sets the status a client shows in the list of clients online.
+     */
+    void statusChanged(ClientHandler client, String status) {
+        PresenceTracker tracker = presence;
+        if (tracker != null) {
+            tracker.statusChanged(client, status);
+        }
+    }
+
+    /**
+     * Returns true if any client of this server is in the room.
+     */
+    boolean hasRoomMembers(String room) {
+        return !rooms.members(room).isEmpty();
+    }
+
+    /**
+     * Returns a live view of the rooms that have members on this server.
+     */
+    Set<String> getRooms() {
+        return rooms.names();
+    }
+
+    /**
+     * Returns the number of rooms that currently have members.
+     */
+    public int getRoomCount() {
+        return rooms.roomCount();
+    }
+
+    /**
+     * Returns the number of clients in a room.
+     */
+    public int getRoomSize(String room) {
+        return rooms.members(room).size();
+    }
+
     /**
      * Disconnect client.
      * 
+     * In `GROUP_KEY` mode the group key is rotated shortly after, so the client cannot read later
+     * broadcasts for long.
+     * 
      * @param client client to be disconnected.
      * @return       client that was removed.
      */
     public ClientHandler removeClient(ClientHandler client) {
-        clients.remove(client);
+        client.releaseHandshakeSlot();
+        if (!clients.unregister(client)) {
+            return client;
+        }
+        metrics.connectionClosed();
+        for (String room : client.getRooms()) {
+            leaveRoom(room, client);
+        }
+        PresenceTracker tracker = presence;
+        if (tracker != null) {
+            tracker.clientLeft(client);
+        }
+        if (broadcastMode == BroadcastMode.GROUP_KEY && client.isKeyExchanged()) {
+            groupKeys.clientLeft();
+        }
         return client;
     }
 
+    /**
+     * Returns a snapshot of every connected client's outbound queue.
+     */
+    public List<ClientQueueStats> getQueueStats() {
+        List<ClientQueueStats> stats = new ArrayList<>();
+        for (ClientHandler client : clients) {
+            stats.add(client.getQueueStats());
+        }
+        return stats;
+    }
+
+    /**
+     * Returns the total number of messages dropped because a client's queue was full.
+     */
+    public long getDroppedMessages() {
+        return metrics.getDroppedMessages();
+    }
+
+    /**
+     * Returns the number of clients disconnected by `OverflowPolicy.DISCONNECT`.
+     */
+    public long getSlowConsumerDisconnects() {
+        return metrics.getSlowConsumerDisconnects();
+    }
+
+    void messageDropped() {
+        metrics.messageDropped();
+    }
+
+    void slowConsumerDisconnected() {
+        metrics.slowConsumerDisconnected();
+    }
+
+    /**
+     * Starts a server on port 12345, accepting both RSA and X25519 clients, that keeps its history
+     * in `./history` and its key pairs in `./keys`, so a restarted server keeps its keys. Pass `nio`
+     * as the first argument to use the non-blocking mode, and `group_key` as the second to encrypt
+     * broadcasts once with a shared group key.
+     * 
+     * A third argument sets the port, and the ones after it make the server a cluster node: its own
+     * `<id>@<link port>` and every peer as `<id>@<host>:<link port>`, e.g.
+     * `nio per_client 12346 1@13001 2@localhost:13002 3@localhost:13003`. The cluster's secret is
+     * read from the `CHATAPP_CLUSTER_SECRET` environment variable, and the history is kept in
+     * `./history/node-<id>`.
+     */
     public static void main(String[] args) throws Exception {
-        MessageEncryptor encryptor = new SecureMessenger(); 
-        ChatServer server = new ChatServer(12345, encryptor); // Listens on port 12345
+        Mode mode = args.length > 0 ? Mode.valueOf(args[0].toUpperCase()) : Mode.BLOCKING;
+        int port = args.length > 2 ? Integer.parseInt(args[2]) : 12345;
+        Path keyDirectory = Path.of("keys"); // Keys are only generated if there are none here yet
+        MessageEncryptor encryptor = new HybridMessenger(new SecureMessenger(KeyFiles.loadOrCreate(keyDirectory.resolve("server-rsa.pem"), KeyPairPool.rsa()::take)));
+        ChatServer server = new ChatServer(port, encryptor, mode); // Listens on port 12345 by default
+        server.addEncryptor(new X25519Messenger(KeyFiles.loadOrCreate(keyDirectory.resolve("server-x25519.pem"), X25519Messenger::generateKeyPair)));
+        if (args.length > 1) {
+            server.setBroadcastMode(BroadcastMode.valueOf(args[1].toUpperCase()));
+        }
+
+        Path historyDirectory = Path.of("history"); // Kept in ./history
+        if (args.length > 3) {
+            String secret = System.getenv("CHATAPP_CLUSTER_SECRET");
+            if (secret == null || secret.isEmpty()) {
+                throw new IllegalStateException("Set CHATAPP_CLUSTER_SECRET to the secret shared by the cluster's nodes");
+            }
+            String[] self = args[3].split("@");
+            Cluster cluster = new Cluster(Integer.parseInt(self[0]), Integer.parseInt(self[1]), secret.getBytes(StandardCharsets.UTF_8));
+            for (int i = 4; i < args.length; i++) {
+                cluster.addPeer(args[i]);
+            }
+            server.setCluster(cluster);
+            historyDirectory = historyDirectory.resolve("node-" + cluster.getNodeId());
+        }
+        server.setHistory(new MessageLog(historyDirectory), DEFAULT_SCROLLBACK);
         server.start();
     }
-}
-
-// TODO Add a specific and global port other than 12345 (in main)
\ No newline at end of file
+}
\ No newline at end of file
@@ -1,40 +1,102 @@
 package com.chatapp.server;
 
-import java.io.*;
-import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.security.GeneralSecurityException;
-import java.security.KeyFactory;
 import java.security.PublicKey;
-import java.security.spec.X509EncodedKeySpec;
-import java.util.Base64;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import com.chatapp.cryptography.*;
+import com.chatapp.metrics.*;
+import com.chatapp.protocol.*;
 
 /**
  * ClientHandler handles interaction with each client connected to ChatServer. It handles each
- * client separately, using threading to remain responsive to all. 
- * 
- * ClientHandler also handles the public key exchange with the clients, and partly sends the server's public 
+ * client separately, and is driven by the `Connection` the client is attached to: a dedicated
+ * thread in blocking mode, or one of the server's event loops in non-blocking mode.
+ *
+ * ClientHandler also handles the public key exchange with the clients, and partly sends the server's public
  * key to the client, partly recieves the client's key. Encryption on the client's behalf is made using the
- * server key, so only the server can read it. 
- * 
+ * server key, so only the server can read it.
+ *
+ * Client and server talk in binary `Frame`s. The key exchange also settles which protocol version
+ * both sides use, and which of the server's encryptors serves the client, by the algorithm of the
+ * key in the client's HELLO, and which optional features, such as compression, are used.
+ *
+ * A client with a session ticket from an earlier connection may resume its session instead of
+ * repeating the key exchange, see `resume`.
+ *
+ * Messages for the client are never written on the sending thread, but put in the handler's
+ * bounded `OutboundQueue`, see `sendMessage`.
+ *
+ * Every frame the client sends after the key exchange is charged to its rate limit, see `charge`,
+ * before it is decrypted, so a client that floods the server waits for its own budget to refill
+ * instead of taking the CPU from everyone else.
+ *
+ * With flow control, the client is granted credit for the frames the server has handled, see
+ * `grantCredit`.
+ *
+ * A client that has sent nothing, not even a heartbeat, for the server's idle timeout is
+ * disconnected, and one that has been sent nothing for a while is sent a HEARTBEAT, see `checkIdle`.
+ *
+ * Received messages and key exchanges are counted and timed in the server's `ServerMetrics`, and
+ * only logged at FINE level, sampled, so a busy server does not spend its time printing them.
+ *
  * @author Leonard Smedberg
- * @version 2025-04-27
+ * @version 2026-10-17
  */
-class ClientHandler extends Thread {
-    private final Socket socket;    
-    private BufferedReader in;      // Reader for client socket input stream
-    private PrintWriter out;        // Writer for client socket output stream
+class ClientHandler {
+    private static final SampledLogger LOG = new SampledLogger(ClientHandler.class.getName(), 100);
+    private static final Frame HEARTBEAT = new Frame(FrameType.HEARTBEAT);
+    private static final ThreadLocal<ByteBuffer> PLAIN_TEXT = new ThreadLocal<>(); // Event loop scratch, see decryptChat
+
+    private final Connection connection;
 
-    private final MessageEncryptor encryptor;
     private final ChatServer server;
+    private final OutboundQueue<Frame> outbound;
+    private final long id;                    // Unique id given by the server
 
     private PublicKey clientPublicKey = null; // Init as null
+    private boolean keyExchanged = false;     // Set once the client's HELLO, or a valid RESUME, has been read
+    private boolean resumeAttempted = false;  // Only one RESUME is allowed before the HELLO
+    private int protocolVersion = 0;          // Negotiated in the key exchange
+    private volatile MessageEncryptor session = null; // Per-connection encryptor, set once the key exchange is done
+    private volatile boolean hasGroupKey = false;     // Set once the client has been sent a group key
+    private volatile boolean compression = false;     // Chat messages are compressed, negotiated in the key exchange
+    private volatile boolean receivesPresence = false; // Set once the client has been sent a presence snapshot
+    private volatile boolean flowControl = false;     // The client is granted credit, negotiated in the key exchange
+    private long framesHandled = 0;                   // Credited frames handled so far, connection's reader only
+    private long framesAcknowledged = 0;              // Count in the last CREDIT sent, reader only
+    private int creditWindow = 0;                     // Window in the last CREDIT sent, reader only
+    private final Set<String> rooms = ConcurrentHashMap.newKeySet(); // Rooms the client has joined
+    private final AdmissionControl.ClientLimit limit; // Used by the connection's reader only
+    private final AtomicBoolean holdsHandshakeSlot = new AtomicBoolean();
+    private final long connectedAt = System.nanoTime();
+    private volatile long lastRead = connectedAt;     // When the client last sent a frame
+    private volatile long lastWrite = connectedAt;    // When a frame for the client was last queued
+    private final TimingWheel.Timeout idleTimeout = new TimingWheel.Timeout() {
+        @Override
+        void expired(long now) {
+            checkIdle(now);
+        }
+    };
 
-    public ClientHandler(ChatServer server, MessageEncryptor encryptor, Socket socket) {
+    public ClientHandler(ChatServer server, Connection connection) {
         this.server = server;
-        this.encryptor = encryptor;
-        this.socket = socket;
+        this.connection = connection;
+        this.outbound = new OutboundQueue<>(server.getQueueCapacity(), server.getOverflowPolicy());
+        this.id = server.nextClientId();
+        this.limit = server.getAdmissionControl().newClientLimit();
+    }
+
+    /**
+     * Returns the client's id, unique on this server.
+     */
+    public long getId() {
+        return id;
     }
 
     public PublicKey getPublicKey() {
@@ -42,100 +104,695 @@ class ClientHandler extends Thread {
     }
 
     /**
-     * Runs the thread for a single client. This is run when the server runs `<Client>.start()`.
-     * 
-     * Reads and writes to clients. First message it reads is the public key from the client;
-     * the first message it writes is the server's public key to the client. 
-     * 
+     * Returns true once the key exchange has completed and messages can be sent to the client.
+     */
+    public boolean isKeyExchanged() {
+        return session != null;
+    }
+
+    /**
+     * Returns true once the client has been sent a group key and can read group broadcasts.
+     */
+    public boolean hasGroupKey() {
+        return hasGroupKey;
+    }
+
+    /**
+     * Encrypts a chat message for this client with the connection's session encryptor.
+     */
+    public byte[] encrypt(String plainText) throws Exception {
+        return encrypt(plainText.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Encrypts an encoded message for this client with the connection's session encryptor.
+     */
+    public byte[] encrypt(byte[] message) throws Exception {
+        return session.encrypt(message, clientPublicKey);
+    }
+
+    /**
+     * Encrypts a chat message for this client, compressed first if the client negotiated compression.
+     */
+    public byte[] encryptChat(byte[] message) throws Exception {
+        return encrypt(compression ? server.compress(message) : message);
+    }
+
+    /**
+     * Encrypts a message for this client into a frame of the given type.
+     *
+     * If the connection takes pooled frames, see `Connection.bufferPool()`, and the session can
+     * encrypt into a buffer, the frame header is written to a pooled direct buffer and the message
+     * is encrypted straight in after it, so neither the ciphertext nor the encoded frame is
+     * allocated or copied. The buffer goes back to the pool once the frame has been written.
+     * Otherwise the ciphertext is a new array. The message buffer's position is left as it was,
+     * so one buffer can be encrypted for many clients in turn.
+     */
+    Frame encryptFrame(FrameType type, ByteBuffer message) throws Exception {
+        MessageEncryptor encryptor = session;
+        BufferPool pool = connection.bufferPool();
+        int length = pool != null ? encryptor.encryptedLength(message.remaining()) : -1;
+        if (length < 0 || Frame.HEADER_LENGTH + length > BufferPool.MAX_SIZE) {
+            byte[] plainText = new byte[message.remaining()];
+            message.get(message.position(), plainText);
+            return new Frame(type, encryptor.encrypt(plainText, clientPublicKey));
+        }
+
+        ByteBuffer buffer = pool.acquire(Frame.HEADER_LENGTH + length);
+        buffer.putInt(length).put(type.getCode());
+        int start = message.position();
+        try {
+            encryptor.encrypt(message, buffer);
+        } finally {
+            message.position(start);
+        }
+        return Frame.wrapEncoded(type, buffer.flip(), pool.recycler);
+    }
+
+    /**
+     * Encrypts a chat message for this client into a frame, see `encryptFrame`, compressed first
+     * if the client negotiated compression.
+     */
+    Frame encryptChatFrame(FrameType type, byte[] message) throws Exception {
+        return encryptFrame(type, ByteBuffer.wrap(compression ? server.compress(message) : message));
+    }
+
+    /**
+     * Returns true if chat messages to and from the client are compressed, see `PayloadCompressor`.
+     */
+    boolean usesCompression() {
+        return compression;
+    }
+
+    /**
+     * Decrypts a chat message from the client, and decompresses it if the client negotiated compression.
+     *
+     * On an event loop, see `Connection.bufferPool()`, a compressed message is decrypted into the
+     * thread's scratch buffer and decompressed straight from it, so the only array allocated is the
+     * message itself, as for an uncompressed one. The scratch buffer is a heap buffer: the cipher
+     * copies its output through a temporary array when decrypting into a direct one.
+     */
+    private byte[] decryptChat(byte[] encryptedMessage) throws Exception {
+        MessageEncryptor encryptor = session;
+        if (!compression) {
+            return encryptor.decrypt(encryptedMessage);
+        }
+        int length = connection.bufferPool() != null ? encryptor.decryptedLength(encryptedMessage.length) : -1;
+        ByteBuffer plainText;
+        if (length < 0 || length > BufferPool.MAX_SIZE) {
+            plainText = ByteBuffer.wrap(encryptor.decrypt(encryptedMessage));
+        } else {
+            plainText = plainTextBuffer(length);
+            encryptor.decrypt(ByteBuffer.wrap(encryptedMessage), plainText);
+            plainText.flip();
+        }
+        long start = System.nanoTime();
+        byte[] message = PayloadCompressor.decompress(plainText);
+        server.getMetrics().decompressTime().recordSince(start);
+        return message;
+    }
+
+    /**
+     * Returns the calling thread's scratch buffer for decrypted messages, cleared and limited to
+     * `length` bytes, grown first if it is smaller.
+     */
+    private static ByteBuffer plainTextBuffer(int length) {
+        ByteBuffer buffer = PLAIN_TEXT.get();
+        if (buffer == null || buffer.capacity() < length) {
+            buffer = ByteBuffer.allocate(Math.max(length, BufferPool.MIN_SIZE));
+            PLAIN_TEXT.set(buffer);
+        }
+        return buffer.clear().limit(length);
+    }
+
+    /**
+     * Returns the features both sides will use, out of the ones the client asked for.
+     */
+    private int negotiateFeatures(int requested) {
+        int features = server.getCompressor() != null ? requested & FrameCodec.FEATURE_COMPRESSION : 0;
+        if (server.getCreditBudget() > 0) {
+            features |= requested & FrameCodec.FEATURE_FLOW_CONTROL;
+        }
+        compression = (features & FrameCodec.FEATURE_COMPRESSION) != 0;
+        flowControl = (features & FrameCodec.FEATURE_FLOW_CONTROL) != 0;
+        return features;
+    }
+
+    /**
+     * Returns the rooms the client is in.
+     */
+    Set<String> getRooms() {
+        return Collections.unmodifiableSet(rooms);
+    }
+
+    boolean isInRoom(String room) {
+        return rooms.contains(room);
+    }
+
+    /**
+     * Records that the client joined a room.
+     *
+     * @return false if the client already was in the room, or is in too many rooms
+     */
+    boolean addRoom(String room) {
+        synchronized (rooms) {
+            return rooms.size() < ChatServer.MAX_ROOMS_PER_CLIENT && rooms.add(room);
+        }
+    }
+
+    /**
+     * Records that the client left a room.
+     *
+     * @return false if the client was not in the room
+     */
+    boolean removeRoom(String room) {
+        return rooms.remove(room);
+    }
+
+    /**
+     * Returns the queue of frames waiting to be written to the client.
+     */
+    OutboundQueue<Frame> outbound() {
+        return outbound;
+    }
+
+    /**
+     * Returns a snapshot of the client's outbound queue.
+     */
+    ClientQueueStats getQueueStats() {
+        return new ClientQueueStats(connection.getRemoteAddress(), outbound.depth(), outbound.capacity(), outbound.droppedCount());
+    }
+
+    /**
+     * Sends a group key to the client, encrypted with the connection's session encryptor.
+     */
+    public void sendGroupKey(GroupKey groupKey) throws Exception {
+        byte[] encryptedKey = session.encrypt(groupKey.getEncodedKey(), clientPublicKey);
+        sendControl(Frame.withEpoch(FrameType.GROUP_KEY, groupKey.getEpoch(), encryptedKey));
+        hasGroupKey = true;
+    }
+
+    /**
+     * Returns true once the client has been sent a presence snapshot, and is listed as online.
+     */
+    boolean receivesPresence() {
+        return receivesPresence;
+    }
+
+    void setReceivesPresence(boolean receivesPresence) {
+        this.receivesPresence = receivesPresence;
+    }
+
+    /**
+     * Sends an encoded `PresenceUpdate` to the client, encrypted with the connection's session
+     * encryptor. Presence updates are control frames, and never dropped.
+     */
+    void sendPresence(byte[] update) {
+        try {
+            sendControl(new Frame(FrameType.PRESENCE, encrypt(update)));
+        } catch (Exception e) {
+            LOG.warning(() -> "Failed to send presence: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Charges a frame the client sent to its rate limit. Frames of the key exchange and
+     * heartbeats are free, the key exchange is limited by the handshake slots instead.
+     *
+     * @return nanoseconds the connection should stop reading for before it handles the frame, 0
+     *         if the client is within its limit
+     */
+    long charge(Frame frame) {
+        if (!keyExchanged || frame.getType() == FrameType.HEARTBEAT) {
+            return 0;
+        }
+        return limit.charge(frame.getEncodedLength());
+    }
+
+    /**
+     * Returns how long the connection should stop reading for before it handles a frame that
+     * broadcasts, while the server's fan-out workers are backlogged, see `FanOutEngine`. Unlike
+     * `charge`, it is asked again once the wait is over.
+     */
+    long backlogWait(Frame frame) {
+        boolean broadcasts = frame.getType() == FrameType.MESSAGE || frame.getType() == FrameType.ROOM_MESSAGE;
+        return keyExchanged && broadcasts && server.getFanOutEngine().isBacklogged() ? FanOutEngine.BACKLOG_WAIT_NANOS : 0;
+    }
+
+    /**
+     * Takes over the handshake slot the accept loop took for this client, which is given back
+     * once the session is ready or the client disconnects, and starts the client's idle timeout,
+     * which also closes the connection if the session is not ready within the handshake timeout.
+     */
+    void admitted() {
+        holdsHandshakeSlot.set(true);
+        server.getTimers().schedule(idleTimeout, connectedAt + server.getAdmissionControl().getHandshakeTimeoutNanos());
+    }
+
+    /**
+     * Gives back the client's handshake slot, if it still holds one.
+     */
+    void releaseHandshakeSlot() {
+        if (holdsHandshakeSlot.compareAndSet(true, false)) {
+            server.getAdmissionControl().releaseHandshakeSlot();
+        }
+    }
+
+    /**
+     * Checks the client's deadlines once its idle timeout fires, on the timing wheel's thread.
+     *
+     * Closes the connection if the session is still not ready after the handshake timeout, or if
+     * nothing has been read from the client for the idle timeout. Queues a heartbeat if nothing has
+     * been queued for the client for the heartbeat interval. Then schedules the timeout again for
+     * the earliest deadline left, which activity in the meantime may have moved on, so reads and
+     * writes themselves never touch the wheel.
+     */
+    private void checkIdle(long now) {
+        if (!connection.isOpen()) {
+            return;
+        }
+        ServerMetrics metrics = server.getMetrics();
+        boolean ready = session != null;
+        long handshakeDeadline = connectedAt + server.getAdmissionControl().getHandshakeTimeoutNanos();
+        if (!ready && now - handshakeDeadline >= 0) {
+            metrics.handshakeTimedOut();
+            LOG.fine(() -> "Handshake timed out: " + connection.getRemoteAddress());
+            connection.close();
+            return;
+        }
+        long readDeadline = lastRead + server.getIdleTimeoutNanos();
+        if (now - readDeadline >= 0) {
+            metrics.idleDisconnected();
+            LOG.warning(() -> "Disconnecting idle client: " + connection.getRemoteAddress());
+            connection.close();
+            return;
+        }
+
+        long next = readDeadline;
+        if (ready) {
+            long heartbeatDue = lastWrite + server.getHeartbeatIntervalNanos();
+            if (now - heartbeatDue >= 0) {
+                sendControl(HEARTBEAT);
+                metrics.heartbeatSent();
+                heartbeatDue = now + server.getHeartbeatIntervalNanos();
+            }
+            next = heartbeatDue - next < 0 ? heartbeatDue : next;
+        } else {
+            next = handshakeDeadline - next < 0 ? handshakeDeadline : next;
+        }
+        server.getTimers().schedule(idleTimeout, next);
+    }
+
+    /**
+     * Handles a single frame read from the client.
+     *
+     * First frame it reads is the HELLO with the public key from the client, which is answered
+     * with the server's HELLO, or a RESUME with a session ticket. Every MESSAGE frame after that is
+     * an encrypted chat message.
+     *
      * As the client first sends its own public key, and then awaits that of the server, the server
      * instead first receives the client's key and then sends its own to the client, which makes
      * the process fan out properly in the end.
      */
-    @Override
-    public void run() {
-        try {
-            in = new BufferedReader(new InputStreamReader(socket.getInputStream()));  // Define client socket input stream as a reader
-            out = new PrintWriter(socket.getOutputStream(), true);                    // Define client socket output stream as a writer
+    void handleFrame(Frame frame) {
+        lastRead = System.nanoTime();
+        if (!keyExchanged) {
+            if (frame.getType() == FrameType.RESUME && !resumeAttempted) {
+                resumeAttempted = true;
+                keyExchanged = resume(frame);
+                return;
+            }
+            keyExchanged = true;
+            if (frame.getType() != FrameType.HELLO) {
+                System.err.println("Expected HELLO, got " + frame.getType());
+                connection.close();
+                return;
+            }
+            exchangeKeys(frame);
+            return;
+        }
 
-            /**
-             * Client/server encryption key exchange
-             */
+        boolean credited = flowControl && frame.getType() != FrameType.HEARTBEAT;
+        if (credited) {
+            framesHandled++;
+        }
+
+        switch (frame.getType()) {
+            case MESSAGE:
+                handleMessage(frame.getPayload());
+                break;
+            case ROOM_MESSAGE:
+                handleRoomMessage(frame.getPayload());
+                break;
+            case DIRECT_MESSAGE:
+                handleDirectMessage(frame.getPayload());
+                break;
+            case HISTORY:
+                handleHistoryRequest(frame.getPayload());
+                break;
+            case PRESENCE:
+                handleStatus(frame.getPayload());
+                break;
+            case JOIN:
+            case LEAVE:
+                handleRoomCommand(frame.getType(), frame.getPayload());
+                break;
+            case HEARTBEAT:
+                break; // Keep-alive only, already counted as read
+            default:
+                System.err.println("Unexpected frame from client: " + frame);
+                break;
+        }
 
-            // Read the client's public encryption key
-            String clientKeyBase64 = in.readLine(); // Read from client socket input stream
-            byte[] keyBytes = Base64.getDecoder().decode(clientKeyBase64);
+        if (credited && framesHandled - framesAcknowledged >= Math.max(1, creditWindow / 2)) {
+            grantCredit();
+        }
+    }
 
-            // Turn fetched key bytes into a usable public key
-            try {
-                KeyFactory factory = KeyFactory.getInstance("RSA");
-                X509EncodedKeySpec spec = new X509EncodedKeySpec(keyBytes);
+    /**
+     * Acknowledges the frames handled so far and grants the client a new window past them, sized
+     * to the server's current load, see `ChatServer.creditWindow`. A smaller window than before
+     * takes effect as the client uses up what it was already granted, which is never taken back.
+     *
+     * Called once the client has used half of its window. Frames only count as handled once the
+     * rate limit let them through, so a client that is being slowed down runs out of credit and
+     * waits instead of filling the socket buffers. Frames sent past the credit cost nothing more
+     * than any other frames the server is not reading yet.
+     */
+    private void grantCredit() {
+        creditWindow = server.creditWindow();
+        framesAcknowledged = framesHandled;
+        sendControl(Frame.credit(framesHandled, creditWindow));
+        server.getMetrics().creditGranted();
+    }
 
-                // Save client key for re-encryption purposes
-                clientPublicKey = factory.generatePublic(spec); 
+    /**
+     * Handle incoming messages from clients
+     */
+    private void handleMessage(byte[] encryptedMessage) {
+        if (session == null) {
+            return; // Key exchange failed, the connection is closing
+        }
+        try {
+            long start = System.nanoTime();
+            byte[] plainText = decryptChat(encryptedMessage);
+            server.getMetrics().decryptTime().recordSince(start);
+            server.getMetrics().messageReceived();
+            LOG.fine(() -> "Received: " + new String(plainText, StandardCharsets.UTF_8));
 
-            } catch (GeneralSecurityException e) {
-                System.err.println("Key construction failed: " + e.getMessage());
-            }
+            // Broadcast the by the client sent message to the server as **plaintext**, still UTF-8
+            // encoded. Re-encryption takes place in the ChatServer class
+            server.broadcast(plainText, this);
 
-            System.out.println("Server: Client public key received.");
-            System.out.println("Sending server public key...");
+        } catch (Exception e) {
+            LOG.warning(() -> "Decryption failed: " + e.getMessage());
+        }
+    }
 
-            // Forge and broadcast server public key to client socket output stream
-            String serverKeyBase64 = Base64.getEncoder().encodeToString(encryptor.getPublicKey().getEncoded());
-            out.println(serverKeyBase64);
+    /**
+     * Handle a message to one of the client's rooms. Messages to rooms the client is not in are
+     * dropped.
+     */
+    private void handleRoomMessage(byte[] encryptedMessage) {
+        if (session == null) {
+            return;
+        }
+        try {
+            long start = System.nanoTime();
+            byte[] message = decryptChat(encryptedMessage);
+            String room = RoomMessage.decodeRoom(message); // The message is passed on as it is
+            server.getMetrics().decryptTime().recordSince(start);
+            server.getMetrics().messageReceived();
 
-            // Cancel process and close connection upon any error in key generation
-            if (clientPublicKey == null) {
+            if (!rooms.contains(room)) {
+                LOG.fine(() -> "Dropped message to room " + room + " the client is not in");
                 return;
             }
+            server.broadcastToRoom(room, message, this);
 
-            /**
-             * Handle incoming messages from clients
-             */
+        } catch (Exception e) {
+            LOG.warning(() -> "Decryption failed: " + e.getMessage());
+        }
+    }
 
-            String encryptedMessage;
+    /**
+     * Handle a direct message to another client, routed by the recipient's id.
+     */
+    private void handleDirectMessage(byte[] encryptedMessage) {
+        if (session == null) {
+            return;
+        }
+        try {
+            long start = System.nanoTime();
+            DirectMessage message = DirectMessage.decode(decryptChat(encryptedMessage));
+            server.getMetrics().decryptTime().recordSince(start);
+            server.getMetrics().messageReceived();
 
-            while ((encryptedMessage = in.readLine()) != null) {
-                try {
-                    String plainText = encryptor.decrypt(encryptedMessage);
-                    System.out.println("Received: " + plainText);
+            if (!server.sendDirect(message.getPeerId(), message.getText(), this)) {
+                LOG.fine(() -> "Dropped direct message to unknown client " + message.getPeerId());
+            }
+        } catch (Exception e) {
+            LOG.warning(() -> "Decryption failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Handle a request for the chat history since a time, whose payload is the encrypted timestamp.
+     */
+    private void handleHistoryRequest(byte[] encryptedTimestamp) {
+        if (session == null) {
+            return;
+        }
+        try {
+            byte[] timestamp = session.decrypt(encryptedTimestamp);
+            if (timestamp.length != Long.BYTES) {
+                LOG.fine(() -> "Malformed history request from " + connection.getRemoteAddress());
+                return;
+            }
+            server.sendHistorySince(this, ByteBuffer.wrap(timestamp).getLong());
+        } catch (Exception e) {
+            LOG.warning(() -> "Decryption failed: " + e.getMessage());
+        }
+    }
 
-                    // Broadcast the by the client sent message to the server as **plaintext**
-                    // Re-encryption takes place in the ChatServer class
-                    server.broadcast(plainText, this);
+    /**
+     * Handle a status change, whose payload is the encrypted status text.
+     */
+    private void handleStatus(byte[] encryptedStatus) {
+        if (session == null) {
+            return;
+        }
+        try {
+            server.statusChanged(this, new String(session.decrypt(encryptedStatus), StandardCharsets.UTF_8));
+        } catch (Exception e) {
+            LOG.warning(() -> "Decryption failed: " + e.getMessage());
+        }
+    }
 
-                } catch (Exception e) {
-                    System.err.println("Decryption failed: " + e.getMessage());
-                }
+    /**
+     * Handle a JOIN or LEAVE command, whose payload is the encrypted room name.
+     */
+    private void handleRoomCommand(FrameType command, byte[] encryptedRoom) {
+        if (session == null) {
+            return;
+        }
+        try {
+            String room = new String(session.decrypt(encryptedRoom), StandardCharsets.UTF_8);
+            if (!RoomMessage.isValidRoom(room)) {
+                LOG.fine(() -> "Invalid room name from " + connection.getRemoteAddress());
+            } else if (command == FrameType.JOIN) {
+                server.joinRoom(room, this);
+            } else {
+                server.leaveRoom(room, this);
             }
+        } catch (Exception e) {
+            LOG.warning(() -> "Decryption failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Client/server encryption key exchange
+     *
+     * The server answers with the protocol version both sides will use, which is the highest
+     * version both speak, and the public key of the server encryptor for the client key's algorithm.
+     * If the encryptor uses session keys, the server finishes the exchange by sending the client its
+     * session key material, e.g. a session key wrapped with the client's public key.
+     */
+    private void exchangeKeys(Frame hello) {
+        long start = System.nanoTime();
+        protocolVersion = FrameCodec.negotiateVersion(hello.getVersion());
+        if (protocolVersion < 0) {
+            System.err.println("Unsupported protocol version: " + hello.getVersion());
+            connection.close();
+            return;
+        }
+
+        // Pick the encryptor matching the client's key, RSA or X25519
+        String algorithm = PublicKeys.algorithmOf(hello.getPublicKey());
+        MessageEncryptor encryptor = server.getEncryptor(algorithm);
+        if (encryptor == null) {
+            System.err.println("Unsupported key algorithm: " + algorithm);
+            connection.close();
+            return;
+        }
+
+        // Turn fetched key bytes into a usable public key
+        try {
+            // Save client key for re-encryption purposes
+            clientPublicKey = PublicKeys.decode(hello.getPublicKey());
 
+        } catch (GeneralSecurityException e) {
+            System.err.println("Key construction failed: " + e.getMessage());
+        }
+
+        LOG.fine(() -> "Client public key received from " + connection.getRemoteAddress() + ", sending server public key");
+
+        // Forge and send the server's HELLO to the client
+        int features = negotiateFeatures(hello.getFeatures());
+        sendControl(Frame.hello(protocolVersion, features, encryptor.getPublicKey().getEncoded()));
+
+        // Cancel process and close connection upon any error in key generation
+        if (clientPublicKey == null) {
+            connection.close();
+            return;
+        }
+
+        try {
+            MessageEncryptor opened = encryptor.openSession(clientPublicKey);
+            byte[] wrappedSessionKey = opened.getWrappedSessionKey();
+            if (wrappedSessionKey != null) {
+                sendControl(new Frame(FrameType.SESSION_KEY, wrappedSessionKey));
+            }
+            session = opened;
         } catch (Exception e) {
-            System.err.println("Client disconnected: " + e.getMessage());
-        } 
-        
-        // Always try to close socket and remove client when they disconnect
-        finally {
-            try {
-                socket.close();
-                server.removeClient(this);
-            } catch (IOException e) {
-                System.err.println("Error closing socket: " + e.getMessage());
+            System.err.println("Session setup failed: " + e.getMessage());
+            connection.close();
+            return;
+        }
+
+        sendSessionTicket();
+        sendClientId();
+        if (flowControl) {
+            grantCredit();
+        }
+        server.getMetrics().handshakeTime().recordSince(start);
+        server.clientReady(this);
+    }
+
+    /**
+     * Resumes a session from the ticket in the client's RESUME frame, sent instead of the HELLO.
+     * If the server can open the ticket, both sides derive a new session key from it and the
+     * client can chat after a single round trip, without any public-key work. Otherwise the server
+     * answers with an empty RESUME, and the client goes on with a HELLO.
+     *
+     * @return true if the session was resumed, false if the client was asked for a HELLO instead
+     */
+    private boolean resume(Frame frame) {
+        long start = System.nanoTime();
+        SessionTickets tickets = server.getSessionTickets();
+        protocolVersion = FrameCodec.negotiateVersion(frame.getVersion());
+        byte[] resumptionSecret = tickets != null && protocolVersion >= 0 && frame.isResumeAccepted()
+                ? tickets.open(frame.getResumeTicket()) : null;
+
+        if (resumptionSecret == null) {
+            LOG.fine(() -> "Session ticket rejected for " + connection.getRemoteAddress());
+            sendControl(new Frame(FrameType.RESUME));
+            return false;
+        }
+
+        try {
+            byte[] serverNonce = SessionTicket.newNonce();
+            MessageEncryptor resumed = SessionTicket.resume(resumptionSecret, frame.getResumeNonce(), serverNonce);
+            sendControl(Frame.resume(protocolVersion, negotiateFeatures(frame.getFeatures()), serverNonce, new byte[0]));
+            session = resumed;
+        } catch (GeneralSecurityException e) {
+            System.err.println("Session resumption failed: " + e.getMessage());
+            connection.close();
+            return true;
+        }
+
+        sendSessionTicket();
+        sendClientId();
+        if (flowControl) {
+            grantCredit();
+        }
+        server.getMetrics().resumptionTime().recordSince(start);
+        server.clientReady(this);
+        return true;
+    }
+
+    /**
+     * Tells the client its id, which other clients address direct messages to.
+     */
+    private void sendClientId() {
+        sendControl(new Frame(FrameType.CLIENT_ID, ByteBuffer.allocate(Long.BYTES).putLong(id).array()));
+    }
+
+    /**
+     * Sends the client a ticket to resume the session on a later connection, if the server issues
+     * tickets and the session can be resumed.
+     */
+    private void sendSessionTicket() {
+        SessionTickets tickets = server.getSessionTickets();
+        if (tickets == null) {
+            return;
+        }
+        try {
+            byte[] resumptionSecret = session.getResumptionSecret();
+            if (resumptionSecret != null) {
+                sendControl(new Frame(FrameType.SESSION_TICKET, tickets.issue(resumptionSecret)));
             }
+        } catch (Exception e) {
+            LOG.warning(() -> "Failed to issue session ticket: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Called by the connection once the client has disconnected.
+     */
+    void disconnected() {
+        server.getTimers().cancel(idleTimeout);
+        server.removeClient(this);
+    }
+
+    /**
+     * Send frame to client.
+     *
+     * The frame is only queued, and written later by the connection's writer. If the queue is
+     * full the frame, or the oldest queued one, may be dropped, or the client disconnected,
+     * depending on the server's `OverflowPolicy`.
+     *
+     * @param frame  Frame to send
+     */
+    public void sendMessage(Frame frame) {
+        if (!connection.isOpen()) {
+            return;
+        }
+
+        lastWrite = System.nanoTime();
+        switch (outbound.offer(frame)) {
+            case DROPPED:
+                server.messageDropped();
+                break;
+            case OVERFLOW:
+                System.err.println("Disconnecting slow client: " + connection.getRemoteAddress());
+                server.slowConsumerDisconnected();
+                connection.close();
+                return;
+            default:
+                break;
         }
+        connection.outboundReady();
     }
 
     /**
-     * Send message to client.
-     * 
-     * Command is enclosed in precautions about the socket. If somehow `out` fails to be
-     * initialized, or errors occur in the socket due to heavy threading, SendMessage would
-     * crash. To avoid this, only send message if `out` is not null and the socket is open.
-     * 
-     * @param message  Message to send
+     * Send a control frame, such as a key, to the client. Control frames are never dropped.
      */
-    public void sendMessage(String message) {
-        if (out != null && !socket.isClosed()) {
-            out.println(message);
+    private void sendControl(Frame frame) {
+        if (connection.isOpen()) {
+            lastWrite = System.nanoTime();
+            outbound.offerControl(frame);
+            connection.outboundReady();
         }
     }
 
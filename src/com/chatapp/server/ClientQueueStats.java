@@ -0,0 +1,48 @@
+package com.chatapp.server;
+
+/**
+ * Snapshot of one client's outbound queue, as returned by `ChatServer.getQueueStats()`.
+ * A queue that stays deep, or keeps dropping messages, belongs to a slow consumer.
+ *
+ * @version 2026-10-17
+ */
+public final class ClientQueueStats {
+    private final String remoteAddress;
+    private final int depth;
+    private final int capacity;
+    private final long dropped;
+
+    ClientQueueStats(String remoteAddress, int depth, int capacity, long dropped) {
+        this.remoteAddress = remoteAddress;
+        this.depth = depth;
+        this.capacity = capacity;
+        this.dropped = dropped;
+    }
+
+    public String getRemoteAddress() {
+        return remoteAddress;
+    }
+
+    /**
+     * Returns the number of messages waiting to be written to the client.
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the number of messages dropped for this client because its queue was full.
+     */
+    public long getDropped() {
+        return dropped;
+    }
+
+    @Override
+    public String toString() {
+        return remoteAddress + " depth=" + depth + "/" + capacity + " dropped=" + dropped;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,135 @@
+package com.chatapp.server;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Registry of the server's connected clients, keyed by the id the server gives each client.
+ *
+ * The clients are spread over a fixed number of shards by id, each a `ConcurrentHashMap`.
+ * Registering and unregistering a client is a single hash map operation that copies nothing,
+ * and lookup by id is constant-time, which is what direct messages are routed with. Iteration
+ * is weakly consistent: a fan-out sees every client that stays connected throughout, and never
+ * fails because clients come and go meanwhile.
+ *
+ * Ids are handed out in sequence, so consecutive clients land on consecutive shards and the
+ * shards stay evenly filled. Each shard can also be iterated on its own, see `shard(int)`, and a
+ * broadcast to every client is split over the fan-out workers along the shards, see
+ * `split(int)`.
+ *
+ * @version 2026-10-17
+ */
+class ClientRegistry implements Iterable<ClientHandler>, FanOutEngine.Recipients {
+    static final int DEFAULT_SHARDS = 16; // Must be a power of two
+
+    private final ConcurrentHashMap<Long, ClientHandler>[] shards;
+    private final int mask;
+    private final AtomicLong nextId = new AtomicLong(1);
+
+    ClientRegistry() {
+        this(DEFAULT_SHARDS);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"}) // Generic array
+    ClientRegistry(int shardCount) {
+        if (Integer.bitCount(shardCount) != 1) {
+            throw new IllegalArgumentException("Shard count must be a power of two: " + shardCount);
+        }
+        shards = new ConcurrentHashMap[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new ConcurrentHashMap<>();
+        }
+        mask = shardCount - 1;
+    }
+
+    /**
+     * Makes the ids handed out from now on start after `base`, e.g. to keep the ids of the
+     * nodes of a cluster apart. The low bits, which pick the shard, keep counting from 1.
+     */
+    void setIdBase(long base) {
+        nextId.set(base + 1);
+    }
+
+    /**
+     * Returns a new, unique client id.
+     */
+    long nextId() {
+        return nextId.getAndIncrement();
+    }
+
+    void register(ClientHandler client) {
+        shardFor(client.getId()).put(client.getId(), client);
+    }
+
+    /**
+     * Removes a client.
+     *
+     * @return true if the client was registered
+     */
+    boolean unregister(ClientHandler client) {
+        return shardFor(client.getId()).remove(client.getId(), client);
+    }
+
+    /**
+     * Returns the client with the given id, or null if it is not connected.
+     */
+    ClientHandler get(long id) {
+        return shardFor(id).get(id);
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (ConcurrentHashMap<Long, ClientHandler> shard : shards) {
+            size += shard.size();
+        }
+        return size;
+    }
+
+    int shardCount() {
+        return shards.length;
+    }
+
+    /**
+     * Returns a live view of the clients in one shard.
+     */
+    Collection<ClientHandler> shard(int index) {
+        return shards[index].values();
+    }
+
+    /**
+     * Returns the clients split into `count` shards, see `FanOutEngine.shardOf`. If `count` divides
+     * the number of shards, as it does for any power of two up to it, each is a live view of whole
+     * shards, and nothing is copied. Otherwise the clients are split with a single pass over them.
+     */
+    @Override
+    public List<? extends Iterable<ClientHandler>> split(int count) {
+        if (shards.length % count != 0) {
+            return FanOutEngine.split(this, count, size());
+        }
+        return IntStream.range(0, count).mapToObj(index -> shardsFrom(index, count)).collect(Collectors.toList());
+    }
+
+    /**
+     * Returns a live view of the clients in every shard `count` apart, starting at `index`.
+     */
+    private Iterable<ClientHandler> shardsFrom(int index, int count) {
+        return () -> IntStream.iterate(index, i -> i < shards.length, i -> i + count)
+                .boxed().flatMap(i -> shards[i].values().stream()).iterator();
+    }
+
+    @Override
+    public Iterator<ClientHandler> iterator() {
+        return Arrays.stream(shards).flatMap(shard -> shard.values().stream()).iterator();
+    }
+
+    private ConcurrentHashMap<Long, ClientHandler> shardFor(long id) {
+        return shards[(int) id & mask];
+    }
+}
@@ -0,0 +1,479 @@
+package com.chatapp.server;
+
+import java.io.*;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import javax.crypto.SecretKey;
+
+import com.chatapp.cryptography.*;
+import com.chatapp.metrics.*;
+import com.chatapp.protocol.*;
+
+/**
+ * Links a `ChatServer` to the other nodes of a cluster, so clients connected to different nodes
+ * can chat with each other. See `ChatServer.setCluster`.
+ *
+ * Every node has a small numeric id and listens for links from its peers on a port of its own.
+ * Each node opens one outbound `PeerLink` to every peer and sends everything for that peer over
+ * it, so a message crosses to another node once per node, never once per remote client; the
+ * receiving node fans it out to its own clients. Links reconnect on their own, and a node that is
+ * down simply receives nothing until it is back.
+ *
+ * What is relayed where:
+ * - Broadcasts go to every peer, which deliver them to all their clients and add them to their
+ *   own history, so every node's history is complete.
+ * - Direct messages go to the recipient's node only. Client ids carry the id of the node the
+ *   client is connected to in their top bits, see `NODE_ID_SHIFT`, so no lookup is needed.
+ * - Rooms are assigned to nodes with a consistent `HashRing`. A room's owner node tracks which
+ *   other nodes have members in it, as each node tells the owner when its first member joins and
+ *   its last one leaves. A room message goes to the owner, which forwards it to exactly those
+ *   nodes. If the owner cannot be reached, the message goes to every peer instead.
+ *
+ * The links carry the same `Frame`s as client connections, with their own frame types. Every
+ * connection of a link has a key of its own, derived from the cluster's shared secret and a fresh
+ * challenge, and every frame on it a counter, see `LinkSession`, so only nodes that know the secret
+ * can open a link, read relayed messages or inject any, and a recorded link cannot be replayed.
+ *
+ * @version 2026-10-17
+ */
+public class Cluster {
+    public static final int NODE_ID_SHIFT = 48;  // Client ids are (node id << NODE_ID_SHIFT) + sequence
+    public static final int MAX_NODE_ID = 0x7FFF;
+    public static final int DEFAULT_LINK_QUEUE_CAPACITY = 8192;
+
+    static final int HELLO_TIMEOUT_MILLIS = 10_000;
+
+    private static final byte[] KEY_LABEL = "chatapp cluster".getBytes(StandardCharsets.US_ASCII);
+    private static final SampledLogger LOG = new SampledLogger(Cluster.class.getName(), 100);
+
+    private final int nodeId;
+    private final int linkPort;
+    private final SecretKey key;
+    private final Map<Integer, PeerLink> peers = new ConcurrentHashMap<>();       // Outbound links by node id
+    private final Map<Integer, Socket> inbound = new ConcurrentHashMap<>();       // Current inbound link of each peer
+    private final ConcurrentHashMap<String, Set<Integer>> remoteMembers = new ConcurrentHashMap<>(); // Owned room -> other nodes with members
+    private final Object interestLock = new Object(); // Serializes room interest announcements
+    private volatile HashRing ring;
+    private volatile ChatServer server;
+    private volatile ServerSocket linkSocket;
+
+    /**
+     * @param nodeId   this node's id, unique in the cluster, from 1 to `MAX_NODE_ID`
+     * @param linkPort port this node accepts links from its peers on
+     * @param secret   secret shared by every node of the cluster
+     */
+    public Cluster(int nodeId, int linkPort, byte[] secret) {
+        if (nodeId < 1 || nodeId > MAX_NODE_ID) {
+            throw new IllegalArgumentException("Node id must be from 1 to " + MAX_NODE_ID + ": " + nodeId);
+        }
+        this.nodeId = nodeId;
+        this.linkPort = linkPort;
+        try {
+            this.key = SessionCipher.keyFromBytes(SessionCipher.hmac(secret, KEY_LABEL));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Failed to derive the cluster key", e);
+        }
+        this.ring = new HashRing(List.of(nodeId));
+    }
+
+    /**
+     * Adds a peer node. Every node must be given the same set of nodes, or they will disagree on
+     * which node owns a room. Must be called before the server is started.
+     */
+    public void addPeer(int peerId, String host, int peerLinkPort) {
+        if (peerId < 1 || peerId > MAX_NODE_ID || peerId == nodeId) {
+            throw new IllegalArgumentException("Invalid peer node id: " + peerId);
+        }
+        peers.put(peerId, new PeerLink(this, peerId, host, peerLinkPort, DEFAULT_LINK_QUEUE_CAPACITY));
+        List<Integer> nodes = new ArrayList<>(peers.keySet());
+        nodes.add(nodeId);
+        ring = new HashRing(nodes);
+    }
+
+    /**
+     * Adds a peer node given as `<id>@<host>:<port>`, see `addPeer(int, String, int)`.
+     */
+    public void addPeer(String spec) {
+        int at = spec.indexOf('@');
+        int colon = spec.lastIndexOf(':');
+        if (at < 1 || colon < at + 2) {
+            throw new IllegalArgumentException("Expected <id>@<host>:<port>: " + spec);
+        }
+        addPeer(Integer.parseInt(spec.substring(0, at)), spec.substring(at + 1, colon), Integer.parseInt(spec.substring(colon + 1)));
+    }
+
+    public int getNodeId() {
+        return nodeId;
+    }
+
+    public int getPeerCount() {
+        return peers.size();
+    }
+
+    /**
+     * Returns the number of peers this node currently has an open outbound link to.
+     */
+    public int getConnectedPeerCount() {
+        int connected = 0;
+        for (PeerLink link : peers.values()) {
+            if (link.isConnected()) {
+                connected++;
+            }
+        }
+        return connected;
+    }
+
+    /**
+     * Waits until this node has an outbound link to every peer, for tests and load runs.
+     *
+     * @return true if all links are up
+     */
+    public boolean awaitPeers(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (getConnectedPeerCount() < peers.size()) {
+            if (System.nanoTime() >= deadline) {
+                return false;
+            }
+            Thread.sleep(10);
+        }
+        return true;
+    }
+
+    /**
+     * Returns the id of the node a client is connected to, from the client's id.
+     */
+    public static int nodeOf(long clientId) {
+        return (int) (clientId >>> NODE_ID_SHIFT);
+    }
+
+    /**
+     * Returns the id of the node that owns a room.
+     */
+    int ownerOf(String room) {
+        return ring.nodeFor(room);
+    }
+
+    /**
+     * Starts accepting links from peers and connecting to them.
+     */
+    void start(ChatServer server) throws IOException {
+        this.server = server;
+        ServerSocket socket = new ServerSocket(linkPort);
+        linkSocket = socket;
+
+        Thread acceptor = new Thread(() -> acceptLinks(socket), "cluster-accept-" + nodeId);
+        acceptor.setDaemon(true);
+        acceptor.start();
+        peers.values().forEach(Thread::start);
+        LOG.info("Cluster node " + nodeId + " listening for peers on port " + linkPort);
+    }
+
+    /**
+     * Closes every link. The server keeps serving its own clients.
+     */
+    public void close() {
+        try {
+            ServerSocket socket = linkSocket;
+            if (socket != null) {
+                socket.close();
+            }
+        } catch (IOException e) {
+            System.err.println("Error closing cluster socket: " + e.getMessage());
+        }
+        peers.values().forEach(PeerLink::close);
+        for (Socket socket : inbound.values()) {
+            closeQuietly(socket);
+        }
+    }
+
+    ServerMetrics metrics() {
+        return server.getMetrics();
+    }
+
+    // --- Outbound ---
+
+    /**
+     * Relays a broadcast to every peer.
+     */
+    void relayBroadcast(byte[] message) {
+        Frame frame = new Frame(FrameType.RELAY_MESSAGE, message);
+        for (PeerLink link : peers.values()) {
+            link.send(frame);
+        }
+    }
+
+    /**
+     * Relays an encoded `RoomMessage` from a client of this node to the other nodes with members in
+     * the room: through the room's owner, or directly if this node is the owner.
+     */
+    void relayToRoom(String room, byte[] message) {
+        int owner = ownerOf(room);
+        if (owner == nodeId) {
+            forwardToMembers(room, nodeId, message);
+            return;
+        }
+        PeerLink ownerLink = peers.get(owner);
+        if (ownerLink.isConnected()) {
+            ownerLink.send(roomFrame(nodeId, true, message));
+        } else {
+            // The owner is down, and with it the list of nodes in the room, so try every node
+            Frame frame = roomFrame(nodeId, false, message);
+            for (PeerLink link : peers.values()) {
+                link.send(frame);
+            }
+        }
+    }
+
+    /**
+     * Sends a room message to the nodes with members in a room this node owns, except the node it
+     * came from, which has delivered it already.
+     */
+    private void forwardToMembers(String room, int origin, byte[] message) {
+        Set<Integer> nodes = remoteMembers.get(room);
+        if (nodes == null) {
+            return;
+        }
+        Frame frame = null; // Built on first use
+        for (int node : nodes) {
+            PeerLink link = peers.get(node);
+            if (node != origin && link != null) {
+                frame = frame != null ? frame : roomFrame(origin, false, message);
+                link.send(frame);
+            }
+        }
+    }
+
+    private Frame roomFrame(int origin, boolean forward, byte[] message) {
+        byte[] body = ByteBuffer.allocate(Integer.BYTES + 1 + message.length)
+                .putInt(origin)
+                .put((byte) (forward ? 1 : 0))
+                .put(message)
+                .array();
+        return new Frame(FrameType.RELAY_ROOM_MESSAGE, body);
+    }
+
+    /**
+     * Relays an encoded `DirectMessage` to the node of the recipient.
+     *
+     * @return true if the message was queued for the recipient's node
+     */
+    boolean relayDirect(long recipientId, byte[] message) {
+        PeerLink link = peers.get(nodeOf(recipientId));
+        if (link == null) {
+            return false;
+        }
+        Frame frame = new Frame(FrameType.RELAY_DIRECT_MESSAGE,
+                ByteBuffer.allocate(Long.BYTES + message.length).putLong(recipientId).put(message).array());
+        return link.send(frame);
+    }
+
+    /**
+     * Called when a room gets its first member on this node, or loses its last one. Tells the
+     * room's owner, unless that is this node.
+     */
+    void roomMembershipChanged(String room) {
+        int owner = ownerOf(room);
+        if (owner != nodeId) {
+            synchronized (interestLock) { // The last announcement queued always matches the membership
+                announceInterest(peers.get(owner), room);
+            }
+        }
+    }
+
+    private void announceInterest(PeerLink link, String room) {
+        byte[] roomBytes = room.getBytes(StandardCharsets.UTF_8);
+        byte[] body = ByteBuffer.allocate(1 + roomBytes.length)
+                .put((byte) (server.hasRoomMembers(room) ? 1 : 0))
+                .put(roomBytes)
+                .array();
+        link.sendControl(new Frame(FrameType.ROOM_INTEREST, body));
+    }
+
+    /**
+     * Returns the session of a link connection with the given nonces, see `LinkSession`.
+     */
+    LinkSession newLinkSession(byte[] challenge, byte[] nonce) throws GeneralSecurityException {
+        return new LinkSession(key, challenge, nonce);
+    }
+
+    /**
+     * Called by a link once it has sent its hello. Marks it up and tells the peer about every room
+     * it owns that this node has members in, as the peer forgets them when a link goes down.
+     */
+    void linkConnected(PeerLink link) {
+        synchronized (interestLock) { // The last announcement queued always matches the membership
+            link.reset();
+            for (String room : server.getRooms()) {
+                if (ownerOf(room) == link.getPeerId()) {
+                    announceInterest(link, room);
+                }
+            }
+        }
+    }
+
+    // --- Inbound ---
+
+    /**
+     * Accept loop for links from peers, one reader thread per link.
+     */
+    private void acceptLinks(ServerSocket socket) {
+        while (!socket.isClosed()) {
+            try {
+                Socket link = socket.accept();
+                Thread reader = new Thread(() -> readLink(link), "cluster-link-in-" + nodeId);
+                reader.setDaemon(true);
+                reader.start();
+            } catch (IOException e) {
+                if (!socket.isClosed()) {
+                    System.err.println("Cluster accept failed: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads one inbound link until it closes. Sends the link a NODE_CHALLENGE, which it must answer
+     * with a NODE_HELLO from a known peer, sealed with the session derived from it, or the link is
+     * dropped.
+     *
+     * While the fan-out workers are backlogged, relayed broadcasts wait before they are delivered,
+     * like a client's, and the link is not read from. The peer's link queue then fills up and drops
+     * its oldest frames instead of this node's fan-out queues growing without bound.
+     */
+    private void readLink(Socket socket) {
+        int peer = -1;
+        try (socket) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            byte[] challenge = LinkSession.newNonce();
+            OutputStream out = socket.getOutputStream();
+            FrameCodec.write(out, new Frame(FrameType.NODE_CHALLENGE, challenge));
+            out.flush();
+
+            socket.setSoTimeout(HELLO_TIMEOUT_MILLIS);
+            Frame hello = FrameCodec.read(in);
+            if (hello == null || hello.getType() != FrameType.NODE_HELLO || hello.getPayload().length < LinkSession.NONCE_LENGTH) {
+                return;
+            }
+            byte[] payload = hello.getPayload();
+            LinkSession session = newLinkSession(challenge, Arrays.copyOf(payload, LinkSession.NONCE_LENGTH));
+            peer = ByteBuffer.wrap(session.open(Arrays.copyOfRange(payload, LinkSession.NONCE_LENGTH, payload.length))).getInt();
+            if (!peers.containsKey(peer)) {
+                System.err.println("Link from unknown cluster node " + peer);
+                return;
+            }
+            socket.setSoTimeout(0);
+
+            // A reconnecting peer announces its rooms again, so forget what the old link said
+            Socket previous = inbound.put(peer, socket);
+            if (previous != null) {
+                closeQuietly(previous);
+            }
+            forgetInterest(peer);
+
+            Frame frame;
+            while ((frame = FrameCodec.read(in)) != null) {
+                while (isBroadcast(frame) && server.getFanOutEngine().isBacklogged()) {
+                    TimeUnit.NANOSECONDS.sleep(FanOutEngine.BACKLOG_WAIT_NANOS); // Fan-out workers behind, see FanOutEngine
+                }
+                handleRelay(peer, session, frame);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (GeneralSecurityException e) {
+            System.err.println("Rejected cluster link from " + socket.getRemoteSocketAddress() + ": " + e.getMessage());
+        } catch (IOException e) {
+            LOG.fine(() -> "Cluster link closed: " + e.getMessage());
+        } finally {
+            if (peer > 0 && inbound.remove(peer, socket)) {
+                forgetInterest(peer);
+            }
+        }
+    }
+
+    private static boolean isBroadcast(Frame frame) {
+        return frame.getType() == FrameType.RELAY_MESSAGE || frame.getType() == FrameType.RELAY_ROOM_MESSAGE;
+    }
+
+    /**
+     * Handles one frame from a peer. A frame that fails to decrypt or was received before is
+     * dropped, as is anything that goes wrong delivering it, without closing the link.
+     */
+    private void handleRelay(int peer, LinkSession session, Frame frame) {
+        try {
+            byte[] body = session.open(frame.getPayload());
+            ByteBuffer buffer = ByteBuffer.wrap(body);
+            switch (frame.getType()) {
+                case RELAY_MESSAGE:
+                    metrics().relayReceived();
+                    server.deliverRelayedBroadcast(body);
+                    break;
+                case RELAY_ROOM_MESSAGE: {
+                    metrics().relayReceived();
+                    int origin = buffer.getInt();
+                    boolean forward = buffer.get() != 0;
+                    byte[] message = Arrays.copyOfRange(body, buffer.position(), body.length);
+                    String room = RoomMessage.decode(message).getRoom();
+                    if (forward && ownerOf(room) == nodeId) {
+                        forwardToMembers(room, origin, message);
+                    }
+                    server.deliverToRoom(room, message, null);
+                    break;
+                }
+                case RELAY_DIRECT_MESSAGE: {
+                    metrics().relayReceived();
+                    long recipientId = buffer.getLong();
+                    server.deliverDirect(recipientId, Arrays.copyOfRange(body, buffer.position(), body.length));
+                    break;
+                }
+                case ROOM_INTEREST: {
+                    boolean member = buffer.get() != 0;
+                    String room = new String(body, 1, body.length - 1, StandardCharsets.UTF_8);
+                    updateInterest(room, peer, member);
+                    break;
+                }
+                default:
+                    System.err.println("Unexpected frame from cluster node " + peer + ": " + frame);
+                    break;
+            }
+        } catch (Exception e) {
+            LOG.warning(() -> "Failed to handle " + frame.getType() + " from cluster node " + peer + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Records whether a peer has members in a room this node owns.
+     */
+    private void updateInterest(String room, int peer, boolean member) {
+        if (member) {
+            remoteMembers.compute(room, (name, nodes) -> {
+                Set<Integer> set = nodes != null ? nodes : ConcurrentHashMap.newKeySet();
+                set.add(peer);
+                return set;
+            });
+        } else {
+            remoteMembers.computeIfPresent(room, (name, nodes) -> {
+                nodes.remove(peer);
+                return nodes.isEmpty() ? null : nodes;
+            });
+        }
+    }
+
+    private void forgetInterest(int peer) {
+        for (String room : remoteMembers.keySet()) {
+            updateInterest(room, peer, false);
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Closing anyway
+        }
+    }
+}
\ No newline at end of file
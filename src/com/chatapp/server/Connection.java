@@ -0,0 +1,47 @@
+package com.chatapp.server;
+
+/**
+ * Transport between the server and one connected client.
+ *
+ * The protocol itself (key exchange, decryption, broadcasting) lives in `ClientHandler`, which
+ * only talks to the client through this interface. That way the same handler logic runs on top
+ * of both the blocking thread-per-client transport (`SocketConnection`) and the non-blocking
+ * selector transport (`NioConnection`).
+ *
+ * Outgoing messages are not passed through the connection directly; the handler queues them in
+ * its `OutboundQueue`, and the connection's writer drains that queue.
+ *
+ * @version 2026-10-17
+ */
+interface Connection {
+
+    /**
+     * Signals that the handler has queued messages for the client. Implementations must be safe
+     * to call from any thread.
+     */
+    void outboundReady();
+
+    /**
+     * Closes the connection. Calling this more than once has no effect.
+     */
+    void close();
+
+    /**
+     * Returns true as long as the connection has not been closed.
+     */
+    boolean isOpen();
+
+    /**
+     * Returns the client's address, for logging and statistics.
+     */
+    String getRemoteAddress();
+
+    /**
+     * Returns the pool the connection hands frames back to once it has written them, see
+     * `Frame.release()`, or null, the default, if frames for this client should not be built in
+     * pooled buffers.
+     */
+    default BufferPool bufferPool() {
+        return null;
+    }
+}
\ No newline at end of file
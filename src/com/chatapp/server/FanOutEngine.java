@@ -0,0 +1,204 @@
+package com.chatapp.server;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.chatapp.metrics.*;
+
+/**
+ * Spreads the work of a broadcast, encrypting and queueing the message for every recipient, over a
+ * fixed set of worker threads, one per core. The time to reach the last recipient of a large room
+ * then grows with its size divided by the number of cores, and the sender's thread is free to read
+ * the sender's next message as soon as the work is handed out.
+ *
+ * Recipients are split into shards by id once per broadcast, on the caller's thread, see
+ * `shardOf`, and each worker always takes the same shard of every broadcast. A client's shard never changes and each worker runs its tasks in turn,
+ * so messages are queued for any one client in the order they were broadcast, as they were when
+ * the sender's thread did all the work.
+ *
+ * Handing work to the workers costs a few microseconds, more than a small room takes to serve. A
+ * broadcast to fewer than the threshold of recipients, see `setMinParallelRecipients`, is served
+ * on the caller's thread, but only while no broadcast is still in progress on the workers, as it
+ * could otherwise overtake one.
+ *
+ * Handing out work never blocks, as the caller is often an event loop serving many other clients.
+ * Once any worker has `MAX_BACKLOG` shards waiting, the engine is backlogged, and clients stop
+ * being read from before their next broadcast until it has caught up, like clients over their rate
+ * limit, see `ClientHandler.backlogWait`. Broadcasts relayed by the cluster wait the same way, so
+ * the peer's link queue takes the pressure, see `Cluster`.
+ *
+ * The time from the start of a broadcast until it has been queued for its last recipient is
+ * recorded in the server's broadcast time, whichever thread finished it.
+ *
+ * @version 2026-10-17
+ */
+class FanOutEngine {
+    static final int DEFAULT_MIN_PARALLEL_RECIPIENTS = 512;
+    static final int MAX_BACKLOG = 1024; // Shards of broadcasts waiting per worker before senders wait
+    static final long BACKLOG_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(1); // Until a sender checks again
+
+    /**
+     * The recipients of a broadcast, which can be split into shards.
+     */
+    interface Recipients {
+        int size();
+
+        /**
+         * Returns the recipients split into `count` shards, see `shardOf`, shard `i` at index `i`.
+         */
+        List<? extends Iterable<ClientHandler>> split(int count);
+    }
+
+    /**
+     * Encrypts and queues a broadcast for some of its recipients. Called once per shard, at the
+     * same time on several threads.
+     */
+    interface Delivery {
+        void deliver(Iterable<ClientHandler> recipients);
+    }
+
+    private final ServerMetrics metrics;
+    private final BlockingQueue<Runnable>[] queues;
+    private final AtomicInteger inProgress = new AtomicInteger(); // Broadcasts handed to the workers, not finished yet
+    private volatile int minParallelRecipients = DEFAULT_MIN_PARALLEL_RECIPIENTS;
+
+    @SuppressWarnings({"unchecked", "rawtypes"}) // Generic array
+    FanOutEngine(String name, int workerCount, ServerMetrics metrics) {
+        if (workerCount <= 0) {
+            throw new IllegalArgumentException("Worker count must be positive");
+        }
+        this.metrics = metrics;
+        this.queues = new BlockingQueue[workerCount];
+        for (int i = 0; i < workerCount; i++) {
+            BlockingQueue<Runnable> queue = new LinkedBlockingQueue<>();
+            queues[i] = queue;
+            Thread worker = new Thread(() -> work(queue), name + "-" + i);
+            worker.setDaemon(true);
+            worker.start();
+        }
+    }
+
+    /**
+     * Returns the shard of `count` a client belongs to.
+     */
+    static int shardOf(long clientId, int count) {
+        return (int) Math.floorMod(clientId, (long) count);
+    }
+
+    /**
+     * Returns the clients of a collection as `Recipients`, see `split(Iterable, int, int)`.
+     */
+    static Recipients recipients(Collection<ClientHandler> clients) {
+        return new Recipients() {
+            @Override
+            public int size() {
+                return clients.size();
+            }
+
+            @Override
+            public List<? extends Iterable<ClientHandler>> split(int count) {
+                return count == 1 ? List.of(clients) : FanOutEngine.split(clients, count, clients.size());
+            }
+        };
+    }
+
+    /**
+     * Splits clients into `count` shards, see `shardOf`, with a single pass over them, so no
+     * worker has to look at the clients of the others.
+     */
+    static List<List<ClientHandler>> split(Iterable<ClientHandler> clients, int count, int expectedSize) {
+        List<List<ClientHandler>> shards = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            shards.add(new ArrayList<>(expectedSize / count + 1));
+        }
+        for (ClientHandler client : clients) {
+            shards.get(shardOf(client.getId(), count)).add(client);
+        }
+        return shards;
+    }
+
+    void setMinParallelRecipients(int minParallelRecipients) {
+        if (minParallelRecipients < 0) {
+            throw new IllegalArgumentException("Threshold must not be negative");
+        }
+        this.minParallelRecipients = minParallelRecipients;
+    }
+
+    int getWorkerCount() {
+        return queues.length;
+    }
+
+    /**
+     * Returns true if no broadcast is in progress on the workers.
+     */
+    boolean isIdle() {
+        return inProgress.get() == 0;
+    }
+
+    /**
+     * Returns true if any worker has `MAX_BACKLOG` or more shards waiting.
+     */
+    boolean isBacklogged() {
+        for (BlockingQueue<Runnable> queue : queues) {
+            if (queue.size() >= MAX_BACKLOG) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Delivers a broadcast to its recipients, on the caller's thread if there are few of them,
+     * see the class comment, and split over the workers otherwise. May return before the
+     * broadcast has been queued for every recipient.
+     */
+    void fanOut(Recipients recipients, Delivery delivery) {
+        long start = System.nanoTime();
+        if (recipients.size() < minParallelRecipients && isIdle()) {
+            try {
+                delivery.deliver(recipients.split(1).get(0));
+            } finally {
+                metrics.broadcastTime().recordSince(start);
+            }
+            return;
+        }
+
+        int count = queues.length;
+        List<? extends Iterable<ClientHandler>> shards = recipients.split(count);
+        AtomicInteger shardsLeft = new AtomicInteger(count);
+        inProgress.incrementAndGet();
+        for (int i = 0; i < count; i++) {
+            Iterable<ClientHandler> shard = shards.get(i);
+            Runnable task = () -> {
+                try {
+                    delivery.deliver(shard);
+                } finally {
+                    if (shardsLeft.decrementAndGet() == 0) {
+                        metrics.broadcastTime().recordSince(start);
+                        inProgress.decrementAndGet();
+                    }
+                }
+            };
+            queues[i].add(task); // Unbounded, see isBacklogged
+        }
+    }
+
+    private static void work(BlockingQueue<Runnable> queue) {
+        try {
+            while (true) {
+                try {
+                    queue.take().run();
+                } catch (RuntimeException e) {
+                    System.err.println("Fan-out failed: " + e);
+                }
+            }
+        } catch (InterruptedException e) {
+            // Stopped
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,127 @@
+package com.chatapp.server;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.chatapp.cryptography.*;
+
+/**
+ * Hands out the shared `GroupKey` of `ChatServer.BroadcastMode.GROUP_KEY`, and rotates it as
+ * clients join and leave.
+ *
+ * A client whose session is ready is sent the current key straight away. Rotations are not done
+ * as clients come and go. They are requested, and done at most once per interval on a thread of
+ * their own, as a single new key sent to every client. When 10,000 clients reconnect at once,
+ * each client is sent a few keys, instead of one per client that joined, and the event loops
+ * never encrypt a key for anyone but the client that joined. In exchange, a client can read the
+ * broadcasts of up to one interval before it joined and after it left.
+ *
+ * A new key is only used for broadcasts once every client has been sent it. A client that
+ * becomes ready while a rotation is in progress is sent both keys, as the rotation may have
+ * passed it by.
+ *
+ * @version 2026-10-17
+ */
+class GroupKeyRotator {
+    static final long DEFAULT_INTERVAL_MILLIS = 250;
+
+    private final Iterable<ClientHandler> clients;
+    private final long intervalMillis;
+    private final ScheduledExecutorService rotator;
+
+    // All written under this
+    private volatile GroupKey current = null; // Null until the first client is ready
+    private GroupKey next = null;             // Being sent to every client, null between rotations
+    private boolean rotationScheduled = false;
+
+    GroupKeyRotator(Iterable<ClientHandler> clients, long intervalMillis) {
+        if (intervalMillis <= 0) {
+            throw new IllegalArgumentException("Group key interval must be positive");
+        }
+        this.clients = clients;
+        this.intervalMillis = intervalMillis;
+        this.rotator = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "group-key-rotator");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Returns the key broadcasts are encrypted with, or null if no client has been sent one.
+     */
+    GroupKey current() {
+        return current;
+    }
+
+    /**
+     * Sends a client whose session is ready the current key, and schedules a rotation, so it
+     * cannot read earlier broadcasts for long.
+     */
+    synchronized void clientReady(ClientHandler client) {
+        try {
+            if (current == null) {
+                current = GroupKey.generate(1);
+            }
+
+            // Sent under the lock, so a rotation that starts later sends the client its key too
+            client.sendGroupKey(current);
+            if (next != null) {
+                client.sendGroupKey(next);
+            }
+        } catch (Exception e) {
+            System.err.println("Failed to send group key to client: " + e.getMessage());
+        }
+        scheduleRotation();
+    }
+
+    /**
+     * Schedules a rotation, so a client that left cannot read later broadcasts for long.
+     */
+    synchronized void clientLeft() {
+        if (current != null) {
+            scheduleRotation();
+        }
+    }
+
+    private void scheduleRotation() {
+        if (!rotationScheduled) {
+            rotationScheduled = true;
+            rotator.schedule(this::rotate, intervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Generates the next key, hands it to every client that has completed the key exchange, and
+     * only then makes it the current one.
+     */
+    private void rotate() {
+        GroupKey key;
+        synchronized (this) {
+            rotationScheduled = false;
+            try {
+                key = GroupKey.generate(current.getEpoch() + 1);
+            } catch (Exception e) {
+                System.err.println("Group key rotation failed: " + e.getMessage());
+                return;
+            }
+            next = key;
+        }
+
+        for (ClientHandler client : clients) {
+            if (client.isKeyExchanged()) {
+                try {
+                    client.sendGroupKey(key);
+                } catch (Exception e) {
+                    System.err.println("Failed to send group key to client: " + e.getMessage());
+                }
+            }
+        }
+
+        synchronized (this) {
+            current = key;
+            next = null;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,69 @@
+package com.chatapp.server;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import javax.crypto.SecretKey;
+
+import com.chatapp.cryptography.*;
+
+/**
+ * The key and frame counters of one connection of a `Cluster` link.
+ *
+ * The key is derived from the cluster key and two random nonces, the challenge the accepting node
+ * sends first and the one the connecting node answers with in its hello, so every connection has
+ * a key of its own and nothing recorded from another connection decrypts under it. Every sealed
+ * payload starts with a counter that grows by one per frame, inside the encryption, and a frame
+ * whose counter is not above the last one received is rejected.
+ *
+ * One thread seals and another opens: the link's writer on the connecting node, its reader on the
+ * accepting one.
+ *
+ * @version 2026-10-17
+ */
+final class LinkSession {
+    static final int NONCE_LENGTH = 16;
+
+    private static final byte[] LINK_LABEL = "chatapp cluster link".getBytes(StandardCharsets.US_ASCII);
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final SecretKey key;
+    private long sent;     // Counter of the last frame sealed
+    private long received; // Counter of the last frame opened
+
+    LinkSession(SecretKey clusterKey, byte[] challenge, byte[] nonce) throws GeneralSecurityException {
+        this.key = SessionCipher.keyFromBytes(SessionCipher.hmac(clusterKey.getEncoded(), LINK_LABEL, challenge, nonce));
+    }
+
+    static byte[] newNonce() {
+        byte[] nonce = new byte[NONCE_LENGTH];
+        RANDOM.nextBytes(nonce);
+        return nonce;
+    }
+
+    /**
+     * Encrypts a frame body under the link key, after the next counter.
+     */
+    byte[] seal(byte[] body) throws GeneralSecurityException {
+        byte[] counted = ByteBuffer.allocate(Long.BYTES + body.length).putLong(++sent).put(body).array();
+        return SessionCipher.encrypt(key, counted);
+    }
+
+    /**
+     * Decrypts a payload produced by the other side's `seal` and returns the body.
+     *
+     * @throws GeneralSecurityException if it does not decrypt or was received before
+     */
+    byte[] open(byte[] payload) throws GeneralSecurityException {
+        ByteBuffer counted = ByteBuffer.wrap(SessionCipher.decrypt(key, payload));
+        long counter = counted.getLong();
+        if (counter <= received) {
+            throw new GeneralSecurityException("Replayed frame " + counter + ", last was " + received);
+        }
+        received = counter;
+        byte[] body = new byte[counted.remaining()];
+        counted.get(body);
+        return body;
+    }
+}
\ No newline at end of file
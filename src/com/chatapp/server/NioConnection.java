@@ -0,0 +1,293 @@
+package com.chatapp.server;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.chatapp.cryptography.*;
+import com.chatapp.metrics.*;
+import com.chatapp.protocol.*;
+
+/**
+ * Non-blocking transport used by the server's `NIO` mode.
+ *
+ * The connection is owned by a single `NioEventLoop`, which calls `onReadable()` and
+ * `onWritable()` from its thread. Incoming bytes are decoded into frames and passed on to the
+ * connection's `ClientHandler`. Outgoing messages can be queued by the handler from any thread;
+ * the event loop drains the handler's outbound queue once the channel is writable.
+ *
+ * Queued frames are written in batches with gathering writes: every frame queued since the
+ * channel last became writable, up to the server's batch size, goes out in a single write call
+ * straight from the frames' own encoded buffers, without copying them together first.
+ *
+ * The read buffer and the frames encrypted for this client alone come from the server's
+ * `BufferPool` of direct buffers, which the channel reads into and writes from without an extra
+ * copy. Frames are released to the pool as soon as they have been written.
+ *
+ * A client that sends faster than its rate limit, see `AdmissionControl`, has the connection stop
+ * reading: the frame that went over the limit and everything after it wait, unread, until the
+ * client's budget has refilled, and the event loop goes on serving everyone else meanwhile. A
+ * broadcast waits the same way while the fan-out workers are backlogged.
+ *
+ * Bytes read and written, and the time each batch takes to write, go to the server's metrics. A
+ * batch's write time spans from its first to its last write call, including any wait for OP_WRITE.
+ *
+ * @version 2026-10-17
+ */
+class NioConnection implements Connection {
+    private static final int READ_BUFFER_SIZE = 8192; // Grown on demand for larger frames
+    private static final int MAX_BATCH_FRAMES = 32;   // Buffers per gathering write
+
+    private final NioEventLoop loop;
+    private final SocketChannel channel;
+    private final ClientHandler handler;
+    private final ServerMetrics metrics;
+    private final AdmissionControl admission;
+    private final String remoteAddress;
+
+    private final BufferPool pool;
+    private ByteBuffer readBuffer;          // Kept in write mode between reads, event loop thread only
+    private final ByteBuffer[] batch = new ByteBuffer[MAX_BATCH_FRAMES]; // Event loop thread only
+    private final Frame[] batchFrames = new Frame[MAX_BATCH_FRAMES];    // Frames of the batch buffers
+    private Frame deferredFrame;            // Frame waiting for the rate limit, reads are paused while set
+    private int batchStart = 0;             // First frame of the batch not fully written yet
+    private int batchEnd = 0;               // End of the batch, batchStart == batchEnd when empty
+    private long batchBytes;
+    private long batchStartTime;            // When the batch was taken off the queue
+    private final int maxBatchBytes;
+    private final AtomicBoolean writeRequested = new AtomicBoolean();
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private SelectionKey key;
+
+    public NioConnection(NioEventLoop loop, SocketChannel channel, ChatServer server) {
+        this.loop = loop;
+        this.channel = channel;
+        this.remoteAddress = String.valueOf(channel.socket().getRemoteSocketAddress());
+        this.metrics = server.getMetrics();
+        this.admission = server.getAdmissionControl();
+        this.maxBatchBytes = server.getMaxBatchBytes();
+        this.pool = server.getBufferPool();
+        this.readBuffer = pool.acquire(READ_BUFFER_SIZE);
+        this.handler = new ClientHandler(server, this);
+    }
+
+    public ClientHandler getHandler() {
+        return handler;
+    }
+
+    /**
+     * Called by the event loop once the channel has been registered with its selector.
+     */
+    void registered(SelectionKey key) {
+        this.key = key;
+    }
+
+    /**
+     * Reads whatever is available on the channel and hands every complete frame to the handler.
+     * Runs on the event loop thread.
+     */
+    void onReadable() throws IOException {
+        int read = channel.read(readBuffer);
+        if (read < 0) {
+            close();
+            return;
+        }
+        metrics.bytesRead(read);
+        handleBufferedFrames();
+    }
+
+    /**
+     * Hands every complete frame in the read buffer to the handler, unless the client goes over
+     * its rate limit, and makes room in the buffer for the next read. Runs on the event loop thread.
+     */
+    private void handleBufferedFrames() throws IOException {
+        readBuffer.flip();
+        Frame frame;
+        while (isOpen() && (frame = FrameCodec.decode(readBuffer)) != null) {
+            long wait = handler.charge(frame);
+            if (wait == 0) {
+                wait = handler.backlogWait(frame);
+            }
+            if (wait > 0) {
+                pauseReads(frame, wait);
+                break;
+            }
+            handler.handleFrame(frame);
+        }
+
+        // Grow the buffer for a frame larger than it, and shrink it back once that frame is done and
+        // what is left fits, which it may not if the loop above stopped early. The codec has
+        // already checked the length in the header.
+        int needed = Math.max(READ_BUFFER_SIZE, FrameCodec.peekEncodedLength(readBuffer));
+        boolean shrink = needed == READ_BUFFER_SIZE && readBuffer.capacity() > READ_BUFFER_SIZE
+                && readBuffer.remaining() <= READ_BUFFER_SIZE;
+        if (needed > readBuffer.capacity() || shrink) {
+            ByteBuffer resized = pool.acquire(needed).clear(); // All of a pooled buffer can be used
+            resized.put(readBuffer);
+            pool.release(readBuffer);
+            readBuffer = resized;
+        } else {
+            readBuffer.compact();
+        }
+    }
+
+    /**
+     * Stops reading until the client's budget has refilled, keeping the frame that went over it.
+     */
+    private void pauseReads(Frame frame, long waitNanos) {
+        deferredFrame = frame;
+        key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+        admission.schedule(() -> loop.execute(this::resumeReads), waitNanos);
+    }
+
+    /**
+     * Handles the deferred frame and the ones buffered after it, and reads again unless the
+     * client is still over its limit or the fan-out workers are still backlogged. Runs on the
+     * event loop thread.
+     */
+    private void resumeReads() {
+        if (!isOpen()) {
+            return;
+        }
+        Frame frame = deferredFrame;
+        long wait = handler.backlogWait(frame);
+        if (wait > 0) {
+            admission.schedule(() -> loop.execute(this::resumeReads), wait);
+            return;
+        }
+        deferredFrame = null;
+        try {
+            handler.handleFrame(frame);
+            handleBufferedFrames();
+        } catch (IOException e) {
+            System.err.println("Client disconnected: " + e.getMessage());
+            close();
+            return;
+        } catch (RuntimeException e) {
+            System.err.println("Client failed: " + e);
+            close(); // Only this client, the task runs on the event loop thread
+            return;
+        }
+        if (deferredFrame == null && key.isValid()) {
+            key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+        }
+    }
+
+    /**
+     * Returns OP_READ, or 0 while reads are paused for the rate limit.
+     */
+    private int readInterest() {
+        return deferredFrame == null ? SelectionKey.OP_READ : 0;
+    }
+
+    /**
+     * Writes queued frames in batches until the queue is empty or the socket buffer is full.
+     * Runs on the event loop thread.
+     */
+    void onWritable() throws IOException {
+        while (true) {
+            if (batchStart == batchEnd && !takeBatch()) {
+                break;
+            }
+            metrics.bytesWritten(channel.write(batch, batchStart, batchEnd - batchStart));
+            while (batchStart < batchEnd && !batch[batchStart].hasRemaining()) {
+                batch[batchStart] = null;
+                batchFrames[batchStart].release(); // Back to the pool, if it came from there
+                batchFrames[batchStart++] = null;
+            }
+            if (batchStart < batchEnd) {
+                return; // Socket buffer full, wait for the next OP_WRITE
+            }
+            metrics.sendTime().recordSince(batchStartTime);
+            metrics.batchWritten(batchEnd, batchBytes);
+        }
+        key.interestOps(readInterest());
+    }
+
+    /**
+     * Takes queued frames for the next gathering write, up to the batch size.
+     *
+     * @return false if the queue was empty
+     */
+    private boolean takeBatch() {
+        batchStart = 0;
+        batchEnd = 0;
+        batchBytes = 0;
+        Frame frame;
+        while (batchEnd < MAX_BATCH_FRAMES && batchBytes < maxBatchBytes && (frame = handler.outbound().poll()) != null) {
+            batchFrames[batchEnd] = frame;
+            batch[batchEnd++] = frame.encoded();
+            batchBytes += frame.getEncodedLength();
+        }
+        batchStartTime = System.nanoTime();
+        return batchEnd > 0;
+    }
+
+    /**
+     * Re-enables OP_WRITE after messages were queued from another thread. Runs on the event
+     * loop thread.
+     */
+    private void enableWrites() {
+        writeRequested.set(false);
+        if (key != null && key.isValid()) {
+            key.interestOps(readInterest() | SelectionKey.OP_WRITE);
+        }
+    }
+
+    @Override
+    public void outboundReady() {
+        // Only one pending wake-up per connection, the event loop drains the whole queue
+        if (isOpen() && writeRequested.compareAndSet(false, true)) {
+            loop.execute(this::enableWrites);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            if (key != null) {
+                key.cancel();
+            }
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("Error closing socket: " + e.getMessage());
+        }
+        loop.execute(this::releaseBuffers); // Not before the event loop is done with them
+        handler.disconnected();
+    }
+
+    /**
+     * Hands the read buffer and the frames of an unfinished batch back to the pool once the
+     * connection is closed. Frames still in the queue are left to the garbage collector. Runs on
+     * the event loop thread.
+     */
+    private void releaseBuffers() {
+        pool.release(readBuffer);
+        readBuffer = null;
+        for (int i = batchStart; i < batchEnd; i++) {
+            batch[i] = null;
+            batchFrames[i].release();
+            batchFrames[i] = null;
+        }
+        batchStart = batchEnd;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return !closed.get();
+    }
+
+    @Override
+    public String getRemoteAddress() {
+        return remoteAddress;
+    }
+
+    @Override
+    public BufferPool bufferPool() {
+        return pool;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,116 @@
+package com.chatapp.server;
+
+import java.io.*;
+import java.nio.channels.*;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import com.chatapp.cryptography.*;
+
+/**
+ * A single-threaded selector loop serving many `NioConnection`s.
+ *
+ * The server starts a small fixed number of these (one per core) in `NIO` mode and hands each
+ * accepted channel to one of them. All reads, writes and protocol handling for a connection
+ * happen on the thread of the loop that owns it; other threads only interact with the loop
+ * through `execute()`.
+ *
+ * @version 2026-10-17
+ */
+class NioEventLoop implements Runnable {
+    private final Selector selector;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final ChatServer server;
+
+    public NioEventLoop(ChatServer server) throws IOException {
+        this.selector = Selector.open();
+        this.server = server;
+    }
+
+    /**
+     * Runs a task on the event loop thread and wakes the selector so it runs promptly.
+     */
+    void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    /**
+     * Hands an accepted channel over to this loop, along with the handshake slot the accept loop
+     * took for it, see `AdmissionControl.awaitAccept`. Safe to call from the accepting thread.
+     */
+    void register(SocketChannel channel) {
+        execute(() -> {
+            NioConnection connection = new NioConnection(this, channel, server);
+            server.addAcceptedClient(connection.getHandler()); // First, so closing below gives the slot back
+            try {
+                channel.configureBlocking(false);
+                connection.registered(channel.register(selector, SelectionKey.OP_READ, connection));
+            } catch (IOException e) {
+                System.err.println("Failed to register client: " + e.getMessage());
+                connection.close();
+            }
+        });
+    }
+
+    /**
+     * Runs the loop until the thread is interrupted.
+     */
+    @Override
+    public void run() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                selector.select();
+                runTasks();
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    handle(key);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Event loop error: " + e.getMessage());
+        } finally {
+            closeAll();
+        }
+    }
+
+    private void handle(SelectionKey key) {
+        NioConnection connection = (NioConnection) key.attachment();
+        try {
+            if (key.isValid() && key.isReadable()) {
+                connection.onReadable();
+            }
+            if (key.isValid() && key.isWritable()) {
+                connection.onWritable();
+            }
+        } catch (IOException | CancelledKeyException e) {
+            System.err.println("Client disconnected: " + e.getMessage());
+            connection.close();
+        } catch (RuntimeException e) {
+            System.err.println("Client failed: " + e); // Drop the client, not the whole loop
+            connection.close();
+        }
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            task.run();
+        }
+    }
+
+    private void closeAll() {
+        for (SelectionKey key : selector.keys()) {
+            ((NioConnection) key.attachment()).close();
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            System.err.println("Error closing selector: " + e.getMessage());
+        }
+    }
+}
\ No newline at end of file
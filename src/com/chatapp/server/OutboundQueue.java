@@ -0,0 +1,192 @@
+package com.chatapp.server;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded queue of messages waiting to be written to one client.
+ *
+ * Senders (broadcasts from other clients' threads) only ever enqueue, so a slow or stalled client
+ * can no longer hold up delivery to everyone else. The connection drains the queue with its own
+ * writer: a dedicated thread in blocking mode, the event loop in non-blocking mode.
+ *
+ * Chat messages count towards the capacity, and once it is reached the `OverflowPolicy` decides
+ * what happens. Control messages (keys) are never dropped and are always accepted, since losing
+ * one would leave the client unable to read anything that follows.
+ *
+ * @version 2026-10-17
+ */
+class OutboundQueue<T> {
+
+    /**
+     * Outcome of offering a message to the queue.
+     */
+    enum Result {
+        /** The message was queued. */
+        QUEUED,
+        /** The queue was full, and a message (the new one or the oldest) was dropped. */
+        DROPPED,
+        /** The queue was full, and the policy says to disconnect the client. */
+        OVERFLOW
+    }
+
+    private static final class Entry<T> {
+        final T message;
+        final boolean droppable;
+
+        Entry(T message, boolean droppable) {
+            this.message = message;
+            this.droppable = droppable;
+        }
+    }
+
+    private final int capacity;
+    private final ChatServer.OverflowPolicy policy;
+    private final ArrayDeque<Entry<T>> entries = new ArrayDeque<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private int droppableCount = 0;     // Number of queued chat messages, compared against capacity
+    private volatile int depth = 0;     // Number of queued messages of any kind
+    private volatile long dropped = 0;  // Messages dropped because of overflow
+
+    OutboundQueue(int capacity, ChatServer.OverflowPolicy policy) {
+        this.capacity = capacity;
+        this.policy = policy;
+    }
+
+    /**
+     * Queues a chat message, applying the overflow policy if the queue is full.
+     */
+    Result offer(T message) {
+        return offer(message, true);
+    }
+
+    /**
+     * Queues a control message. Control messages are always accepted.
+     */
+    void offerControl(T message) {
+        offer(message, false);
+    }
+
+    private Result offer(T message, boolean droppable) {
+        lock.lock();
+        try {
+            Result result = Result.QUEUED;
+            if (droppable && droppableCount >= capacity) {
+                switch (policy) {
+                    case DROP_NEWEST:
+                        dropped++;
+                        return Result.DROPPED;
+                    case DROP_OLDEST:
+                        removeOldestDroppable();
+                        dropped++;
+                        result = Result.DROPPED;
+                        break;
+                    default:
+                        return Result.OVERFLOW;
+                }
+            }
+
+            entries.addLast(new Entry<>(message, droppable));
+            if (droppable) {
+                droppableCount++;
+            }
+            depth = entries.size();
+            notEmpty.signal();
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes and returns the next message, or returns null if the queue is empty.
+     */
+    T poll() {
+        lock.lock();
+        try {
+            return removeFirst();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes and returns the next message, waiting up to the given time for one to arrive.
+     * Returns null if none arrived in time.
+     */
+    T poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (entries.isEmpty()) {
+                if (nanos <= 0) {
+                    return null;
+                }
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            return removeFirst();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes and returns the next message, waiting for one to arrive if the queue is empty.
+     */
+    T take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (entries.isEmpty()) {
+                notEmpty.await();
+            }
+            return removeFirst();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of messages waiting to be written.
+     */
+    int depth() {
+        return depth;
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the number of messages dropped because the queue was full.
+     */
+    long droppedCount() {
+        return dropped;
+    }
+
+    private T removeFirst() {
+        Entry<T> entry = entries.pollFirst();
+        if (entry == null) {
+            return null;
+        }
+        if (entry.droppable) {
+            droppableCount--;
+        }
+        depth = entries.size();
+        return entry.message;
+    }
+
+    private void removeOldestDroppable() {
+        Iterator<Entry<T>> it = entries.iterator();
+        while (it.hasNext()) {
+            if (it.next().droppable) {
+                it.remove();
+                droppableCount--;
+                return;
+            }
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,178 @@
+package com.chatapp.server;
+
+import java.io.*;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+
+import com.chatapp.protocol.*;
+
+/**
+ * Outbound link from this node to one peer node of a `Cluster`.
+ *
+ * The link runs its own thread, which connects to the peer, answers the peer's challenge with a
+ * hello, writes queued frames in batches like a client connection's writer, and reconnects after
+ * a short delay whenever the connection fails. Frames are queued as they are and sealed with the
+ * connection's `LinkSession` as they are written, so each peer's copy is encrypted on its own link.
+ * Frames sent while the link is down are dropped rather than queued: a peer that is down cannot
+ * deliver them, and the room interest it needs is announced again once the link is back.
+ *
+ * Relayed messages go through a bounded `OutboundQueue` that drops the oldest message when the
+ * peer falls behind, so a slow node costs the others nothing but the messages it misses. Control
+ * frames, such as the hello and room interest, are never dropped.
+ *
+ * @version 2026-10-17
+ */
+class PeerLink extends Thread {
+    static final long RECONNECT_DELAY_MILLIS = 1000;
+    private static final int MAX_BATCH_BYTES = 64 * 1024;
+
+    private final Cluster cluster;
+    private final int peerId;
+    private final String host;
+    private final int port;
+    private final OutboundQueue<Frame> queue;
+
+    private volatile boolean connected = false;
+    private volatile boolean closed = false;
+    private volatile Socket socket;
+
+    PeerLink(Cluster cluster, int peerId, String host, int port, int queueCapacity) {
+        super("cluster-link-" + peerId);
+        setDaemon(true);
+        this.cluster = cluster;
+        this.peerId = peerId;
+        this.host = host;
+        this.port = port;
+        this.queue = new OutboundQueue<>(queueCapacity, ChatServer.OverflowPolicy.DROP_OLDEST);
+    }
+
+    int getPeerId() {
+        return peerId;
+    }
+
+    boolean isConnected() {
+        return connected;
+    }
+
+    /**
+     * Queues a relayed message for the peer, dropping the oldest queued one if the queue is full.
+     *
+     * @return false if the link is down and the message was dropped
+     */
+    boolean send(Frame frame) {
+        if (!connected) {
+            return false;
+        }
+        if (queue.offer(frame) == OutboundQueue.Result.DROPPED) {
+            cluster.metrics().messageDropped();
+        }
+        cluster.metrics().relaySent();
+        return true;
+    }
+
+    /**
+     * Queues a control frame for the peer, unless the link is down.
+     */
+    void sendControl(Frame frame) {
+        if (connected) {
+            queue.offerControl(frame);
+        }
+    }
+
+    /**
+     * Starts a new connection, once its hello has been written: discards whatever was queued for
+     * the previous one and marks the link up.
+     */
+    void reset() {
+        while (queue.poll() != null) {
+            // Discard
+        }
+        connected = true;
+    }
+
+    /**
+     * Connects, writes until the connection fails, and tries again until the link is closed.
+     */
+    @Override
+    public void run() {
+        boolean reported = false; // Only the first failure of an outage is printed
+        while (!closed) {
+            try (Socket s = new Socket()) {
+                s.connect(new InetSocketAddress(host, port));
+                s.setTcpNoDelay(true);
+                socket = s;
+                OutputStream out = new BufferedOutputStream(s.getOutputStream(), MAX_BATCH_BYTES);
+                LinkSession session = sendHello(s, out);
+                cluster.linkConnected(this);
+                reported = false;
+                writeFrames(out, session);
+            } catch (IOException | GeneralSecurityException e) {
+                if (!closed && !reported) {
+                    System.err.println("Cluster link to node " + peerId + " failed, retrying: " + e.getMessage());
+                    reported = true;
+                }
+            } catch (InterruptedException e) {
+                // Closed while waiting for frames
+            } finally {
+                connected = false;
+            }
+
+            try {
+                Thread.sleep(RECONNECT_DELAY_MILLIS);
+            } catch (InterruptedException e) {
+                // Closed, or woken up early
+            }
+        }
+    }
+
+    /**
+     * Reads the peer's NODE_CHALLENGE and answers it with a NODE_HELLO: this node's nonce followed
+     * by its id, sealed with the new session.
+     */
+    private LinkSession sendHello(Socket s, OutputStream out) throws IOException, GeneralSecurityException {
+        s.setSoTimeout(Cluster.HELLO_TIMEOUT_MILLIS);
+        Frame challenge = FrameCodec.read(new DataInputStream(s.getInputStream()));
+        if (challenge == null || challenge.getType() != FrameType.NODE_CHALLENGE) {
+            throw new IOException("No challenge from node " + peerId);
+        }
+        s.setSoTimeout(0);
+
+        byte[] nonce = LinkSession.newNonce();
+        LinkSession session = cluster.newLinkSession(challenge.getPayload(), nonce);
+        byte[] sealedId = session.seal(ByteBuffer.allocate(Integer.BYTES).putInt(cluster.getNodeId()).array());
+        FrameCodec.write(out, new Frame(FrameType.NODE_HELLO, ByteBuffer.allocate(nonce.length + sealedId.length).put(nonce).put(sealedId).array()));
+        return session;
+    }
+
+    /**
+     * Seals and writes queued frames, flushing once the queue is empty or a batch is full.
+     */
+    private void writeFrames(OutputStream out, LinkSession session) throws IOException, GeneralSecurityException, InterruptedException {
+        while (!closed) {
+            Frame frame = queue.take();
+            int bytes = 0;
+            while (frame != null) {
+                Frame sealed = new Frame(frame.getType(), session.seal(frame.getPayload()));
+                FrameCodec.write(out, sealed);
+                bytes += sealed.getEncodedLength();
+                frame = bytes < MAX_BATCH_BYTES ? queue.poll() : null;
+            }
+            out.flush();
+        }
+    }
+
+    void close() {
+        closed = true;
+        connected = false;
+        Socket s = socket;
+        if (s != null) {
+            try {
+                s.close();
+            } catch (IOException e) {
+                // Closing anyway
+            }
+        }
+        interrupt();
+    }
+}
\ No newline at end of file
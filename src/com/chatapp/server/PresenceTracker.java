@@ -0,0 +1,157 @@
+package com.chatapp.server;
+
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.chatapp.metrics.*;
+import com.chatapp.protocol.*;
+
+/**
+ * Keeps the list of clients online on this server, with their statuses, and tells every client
+ * about it.
+ *
+ * A client is sent one snapshot of the list once its session is ready, and only deltas after
+ * that, see `PresenceUpdate`. Changes are not sent as they happen. They are collected, with later
+ * changes to a client replacing earlier ones, and flushed at most once per interval as a single
+ * delta to every client. A client that connects and disconnects within one interval never shows
+ * up, and a status changed many times is sent once. When 10,000 clients reconnect at once, each
+ * client is sent a few deltas listing all of them, instead of one update per client that joined,
+ * so the number of presence frames grows with the number of clients, not with its square.
+ *
+ * Snapshots and deltas are control frames, never dropped, and queued in version order: the
+ * snapshot is queued before the client can be sent any delta, and deltas are sent by a single
+ * thread, one at a time.
+ *
+ * @version 2026-10-17
+ */
+class PresenceTracker {
+    static final long DEFAULT_INTERVAL_MILLIS = 250;
+
+    private final Iterable<ClientHandler> clients;
+    private final ServerMetrics metrics;
+    private final long intervalMillis;
+    private final ScheduledExecutorService flusher;
+
+    // All guarded by this
+    private final Map<Long, String> online = new HashMap<>();        // Published list, client id -> status
+    private final Map<Long, String> pending = new LinkedHashMap<>(); // Changes since the last flush, null for offline
+    private long version = 0;
+    private boolean flushScheduled = false;
+
+    PresenceTracker(Iterable<ClientHandler> clients, ServerMetrics metrics, long intervalMillis) {
+        if (intervalMillis <= 0) {
+            throw new IllegalArgumentException("Presence interval must be positive");
+        }
+        this.clients = clients;
+        this.metrics = metrics;
+        this.intervalMillis = intervalMillis;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "presence-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Marks a client whose session is ready as online, and sends it a snapshot of the list.
+     */
+    synchronized void clientReady(ClientHandler client) {
+        change(client.getId(), "");
+        List<PresenceUpdate.Entry> entries = new ArrayList<>(online.size());
+        online.forEach((id, status) -> entries.add(new PresenceUpdate.Entry(id, true, status)));
+
+        // Queued under the lock, so no delta past this version can be queued for the client first
+        List<byte[]> snapshot = encode(PresenceUpdate.SNAPSHOT, version, version, entries);
+        snapshot.forEach(client::sendPresence);
+        metrics.presenceSent(snapshot.size());
+        client.setReceivesPresence(true);
+    }
+
+    /**
+     * Marks a client that disconnected as offline.
+     */
+    synchronized void clientLeft(ClientHandler client) {
+        if (client.receivesPresence()) {
+            change(client.getId(), null);
+        }
+    }
+
+    /**
+     * Sets the status of an online client.
+     */
+    synchronized void statusChanged(ClientHandler client, String status) {
+        if (client.receivesPresence()) {
+            change(client.getId(), PresenceUpdate.truncateStatus(status));
+        }
+    }
+
+    /**
+     * Records a change, or forgets the pending one if the client is back where the published
+     * list has it, and schedules a flush.
+     */
+    private void change(long id, String status) {
+        if (Objects.equals(online.get(id), status)) {
+            pending.remove(id);
+        } else {
+            pending.put(id, status);
+        }
+        if (!pending.isEmpty() && !flushScheduled) {
+            flushScheduled = true;
+            flusher.schedule(this::flush, intervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Publishes the pending changes as the next version, and sends them to every client that
+     * has had its snapshot.
+     */
+    private void flush() {
+        List<byte[]> delta;
+        synchronized (this) {
+            flushScheduled = false;
+            if (pending.isEmpty()) {
+                return;
+            }
+            List<PresenceUpdate.Entry> entries = new ArrayList<>(pending.size());
+            pending.forEach((id, status) -> {
+                entries.add(new PresenceUpdate.Entry(id, status != null, status));
+                if (status != null) {
+                    online.put(id, status);
+                } else {
+                    online.remove(id);
+                }
+            });
+            pending.clear();
+            delta = encode(PresenceUpdate.DELTA, version, version + 1, entries);
+            version++;
+        }
+
+        int sent = 0;
+        for (ClientHandler client : clients) {
+            if (client.receivesPresence()) {
+                delta.forEach(client::sendPresence);
+                sent += delta.size();
+            }
+        }
+        metrics.presenceSent(sent);
+    }
+
+    /**
+     * Encodes a list change as updates of at most `PresenceUpdate.MAX_ENTRIES` entries each. The
+     * updates after the first one start and end at the new version.
+     */
+    private static List<byte[]> encode(byte kind, long fromVersion, long toVersion, List<PresenceUpdate.Entry> entries) {
+        List<byte[]> updates = new ArrayList<>();
+        int start = 0;
+        do {
+            List<PresenceUpdate.Entry> part = entries.subList(start, Math.min(entries.size(), start + PresenceUpdate.MAX_ENTRIES));
+            updates.add(start == 0
+                    ? new PresenceUpdate(kind, fromVersion, toVersion, part).encode()
+                    : new PresenceUpdate(PresenceUpdate.DELTA, toVersion, toVersion, part).encode());
+            start += PresenceUpdate.MAX_ENTRIES;
+        } while (start < entries.size());
+        return updates;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,72 @@
+package com.chatapp.server;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Index from room name to the clients in the room.
+ *
+ * Lookup is a single `ConcurrentHashMap` get, however many rooms there are, and each member set is
+ * a concurrent set, so broadcasts can iterate a room while clients join and leave it. A room
+ * exists only while it has members: joining creates it and the last leave removes it, both
+ * atomically, so a client never joins a room that is being removed.
+ *
+ * The rooms each client is in are tracked by its `ClientHandler`, so the server can remove a
+ * disconnected client from exactly those rooms.
+ *
+ * @version 2026-10-17
+ */
+class RoomRegistry {
+    private final ConcurrentHashMap<String, Set<ClientHandler>> rooms = new ConcurrentHashMap<>();
+
+    /**
+     * Adds a client to a room, creating the room if needed.
+     *
+     * @return true if the room was created
+     */
+    boolean join(String room, ClientHandler client) {
+        boolean[] created = {false};
+        rooms.compute(room, (name, members) -> {
+            created[0] = members == null;
+            Set<ClientHandler> set = members != null ? members : ConcurrentHashMap.newKeySet();
+            set.add(client);
+            return set;
+        });
+        return created[0];
+    }
+
+    /**
+     * Removes a client from a room, removing the room once it is empty.
+     *
+     * @return true if the room was removed
+     */
+    boolean leave(String room, ClientHandler client) {
+        boolean[] removed = {false};
+        rooms.computeIfPresent(room, (name, members) -> {
+            members.remove(client);
+            removed[0] = members.isEmpty();
+            return removed[0] ? null : members;
+        });
+        return removed[0];
+    }
+
+    /**
+     * Returns a live view of the room's members, empty if the room does not exist.
+     */
+    Set<ClientHandler> members(String room) {
+        Set<ClientHandler> members = rooms.get(room);
+        return members != null ? Collections.unmodifiableSet(members) : Collections.emptySet();
+    }
+
+    /**
+     * Returns a live view of the names of the rooms that have members.
+     */
+    Set<String> names() {
+        return Collections.unmodifiableSet(rooms.keySet());
+    }
+
+    int roomCount() {
+        return rooms.size();
+    }
+}
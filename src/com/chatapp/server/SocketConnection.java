@@ -0,0 +1,156 @@
+package com.chatapp.server;
+
+import java.io.*;
+import java.net.*;
+import java.util.concurrent.TimeUnit;
+
+import com.chatapp.cryptography.*;
+import com.chatapp.metrics.*;
+import com.chatapp.protocol.*;
+
+/**
+ * Blocking transport used by the server's `BLOCKING` mode: one thread per connected client,
+ * blocked reading frames from the client's socket.
+ *
+ * Every frame read from the socket is passed on to the connection's `ClientHandler`. Outgoing
+ * messages are written by a separate writer thread that drains the handler's outbound queue, so
+ * a client that stops reading only ever stalls its own writer. The writer coalesces queued frames
+ * into one buffer and flushes each batch with a single write, see `ChatServer.setWriteCoalescing`.
+ *
+ * A client that sends faster than its rate limit, see `AdmissionControl`, has its reader thread
+ * sleep until the client's budget has refilled, before the frame that went over it is handled.
+ *
+ * Bytes read and written, and the time each frame takes to write, go to the server's metrics.
+ *
+ * @version 2026-10-17
+ */
+class SocketConnection extends Thread implements Connection {
+    private final Socket socket;
+    private final ClientHandler handler;
+    private final ServerMetrics metrics;
+    private final int maxBatchBytes;
+    private final long maxBatchDelayNanos;
+    private final String remoteAddress;
+    private DataInputStream in;     // Client socket input stream
+    private OutputStream out;       // Client socket output stream, only used by the writer thread
+    private volatile Thread writer;
+
+    public SocketConnection(ChatServer server, Socket socket) {
+        this.socket = socket;
+        this.remoteAddress = String.valueOf(socket.getRemoteSocketAddress());
+        this.metrics = server.getMetrics();
+        this.maxBatchBytes = server.getMaxBatchBytes();
+        this.maxBatchDelayNanos = server.getMaxBatchDelayNanos();
+        this.handler = new ClientHandler(server, this);
+    }
+
+    public ClientHandler getHandler() {
+        return handler;
+    }
+
+    /**
+     * Runs the thread for a single client, reading frames until the client disconnects.
+     */
+    @Override
+    public void run() {
+        try {
+            in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            out = new BufferedOutputStream(socket.getOutputStream(), maxBatchBytes); // Holds a whole batch
+
+            writer = new Thread(this::writeMessages, getName() + "-writer");
+            writer.start();
+
+            Frame frame;
+            while (isOpen() && (frame = FrameCodec.read(in)) != null) {
+                metrics.bytesRead(frame.getEncodedLength());
+                long wait = handler.charge(frame);
+                if (wait > 0) {
+                    TimeUnit.NANOSECONDS.sleep(wait); // Over the rate limit, stop reading for a while
+                }
+                while ((wait = handler.backlogWait(frame)) > 0) {
+                    TimeUnit.NANOSECONDS.sleep(wait); // Fan-out workers behind, see FanOutEngine
+                }
+                handler.handleFrame(frame);
+            }
+
+        } catch (Exception e) {
+            System.err.println("Client disconnected: " + e.getMessage());
+        }
+
+        // Always try to close socket and remove client when they disconnect
+        finally {
+            close();
+            handler.disconnected();
+        }
+    }
+
+    /**
+     * Writer thread: writes queued frames to the socket until the connection closes.
+     *
+     * Each batch starts with the next queued frame and takes more frames until it holds
+     * `maxBatchBytes`, or the queue is empty and the batch delay has passed, and is then flushed
+     * with one write.
+     */
+    private void writeMessages() {
+        OutboundQueue<Frame> queue = handler.outbound();
+        try {
+            while (isOpen()) {
+                Frame frame = queue.take();
+                long start = System.nanoTime();
+                long deadline = start + maxBatchDelayNanos;
+                int frames = 0;
+                long bytes = 0;
+
+                while (frame != null) {
+                    FrameCodec.write(out, frame);
+                    frames++;
+                    bytes += frame.getEncodedLength();
+                    if (bytes >= maxBatchBytes) {
+                        break;
+                    }
+                    long wait = deadline - System.nanoTime();
+                    frame = wait > 0 ? queue.poll(wait, TimeUnit.NANOSECONDS) : queue.poll();
+                }
+                out.flush();
+
+                metrics.sendTime().recordSince(start);
+                metrics.bytesWritten(bytes);
+                metrics.batchWritten(frames, bytes);
+            }
+        } catch (InterruptedException e) {
+            // Connection closed while waiting for messages
+        } catch (IOException e) {
+            System.err.println("Failed to write to client: " + e.getMessage());
+        }
+        close();
+    }
+
+    /**
+     * The writer thread blocks on the queue itself, so there is nothing to do here.
+     */
+    @Override
+    public void outboundReady() {
+    }
+
+    @Override
+    public void close() {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            System.err.println("Error closing socket: " + e.getMessage());
+        }
+        if (writer != null && writer != Thread.currentThread()) {
+            writer.interrupt();
+        }
+    }
+
+    @Override
+    public boolean isOpen() {
+        return !socket.isClosed();
+    }
+
+    @Override
+    public String getRemoteAddress() {
+        return remoteAddress;
+    }
+}
\ No newline at end of file
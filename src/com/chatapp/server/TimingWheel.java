@@ -0,0 +1,159 @@
+package com.chatapp.server;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A hashed timing wheel: a timer for very many timeouts that rarely fire on time, such as one
+ * idle timeout per connection.
+ *
+ * The wheel is a ring of slots, each a list of timeouts, and a single thread that moves to the
+ * next slot once per tick and fires the timeouts in it that are due. A timeout further away than
+ * one turn of the wheel waits in its slot for the turns it still needs. Scheduling and cancelling
+ * are constant time whatever the number of timeouts, and a tick only looks at one slot, so 100,000
+ * timeouts cost about as much to keep as a handful. The price is precision: a timeout fires up to
+ * one tick late.
+ *
+ * Timeouts are objects owned by the caller, see `Timeout`, and can be scheduled again once they
+ * have fired, so keeping a connection's timeout going allocates nothing. They can be scheduled
+ * from any thread; the slots themselves are only touched by the wheel's thread.
+ *
+ * @version 2026-10-17
+ */
+class TimingWheel {
+    static final long DEFAULT_TICK_MILLIS = 100;
+    static final int DEFAULT_SLOTS = 512;
+
+    /**
+     * A timeout that can be scheduled on a wheel, and scheduled again once it has fired.
+     */
+    abstract static class Timeout {
+        private long deadline;        // System.nanoTime() it is due at
+        private long rounds;          // Turns of the wheel still to wait, wheel thread only
+        private Timeout previous;     // Links in the slot's list, wheel thread only
+        private Timeout next;
+        private Timeout[] slotHead;   // Head of the slot it is in, null if in none
+        private volatile boolean cancelled;
+
+        /**
+         * Called on the wheel's thread once the timeout is due. May schedule it again.
+         */
+        abstract void expired(long now);
+    }
+
+    private final long tickNanos;
+    private final Timeout[][] slots;  // One element arrays, so a timeout can unlink itself from its head
+    private final Queue<Timeout> scheduled = new ConcurrentLinkedQueue<>();
+    private final Thread worker;
+    private long tick = 0;            // Ticks done so far, wheel thread only
+    private final long startTime;
+
+    TimingWheel(String name, long tickMillis, int slotCount) {
+        if (tickMillis <= 0 || slotCount <= 0) {
+            throw new IllegalArgumentException("Tick and slot count must be positive");
+        }
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        this.slots = new Timeout[slotCount][1];
+        this.startTime = System.nanoTime();
+        this.worker = new Thread(this::run, name);
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * Schedules a timeout to fire at the given `System.nanoTime()`, or with the next tick if
+     * that has passed. The timeout must not be scheduled already. Safe to call from any thread.
+     */
+    void schedule(Timeout timeout, long deadline) {
+        timeout.deadline = deadline;
+        scheduled.add(timeout);
+    }
+
+    /**
+     * Cancels a timeout for good: it is dropped from its slot the next time the wheel passes it,
+     * and never fires again, even if it is scheduled again. Safe to call from any thread.
+     */
+    void cancel(Timeout timeout) {
+        timeout.cancelled = true;
+    }
+
+    void stop() {
+        worker.interrupt();
+    }
+
+    private void run() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                long wait = startTime + (tick + 1) * tickNanos - System.nanoTime();
+                if (wait > 0) {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                }
+                tick++;
+                addScheduled();
+                expire(slots[(int) (tick % slots.length)], System.nanoTime());
+            }
+        } catch (InterruptedException e) {
+            // Stopped
+        }
+    }
+
+    /**
+     * Puts newly scheduled timeouts in the slot of the tick they are due at.
+     */
+    private void addScheduled() {
+        Timeout timeout;
+        while ((timeout = scheduled.poll()) != null) {
+            if (timeout.cancelled) {
+                continue;
+            }
+            long due = Math.max(tick, Math.floorDiv(timeout.deadline - startTime + tickNanos - 1, tickNanos)); // Rounded up, never in the past
+            timeout.rounds = (due - tick) / slots.length;
+            Timeout[] head = slots[(int) (due % slots.length)];
+            timeout.slotHead = head;
+            timeout.previous = null;
+            timeout.next = head[0];
+            if (head[0] != null) {
+                head[0].previous = timeout;
+            }
+            head[0] = timeout;
+        }
+    }
+
+    /**
+     * Fires the timeouts of a slot that are due, and drops the cancelled ones.
+     */
+    private void expire(Timeout[] head, long now) {
+        Timeout timeout = head[0];
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            if (timeout.cancelled) {
+                unlink(timeout);
+            } else if (timeout.rounds > 0) {
+                timeout.rounds--;
+            } else {
+                unlink(timeout);
+                try {
+                    timeout.expired(now);
+                } catch (RuntimeException e) {
+                    System.err.println("Timeout failed: " + e);
+                }
+            }
+            timeout = next;
+        }
+    }
+
+    private static void unlink(Timeout timeout) {
+        if (timeout.previous != null) {
+            timeout.previous.next = timeout.next;
+        } else {
+            timeout.slotHead[0] = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.previous = timeout.previous;
+        }
+        timeout.previous = null;
+        timeout.next = null;
+        timeout.slotHead = null;
+    }
+}
\ No newline at end of file
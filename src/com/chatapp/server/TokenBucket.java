@@ -0,0 +1,51 @@
+package com.chatapp.server;
+
+/**
+ * A token bucket: refills at a fixed rate up to its capacity, and lets callers take tokens for
+ * the work they are about to do.
+ *
+ * Taking never fails. A caller may overdraw the bucket, and is told how long to wait for the
+ * balance to be paid back, so work larger than the whole capacity, such as one big frame, still
+ * gets through, it only makes the caller wait longer.
+ *
+ * Not thread-safe: each bucket is used by one thread at a time, e.g. a connection's reader.
+ *
+ * @version 2026-10-17
+ */
+class TokenBucket {
+    private final double tokensPerNano;
+    private final double capacity;
+    private double tokens;
+    private long lastRefill;
+
+    /**
+     * @param tokensPerSecond refill rate
+     * @param capacity        most tokens the bucket holds, and so the largest burst it allows
+     */
+    TokenBucket(double tokensPerSecond, double capacity) {
+        if (tokensPerSecond <= 0 || capacity <= 0) {
+            throw new IllegalArgumentException("Rate and capacity must be positive");
+        }
+        this.tokensPerNano = tokensPerSecond / 1e9;
+        this.capacity = capacity;
+        this.tokens = capacity;
+        this.lastRefill = System.nanoTime();
+    }
+
+    /**
+     * Takes the given number of tokens, overdrawing the bucket if it holds fewer.
+     *
+     * @return nanoseconds until the bucket is no longer overdrawn, 0 if it was not
+     */
+    long take(double amount) {
+        refill();
+        tokens -= amount;
+        return tokens >= 0 ? 0 : (long) Math.ceil(-tokens / tokensPerNano);
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - lastRefill) * tokensPerNano);
+        lastRefill = now;
+    }
+}
\ No newline at end of file